@@ -0,0 +1,424 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+import io.parsingdata.metal.data.ImmutableList;
+import io.parsingdata.metal.expression.Expression;
+import io.parsingdata.metal.expression.FoldedExpression;
+import io.parsingdata.metal.expression.True;
+import io.parsingdata.metal.expression.comparison.ComparisonExpression;
+import io.parsingdata.metal.expression.comparison.Eq;
+import io.parsingdata.metal.expression.comparison.EqNum;
+import io.parsingdata.metal.expression.comparison.EqStr;
+import io.parsingdata.metal.expression.comparison.GtEqNum;
+import io.parsingdata.metal.expression.comparison.GtNum;
+import io.parsingdata.metal.expression.comparison.LtEqNum;
+import io.parsingdata.metal.expression.comparison.LtNum;
+import io.parsingdata.metal.expression.logical.And;
+import io.parsingdata.metal.expression.logical.Not;
+import io.parsingdata.metal.expression.logical.Or;
+import io.parsingdata.metal.expression.value.BinaryValueExpression;
+import io.parsingdata.metal.expression.value.Bytes;
+import io.parsingdata.metal.expression.value.Cat;
+import io.parsingdata.metal.expression.value.CompiledValueExpression;
+import io.parsingdata.metal.expression.value.Const;
+import io.parsingdata.metal.expression.value.Elvis;
+import io.parsingdata.metal.expression.value.Expand;
+import io.parsingdata.metal.expression.value.Fold;
+import io.parsingdata.metal.expression.value.FoldCat;
+import io.parsingdata.metal.expression.value.FoldLeft;
+import io.parsingdata.metal.expression.value.FoldRight;
+import io.parsingdata.metal.expression.value.FoldedValueExpression;
+import io.parsingdata.metal.expression.value.Reverse;
+import io.parsingdata.metal.expression.value.UnaryValueExpression;
+import io.parsingdata.metal.expression.value.ValueExpression;
+import io.parsingdata.metal.expression.value.arithmetic.Add;
+import io.parsingdata.metal.expression.value.arithmetic.Div;
+import io.parsingdata.metal.expression.value.arithmetic.Mod;
+import io.parsingdata.metal.expression.value.arithmetic.Mul;
+import io.parsingdata.metal.expression.value.arithmetic.Neg;
+import io.parsingdata.metal.expression.value.bitwise.ShiftLeft;
+import io.parsingdata.metal.expression.value.bitwise.ShiftRight;
+import io.parsingdata.metal.expression.value.reference.Count;
+import io.parsingdata.metal.expression.value.reference.First;
+import io.parsingdata.metal.expression.value.reference.Last;
+import io.parsingdata.metal.expression.value.reference.Len;
+import io.parsingdata.metal.expression.value.reference.Nth;
+import io.parsingdata.metal.expression.value.reference.Offset;
+import io.parsingdata.metal.expression.value.reference.Ref.DefinitionRef;
+import io.parsingdata.metal.expression.value.reference.Ref.NameRef;
+import io.parsingdata.metal.token.Cho;
+import io.parsingdata.metal.token.Def;
+import io.parsingdata.metal.token.Post;
+import io.parsingdata.metal.token.Pre;
+import io.parsingdata.metal.token.Rep;
+import io.parsingdata.metal.token.RepN;
+import io.parsingdata.metal.token.Seq;
+import io.parsingdata.metal.token.Sub;
+import io.parsingdata.metal.token.Tie;
+import io.parsingdata.metal.token.Token;
+import io.parsingdata.metal.token.Until;
+import io.parsingdata.metal.token.While;
+
+/**
+ * Rewrites a token tree into one that parses the same input with the same
+ * results, but evaluates less during a parse.
+ * <p>
+ * Expressions of which the result does not depend on the parse state (built
+ * from {@link Const}s with the operators of this library) are wrapped in a
+ * {@link FoldedValueExpression} or {@link FoldedExpression}, which evaluate
+ * them once per encoding. Logical expressions with a constant operand are
+ * simplified where this does not change which operands are evaluated:
+ * <code>and(TRUE, x)</code>, <code>and(x, TRUE)</code> and
+ * <code>or(not(TRUE), x)</code> become <code>x</code>,
+ * <code>or(TRUE, x)</code> becomes <code>TRUE</code> and
+ * <code>not(not(x))</code> becomes <code>x</code>. The size of a
+ * {@link Def} and the operands of a comparison in a {@link Post} are
+ * {@link CompiledValueExpression compiled} if they combine operands that
+ * each yield at most one value.
+ * <p>
+ * Only tokens and expressions of the classes in this library are rewritten.
+ * Of the unary, binary and comparison expressions, only the classes of
+ * this library that are listed in this class are rewritten: a subclass of
+ * those is kept as it is, including its operands. Parts that do not change
+ * are kept, and a token that occurs more than once is rewritten once, so
+ * the result shares them in the same way. Since the rewritten tokens are
+ * the definitions of the values in the resulting
+ * {@link io.parsingdata.metal.data.ParseGraph}, they should be used to look
+ * values up by definition, instead of the original tokens. References by
+ * definition within the tree are rewritten accordingly.
+ */
+// Parts are compared by identity, to keep the parts that did not change so that the result shares them with the original tree.
+@SuppressWarnings("ReferenceEquality")
+public final class Optimizer {
+
+    private static final String PACKAGE_PREFIX = "io.parsingdata.metal.";
+
+    // The unary, binary and comparison expressions that are rewritten with other operands. Other subclasses are kept as they are.
+    private static final Map<Class<?>, Function<ValueExpression, ValueExpression>> UNARY = new HashMap<>();
+    private static final Map<Class<?>, BinaryOperator<ValueExpression>> BINARY = new HashMap<>();
+    private static final Map<Class<?>, BiFunction<ValueExpression, ValueExpression, Expression>> COMPARISON = new HashMap<>();
+
+    static {
+        UNARY.put(Neg.class, Neg::new);
+        UNARY.put(io.parsingdata.metal.expression.value.bitwise.Not.class, io.parsingdata.metal.expression.value.bitwise.Not::new);
+        UNARY.put(Len.class, Len::new);
+        UNARY.put(Offset.class, Offset::new);
+        BINARY.put(Add.class, Add::new);
+        BINARY.put(io.parsingdata.metal.expression.value.arithmetic.Sub.class, io.parsingdata.metal.expression.value.arithmetic.Sub::new);
+        BINARY.put(Mul.class, Mul::new);
+        BINARY.put(Div.class, Div::new);
+        BINARY.put(Mod.class, Mod::new);
+        BINARY.put(Cat.class, Cat::new);
+        BINARY.put(io.parsingdata.metal.expression.value.bitwise.And.class, io.parsingdata.metal.expression.value.bitwise.And::new);
+        BINARY.put(io.parsingdata.metal.expression.value.bitwise.Or.class, io.parsingdata.metal.expression.value.bitwise.Or::new);
+        BINARY.put(ShiftLeft.class, ShiftLeft::new);
+        BINARY.put(ShiftRight.class, ShiftRight::new);
+        COMPARISON.put(Eq.class, Eq::new);
+        COMPARISON.put(EqNum.class, EqNum::new);
+        COMPARISON.put(EqStr.class, EqStr::new);
+        COMPARISON.put(GtNum.class, GtNum::new);
+        COMPARISON.put(GtEqNum.class, GtEqNum::new);
+        COMPARISON.put(LtNum.class, LtNum::new);
+        COMPARISON.put(LtEqNum.class, LtEqNum::new);
+    }
+
+    private final Map<Token, Token> tokens = new IdentityHashMap<>();
+
+    private Optimizer() {}
+
+    public static Token optimize(final Token token) {
+        return new Optimizer().optimizeToken(checkNotNull(token, "token"));
+    }
+
+    public static ValueExpression optimize(final ValueExpression expression) {
+        return new Optimizer().optimizeValue(checkNotNull(expression, "expression"));
+    }
+
+    public static Expression optimize(final Expression expression) {
+        return new Optimizer().optimizeExpression(checkNotNull(expression, "expression"));
+    }
+
+    private Token optimizeToken(final Token token) {
+        final Token known = tokens.get(token);
+        if (known != null) {
+            return known;
+        }
+        final Token optimized = rewriteToken(token);
+        tokens.put(token, optimized);
+        return optimized;
+    }
+
+    private Token rewriteToken(final Token token) {
+        final Class<?> type = token.getClass();
+        if (type == Def.class) {
+            final Def def = (Def) token;
+            final ValueExpression size = compile(optimizeValue(def.size));
+            return size == def.size ? def : new Def(def.name, size, def.encoding);
+        }
+        if (type == Seq.class || type == Cho.class) {
+            final ImmutableList<Token> list = type == Seq.class ? ((Seq) token).tokens : ((Cho) token).tokens;
+            final Token[] parts = new Token[(int) list.size];
+            boolean changed = false;
+            int index = 0;
+            for (ImmutableList<Token> node = list; !node.isEmpty(); node = node.tail) {
+                parts[index] = optimizeToken(node.head);
+                changed |= parts[index++] != node.head;
+            }
+            if (!changed) {
+                return token;
+            }
+            final Token[] additional = new Token[parts.length - 2];
+            System.arraycopy(parts, 2, additional, 0, additional.length);
+            return type == Seq.class ? new Seq(token.name, token.encoding, parts[0], parts[1], additional)
+                                     : new Cho(token.name, token.encoding, parts[0], parts[1], additional);
+        }
+        if (type == Rep.class) {
+            final Token part = optimizeToken(((Rep) token).token);
+            return part == ((Rep) token).token ? token : new Rep(token.name, part, token.encoding);
+        }
+        if (type == RepN.class) {
+            final RepN repN = (RepN) token;
+            final Token part = optimizeToken(repN.token);
+            final ValueExpression n = optimizeValue(repN.n);
+            return part == repN.token && n == repN.n ? token : new RepN(token.name, part, n, token.encoding);
+        }
+        if (type == While.class) {
+            final While whileToken = (While) token;
+            final Token part = optimizeToken(whileToken.token);
+            final Expression predicate = optimizeExpression(whileToken.predicate);
+            return part == whileToken.token && predicate == whileToken.predicate ? token : new While(token.name, part, predicate, token.encoding);
+        }
+        if (type == Pre.class) {
+            final Pre pre = (Pre) token;
+            final Token part = optimizeToken(pre.token);
+            final Expression predicate = optimizeExpression(pre.predicate);
+            return part == pre.token && predicate == pre.predicate ? token : new Pre(token.name, part, predicate, token.encoding);
+        }
+        if (type == Post.class) {
+            final Post post = (Post) token;
+            final Token part = optimizeToken(post.token);
+            final Expression predicate = compileOperands(optimizeExpression(post.predicate));
+            return part == post.token && predicate == post.predicate ? token : new Post(token.name, part, predicate, token.encoding);
+        }
+        if (type == Sub.class) {
+            final Sub sub = (Sub) token;
+            final Token part = optimizeToken(sub.token);
+            final ValueExpression offsets = optimizeValue(sub.offsets);
+            return part == sub.token && offsets == sub.offsets ? token : new Sub(token.name, part, offsets, token.encoding);
+        }
+        if (type == Tie.class) {
+            final Tie tie = (Tie) token;
+            final Token part = optimizeToken(tie.token);
+            final ValueExpression dataExpression = optimizeValue(tie.dataExpression);
+            return part == tie.token && dataExpression == tie.dataExpression ? token : new Tie(token.name, part, dataExpression, token.encoding);
+        }
+        if (type == Until.class) {
+            final Until until = (Until) token;
+            final ValueExpression initialSize = optimizeValue(until.initialSize);
+            final ValueExpression stepSize = optimizeValue(until.stepSize);
+            final ValueExpression maxSize = optimizeValue(until.maxSize);
+            final Token terminator = optimizeToken(until.terminator);
+            return initialSize == until.initialSize && stepSize == until.stepSize && maxSize == until.maxSize && terminator == until.terminator ? token : new Until(token.name, initialSize, stepSize, maxSize, terminator, token.encoding);
+        }
+        return token;
+    }
+
+    private ValueExpression optimizeValue(final ValueExpression expression) {
+        if (expression == null || !expression.getClass().getName().startsWith(PACKAGE_PREFIX)) {
+            return expression;
+        }
+        final Class<?> type = expression.getClass();
+        if (BINARY.containsKey(type)) {
+            final BinaryValueExpression binary = (BinaryValueExpression) expression;
+            final ValueExpression left = optimizeValue(binary.left);
+            final ValueExpression right = optimizeValue(binary.right);
+            final ValueExpression rewritten = left == binary.left && right == binary.right ? expression : BINARY.get(type).apply(left, right);
+            return fold(rewritten, isConstant(left) && isConstant(right));
+        }
+        if (UNARY.containsKey(type)) {
+            final UnaryValueExpression unary = (UnaryValueExpression) expression;
+            final ValueExpression operand = optimizeValue(unary.operand);
+            final ValueExpression rewritten = operand == unary.operand ? expression : UNARY.get(type).apply(operand);
+            return fold(rewritten, isConstant(operand));
+        }
+        if (type == Elvis.class) {
+            final ValueExpression left = optimizeValue(((Elvis) expression).left);
+            final ValueExpression right = optimizeValue(((Elvis) expression).right);
+            return fold(left == ((Elvis) expression).left && right == ((Elvis) expression).right ? expression : new Elvis(left, right), isConstant(left) && isConstant(right));
+        }
+        if (type == Expand.class) {
+            final ValueExpression bases = optimizeValue(((Expand) expression).bases);
+            final ValueExpression count = optimizeValue(((Expand) expression).count);
+            return fold(bases == ((Expand) expression).bases && count == ((Expand) expression).count ? expression : new Expand(bases, count), isConstant(bases) && isConstant(count));
+        }
+        if (type == Nth.class) {
+            final ValueExpression values = optimizeValue(((Nth) expression).values);
+            final ValueExpression indices = optimizeValue(((Nth) expression).indices);
+            return fold(values == ((Nth) expression).values && indices == ((Nth) expression).indices ? expression : new Nth(values, indices), isConstant(values) && isConstant(indices));
+        }
+        if (type == Reverse.class) {
+            final ValueExpression values = optimizeValue(((Reverse) expression).values);
+            return fold(values == ((Reverse) expression).values ? expression : new Reverse(values), isConstant(values));
+        }
+        if (type == Bytes.class) {
+            final ValueExpression operand = optimizeValue(((Bytes) expression).operand);
+            return fold(operand == ((Bytes) expression).operand ? expression : new Bytes(operand), isConstant(operand));
+        }
+        if (type == FoldCat.class) {
+            final ValueExpression operand = optimizeValue(((FoldCat) expression).operand);
+            return fold(operand == ((FoldCat) expression).operand ? expression : new FoldCat(operand), isConstant(operand));
+        }
+        if (type == Count.class) {
+            final ValueExpression operand = optimizeValue(((Count) expression).operand);
+            return fold(operand == ((Count) expression).operand ? expression : new Count(operand), isConstant(operand));
+        }
+        if (type == First.class) {
+            final ValueExpression operand = optimizeValue(((First) expression).operand);
+            return fold(operand == ((First) expression).operand ? expression : new First(operand), isConstant(operand));
+        }
+        if (type == Last.class) {
+            final ValueExpression operand = optimizeValue(((Last) expression).operand);
+            return fold(operand == ((Last) expression).operand ? expression : new Last(operand), isConstant(operand));
+        }
+        if (type == FoldLeft.class || type == FoldRight.class) {
+            // The reducer is not part of this library, so a fold is never constant.
+            final Fold fold = (Fold) expression;
+            final ValueExpression values = optimizeValue(fold.values);
+            final ValueExpression initial = optimizeValue(fold.initial);
+            if (values == fold.values && initial == fold.initial) {
+                return expression;
+            }
+            return type == FoldLeft.class ? new FoldLeft(values, fold.reducer, initial) : new FoldRight(values, fold.reducer, initial);
+        }
+        if (type == NameRef.class) {
+            final ValueExpression limit = optimizeValue(((NameRef) expression).limit);
+            return limit == ((NameRef) expression).limit ? expression : new NameRef(((NameRef) expression).reference, limit);
+        }
+        if (type == DefinitionRef.class) {
+            final Token reference = optimizeToken(((DefinitionRef) expression).reference);
+            final ValueExpression limit = optimizeValue(((DefinitionRef) expression).limit);
+            return reference == ((DefinitionRef) expression).reference && limit == ((DefinitionRef) expression).limit ? expression : new DefinitionRef(reference, limit);
+        }
+        if (type == CompiledValueExpression.class) {
+            final ValueExpression inner = optimizeValue(((CompiledValueExpression) expression).expression);
+            return inner == ((CompiledValueExpression) expression).expression ? expression : CompiledValueExpression.compile(inner);
+        }
+        return expression;
+    }
+
+    /**
+     * Returns <code>expression</code> as a {@link CompiledValueExpression} if
+     * it is a unary or binary expression that yields at most one value, which
+     * the compiled expression evaluates without intermediate lists.
+     */
+    private static ValueExpression compile(final ValueExpression expression) {
+        if (expression == null || !(UNARY.containsKey(expression.getClass()) || BINARY.containsKey(expression.getClass()))) {
+            return expression;
+        }
+        final CompiledValueExpression compiled = CompiledValueExpression.compile(expression);
+        return compiled.isScalar() ? compiled : expression;
+    }
+
+    private static Expression compileOperands(final Expression expression) {
+        if (!COMPARISON.containsKey(expression.getClass())) {
+            return expression;
+        }
+        final ComparisonExpression comparison = (ComparisonExpression) expression;
+        final ValueExpression value = compile(comparison.value);
+        final ValueExpression predicate = compile(comparison.predicate);
+        return value == comparison.value && predicate == comparison.predicate ? expression : COMPARISON.get(expression.getClass()).apply(value, predicate);
+    }
+
+    private static ValueExpression fold(final ValueExpression expression, final boolean constant) {
+        return constant && !isConstant(expression) ? new FoldedValueExpression(expression) : expression;
+    }
+
+    private static boolean isConstant(final ValueExpression expression) {
+        return expression != null && (expression.getClass() == Const.class || expression.getClass() == FoldedValueExpression.class);
+    }
+
+    private Expression optimizeExpression(final Expression expression) {
+        final Class<?> type = expression.getClass();
+        if (type == And.class) {
+            final Expression left = optimizeExpression(((And) expression).left);
+            final Expression right = optimizeExpression(((And) expression).right);
+            if (isTrue(left)) {
+                return right;
+            }
+            if (isTrue(right) || isFalse(left)) {
+                return left;
+            }
+            return fold(left == ((And) expression).left && right == ((And) expression).right ? expression : new And(left, right), isConstant(left) && isConstant(right));
+        }
+        if (type == Or.class) {
+            final Expression left = optimizeExpression(((Or) expression).left);
+            final Expression right = optimizeExpression(((Or) expression).right);
+            if (isTrue(left) || isFalse(right)) {
+                return left;
+            }
+            if (isFalse(left)) {
+                return right;
+            }
+            return fold(left == ((Or) expression).left && right == ((Or) expression).right ? expression : new Or(left, right), isConstant(left) && isConstant(right));
+        }
+        if (type == Not.class) {
+            final Expression operand = optimizeExpression(((Not) expression).operand);
+            if (operand.getClass() == Not.class) {
+                return ((Not) operand).operand;
+            }
+            final Expression rewritten = operand == ((Not) expression).operand ? expression : new Not(operand);
+            // not(TRUE) is kept as it is, so it is recognized as false.
+            return isTrue(operand) ? rewritten : fold(rewritten, isConstant(operand));
+        }
+        if (COMPARISON.containsKey(type)) {
+            final ComparisonExpression comparison = (ComparisonExpression) expression;
+            final ValueExpression value = optimizeValue(comparison.value);
+            final ValueExpression predicate = optimizeValue(comparison.predicate);
+            final Expression rewritten = value == comparison.value && predicate == comparison.predicate ? expression : COMPARISON.get(type).apply(value, predicate);
+            // Without a value, the comparison is made with the current value, which depends on the parse state.
+            return fold(rewritten, isConstant(value) && isConstant(predicate));
+        }
+        return expression;
+    }
+
+    private static Expression fold(final Expression expression, final boolean constant) {
+        return constant && !isConstant(expression) ? new FoldedExpression(expression) : expression;
+    }
+
+    private static boolean isConstant(final Expression expression) {
+        return isTrue(expression) || isFalse(expression) || expression.getClass() == FoldedExpression.class;
+    }
+
+    private static boolean isTrue(final Expression expression) {
+        return expression.getClass() == True.class;
+    }
+
+    private static boolean isFalse(final Expression expression) {
+        return expression.getClass() == Not.class && isTrue(((Not) expression).operand);
+    }
+
+}
@@ -18,13 +18,12 @@ package io.parsingdata.metal;
 
 import static java.math.BigInteger.ZERO;
 
-import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
 import java.util.Locale;
 import java.util.Optional;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
+import io.parsingdata.metal.data.ImmutableList;
+import io.parsingdata.metal.data.InflateSource;
 import io.parsingdata.metal.data.ParseState;
 import io.parsingdata.metal.data.Slice;
 import io.parsingdata.metal.encoding.Encoding;
@@ -35,6 +34,13 @@ import io.parsingdata.metal.expression.value.ValueExpression;
 public final class Util {
 
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray(); // Private because array content is mutable.
+    private static final BigInteger[] SMALL_VALUES = new BigInteger[1024]; // Private because array content is mutable.
+
+    static {
+        for (int i = 0; i < SMALL_VALUES.length; i++) {
+            SMALL_VALUES[i] = BigInteger.valueOf(i);
+        }
+    }
 
     private Util() {}
 
@@ -74,6 +80,48 @@ public final class Util {
         return argument;
     }
 
+    /**
+     * Returns the sum of <code>left</code> and <code>right</code>. If both
+     * arguments and the sum fit in a <code>long</code>, the sum is calculated
+     * as a <code>long</code>. Results below 1024 are returned from a cache of
+     * preallocated instances, larger results are still allocated as a new
+     * {@link BigInteger}. If the sum does not fit in a <code>long</code>, it
+     * falls back to {@link BigInteger#add(BigInteger)}.
+     */
+    public static BigInteger add(final BigInteger left, final BigInteger right) {
+        if (left.bitLength() < Long.SIZE && right.bitLength() < Long.SIZE) {
+            return add(left, right.longValue());
+        }
+        return left.add(right);
+    }
+
+    public static BigInteger add(final BigInteger left, final long right) {
+        if (left.bitLength() < Long.SIZE) {
+            final long leftValue = left.longValue();
+            final long sum = leftValue + right;
+            if (((leftValue ^ sum) & (right ^ sum)) >= 0) {
+                return toBigInteger(sum);
+            }
+        }
+        return left.add(BigInteger.valueOf(right));
+    }
+
+    /**
+     * Returns whether the range of <code>length</code> bytes starting at
+     * <code>offset</code> lies within <code>[0, size)</code>, without
+     * allocating intermediate {@link BigInteger}s for common values.
+     */
+    public static boolean isWithin(final BigInteger offset, final BigInteger length, final long size) {
+        if (offset.bitLength() < Long.SIZE - 1 && length.bitLength() < Long.SIZE - 1) {
+            return offset.longValue() + length.longValue() <= size;
+        }
+        return offset.add(length).compareTo(BigInteger.valueOf(size)) <= 0;
+    }
+
+    private static BigInteger toBigInteger(final long value) {
+        return value >= 0 && value < SMALL_VALUES.length ? SMALL_VALUES[(int) value] : BigInteger.valueOf(value);
+    }
+
     public static String format(final String format, final Object... args) {
         return String.format(Locale.ENGLISH, format, args);
     }
@@ -89,27 +137,38 @@ public final class Util {
         return new String(hexChars);
     }
 
+    /**
+     * Returns a {@link ValueExpression} that decompresses the raw deflate
+     * data (RFC 1951) that <code>target</code> evaluates to. The resulting
+     * values are backed by an {@link InflateSource}, which decompresses on
+     * demand instead of keeping the decompressed data in memory. Values that
+     * cannot be decompressed result in an empty value.
+     */
     public static ValueExpression inflate(final ValueExpression target) {
         return new UnaryValueExpression(target) {
             @Override
             public Optional<Value> eval(final Value value, final ParseState parseState, final Encoding encoding) {
-                final Inflater inf = new Inflater(true);
-                inf.setInput(value.getValue());
-                final byte[] dataReceiver = new byte[512];
-                final ByteArrayOutputStream out = new ByteArrayOutputStream();
-                while(!inf.finished()) {
-                    try {
-                        final int processed = inf.inflate(dataReceiver);
-                        out.write(dataReceiver, 0, processed);
-                    } catch (final DataFormatException e) {
-                        return Optional.empty();
-                    }
-                }
-                return Optional.of(new Value(Slice.createFromBytes(out.toByteArray()), encoding));
+                return InflateSource.create(value.slice)
+                    .flatMap(source -> Slice.createFromSource(source, ZERO, source.length))
+                    .map(slice -> new Value(slice, encoding));
             }
         };
     }
 
+    /**
+     * Returns the operands that are not <code>null</code>, as the result of
+     * the <code>getOperands()</code> method of a token or expression.
+     */
+    public static Optional<ImmutableList<?>> operands(final Object... operands) {
+        ImmutableList<Object> list = new ImmutableList<>();
+        for (int index = operands.length - 1; index >= 0; index--) {
+            if (operands[index] != null) {
+                list = list.add(operands[index]);
+            }
+        }
+        return Optional.of(list);
+    }
+
     public static Optional<ParseState> success(final ParseState parseState) {
         return Optional.of(parseState);
     }
@@ -18,11 +18,33 @@ package io.parsingdata.metal.data;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 
+/**
+ * A stream of bytes that can be read at any offset.
+ * <p>
+ * Implementations must provide {@link #read(BigInteger, int)}, which returns
+ * a newly allocated copy of the requested data. The other access methods
+ * have default implementations based on it, which implementations that keep
+ * their data in memory override to avoid allocating and copying.
+ */
 public interface ByteStream {
 
     byte[] read(BigInteger offset, int length) throws IOException;
 
     boolean isAvailable(BigInteger offset, int length);
 
+    /**
+     * Returns a read-only {@link ByteBuffer} with <code>length</code> bytes
+     * starting at <code>offset</code>. The position of the buffer is zero and
+     * its limit is <code>length</code>.
+     */
+    default ByteBuffer asByteBuffer(final BigInteger offset, final int length) throws IOException {
+        return ByteBuffer.wrap(read(offset, length)).asReadOnlyBuffer();
+    }
+
+    default byte getByte(final BigInteger offset) throws IOException {
+        return read(offset, 1)[0];
+    }
+
 }
@@ -23,6 +23,7 @@ import static io.parsingdata.metal.Util.format;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import io.parsingdata.metal.Util;
@@ -37,9 +38,7 @@ public class ByteStreamSource extends Source {
 
     @Override
     protected byte[] getData(final BigInteger offset, final BigInteger length) {
-        if (!isAvailable(offset, length)) {
-            throw new IllegalStateException(format("Data to read is not available ([offset=%d;length=%d;source=%s).", offset, length, this));
-        }
+        checkAvailable(offset, length);
         try {
             return input.read(offset, length.intValueExact());
         } catch (final IOException exception) {
@@ -47,6 +46,32 @@ public class ByteStreamSource extends Source {
         }
     }
 
+    @Override
+    protected ByteBuffer asByteBuffer(final BigInteger offset, final BigInteger length) {
+        checkAvailable(offset, length);
+        try {
+            return input.asByteBuffer(offset, length.intValueExact());
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    @Override
+    protected byte getByte(final BigInteger offset) {
+        checkAvailable(offset, BigInteger.ONE);
+        try {
+            return input.getByte(offset);
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private void checkAvailable(final BigInteger offset, final BigInteger length) {
+        if (!isAvailable(offset, length)) {
+            throw new IllegalStateException(format("Data to read is not available ([offset=%d;length=%d;source=%s).", offset, length, this));
+        }
+    }
+
     @Override
     protected boolean isAvailable(final BigInteger offset, final BigInteger length) {
         return input.isAvailable(checkNotNegative(offset, "offset"), checkNotNegative(length, "length").intValueExact());
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.format;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import io.parsingdata.metal.Util;
+
+/**
+ * A {@link ByteStream} that wraps another ByteStream and keeps the data it
+ * reads in a {@link PageCache}.
+ * <p>
+ * Every read is translated into reads of whole, aligned pages of
+ * {@link PageCache#pageSize} bytes, which are looked up in the cache before
+ * they are read from the wrapped <code>input</code>. Pages that are not
+ * completely available in the input (i.e., at the end of the input) are not
+ * cached: reads that touch them are passed to the input directly. Bytes
+ * and buffers within a single page are returned from the cached page,
+ * without copying.
+ *
+ * @see PageCache
+ */
+public class CachingByteStream implements ByteStream {
+
+    public final ByteStream input;
+    public final PageCache cache;
+
+    public CachingByteStream(final ByteStream input, final PageCache cache) {
+        this.input = checkNotNull(input, "input");
+        this.cache = checkNotNull(cache, "cache");
+    }
+
+    @Override
+    public byte[] read(final BigInteger offset, final int length) throws IOException {
+        if (!isAvailable(offset, length)) {
+            throw new IOException(format("Data to read is not available (offset=%d;length=%d;stream=%s).", offset, length, this));
+        }
+        if (length == 0 || offset.bitLength() >= Long.SIZE - 1) {
+            return input.read(offset, length);
+        }
+        final long start = offset.longValue();
+        final long firstPage = start / cache.pageSize;
+        final long lastPage = (start + length - 1) / cache.pageSize;
+        if (!isPageAvailable(lastPage)) {
+            return input.read(offset, length);
+        }
+        final byte[] data = new byte[length];
+        int copied = 0;
+        for (long index = firstPage; index <= lastPage; index++) {
+            final byte[] page = getPage(index);
+            final int pageOffset = (int) Math.max(0, start - index * cache.pageSize);
+            final int toCopy = Math.min(length - copied, cache.pageSize - pageOffset);
+            System.arraycopy(page, pageOffset, data, copied, toCopy);
+            copied += toCopy;
+        }
+        return data;
+    }
+
+    /**
+     * Returns a read-only buffer with <code>length</code> bytes starting at
+     * <code>offset</code>. If these are in a single cached page, the buffer
+     * is a view of that page, without copying.
+     */
+    @Override
+    public ByteBuffer asByteBuffer(final BigInteger offset, final int length) throws IOException {
+        if (length == 0 || !isAvailable(offset, length) || offset.bitLength() >= Long.SIZE - 1) {
+            return ByteStream.super.asByteBuffer(offset, length);
+        }
+        final long start = offset.longValue();
+        final long index = start / cache.pageSize;
+        final int pageOffset = (int) (start - index * cache.pageSize);
+        if (pageOffset + length > cache.pageSize || !isPageAvailable(index)) {
+            return ByteStream.super.asByteBuffer(offset, length);
+        }
+        return ByteBuffer.wrap(getPage(index), pageOffset, length).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte getByte(final BigInteger offset) throws IOException {
+        if (!isAvailable(offset, 1) || offset.bitLength() >= Long.SIZE - 1) {
+            return ByteStream.super.getByte(offset);
+        }
+        final long start = offset.longValue();
+        final long index = start / cache.pageSize;
+        if (!isPageAvailable(index)) {
+            return ByteStream.super.getByte(offset);
+        }
+        return getPage(index)[(int) (start - index * cache.pageSize)];
+    }
+
+    private boolean isPageAvailable(final long index) {
+        return input.isAvailable(BigInteger.valueOf(index * cache.pageSize), cache.pageSize);
+    }
+
+    private byte[] getPage(final long index) throws IOException {
+        return cache.getPage(input, index, () -> input.read(BigInteger.valueOf(index * cache.pageSize), cache.pageSize));
+    }
+
+    @Override
+    public boolean isAvailable(final BigInteger offset, final int length) {
+        return input.isAvailable(offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + input + "," + cache + ")";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return Util.notNullAndSameClass(this, obj)
+            && Objects.equals(input, ((CachingByteStream)obj).input)
+            && Objects.equals(cache, ((CachingByteStream)obj).cache);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), input, cache);
+    }
+
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.format;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+
+import io.parsingdata.metal.Util;
+import io.parsingdata.metal.data.DeflateDecoder.Checkpoint;
+
+/**
+ * A {@link ByteStream} that presents the decompressed contents of a gzip
+ * (RFC 1952) or raw deflate (RFC 1951) file.
+ * <p>
+ * When the stream is created, the file is decompressed once to build an index
+ * of access points: the start of every gzip member and a {@link Checkpoint}
+ * at the first block boundary after every <code>accessPointSpan</code> bytes
+ * of output. A read decompresses only from the nearest preceding access
+ * point. The decoder is kept between reads, so sequential reads continue
+ * where the previous read stopped, and data in the last 32 KiB it decoded is
+ * read again from its window. Files with multiple gzip members (such as
+ * those written by bgzip) are supported. The CRC-32 and size in the trailer
+ * of every member are verified while building the index.
+ * <p>
+ * Every checkpoint holds a 32 KiB window, which is kept compressed. To bound
+ * the size of the index regardless of the decompressed size, at most
+ * <code>maxAccessPoints</code> access points with a checkpoint are kept, as
+ * in {@link InflateSource}: when that number is exceeded, every other one is
+ * dropped and the span between them is doubled. The access points at the
+ * start of a gzip member hold no window and are not counted.
+ * <p>
+ * The index can be stored in a sidecar file, so that it only needs to be
+ * built once. A stored index is only used if the size and modification time
+ * of the compressed file match those recorded in it.
+ */
+public class CompressedFileByteStream implements ByteStream {
+
+    public enum Format { RAW, GZIP }
+
+    public static final long DEFAULT_ACCESS_POINT_SPAN = 1 << 20;
+    public static final int DEFAULT_MAX_ACCESS_POINTS = 1024;
+
+    private static final int INDEX_MAGIC = 0x4d544c49; // "MTLI"
+    private static final int INDEX_VERSION = 2;
+    private static final int MEMBER_INDEX_SIZE = 24;
+    private static final int ACCESS_POINT_INDEX_SIZE = 13;
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+
+    public final Path path;
+    public final Format format;
+    public final long size;
+    private final ByteStreamSource input;
+    private final long inputSize;
+    private final Member[] members; // Private because array content is mutable.
+    private final AccessPoint[] accessPoints; // Private because array content is mutable.
+
+    private DeflateDecoder decoder = null;
+    private int decoderMember = -1;
+
+    private CompressedFileByteStream(final Path path, final Format format, final MappedFileByteStream input, final Member[] members, final AccessPoint[] accessPoints) {
+        this.path = checkNotNull(path, "path");
+        this.format = checkNotNull(format, "format");
+        this.input = new ByteStreamSource(checkNotNull(input, "input"));
+        this.inputSize = input.size;
+        this.members = checkNotNull(members, "members");
+        this.accessPoints = checkNotNull(accessPoints, "accessPoints");
+        this.size = members.length == 0 ? 0 : members[members.length - 1].outputStart + members[members.length - 1].outputLength;
+    }
+
+    public static CompressedFileByteStream create(final Path path, final Format format) throws IOException {
+        return create(path, format, DEFAULT_ACCESS_POINT_SPAN);
+    }
+
+    public static CompressedFileByteStream create(final Path path, final Format format, final long accessPointSpan) throws IOException {
+        return create(path, format, accessPointSpan, DEFAULT_MAX_ACCESS_POINTS);
+    }
+
+    public static CompressedFileByteStream create(final Path path, final Format format, final long accessPointSpan, final int maxAccessPoints) throws IOException {
+        checkNotNull(path, "path");
+        checkNotNull(format, "format");
+        if (accessPointSpan <= 0) {
+            throw new IllegalArgumentException("Argument accessPointSpan must be positive.");
+        }
+        if (maxAccessPoints <= 0) {
+            throw new IllegalArgumentException("Argument maxAccessPoints must be positive.");
+        }
+        return buildIndex(path, format, MappedFileByteStream.create(path), accessPointSpan, maxAccessPoints);
+    }
+
+    /**
+     * Creates a stream using the index stored in <code>indexPath</code>. If
+     * that file does not exist or does not match the compressed file, the
+     * index is built and written to <code>indexPath</code>.
+     */
+    public static CompressedFileByteStream create(final Path path, final Format format, final Path indexPath) throws IOException {
+        return create(path, format, indexPath, DEFAULT_ACCESS_POINT_SPAN);
+    }
+
+    public static CompressedFileByteStream create(final Path path, final Format format, final Path indexPath, final long accessPointSpan) throws IOException {
+        return create(path, format, indexPath, accessPointSpan, DEFAULT_MAX_ACCESS_POINTS);
+    }
+
+    public static CompressedFileByteStream create(final Path path, final Format format, final Path indexPath, final long accessPointSpan, final int maxAccessPoints) throws IOException {
+        checkNotNull(indexPath, "indexPath");
+        if (Files.exists(indexPath)) {
+            final CompressedFileByteStream stream = readIndex(checkNotNull(path, "path"), checkNotNull(format, "format"), indexPath);
+            if (stream != null) {
+                return stream;
+            }
+        }
+        final CompressedFileByteStream stream = create(path, format, accessPointSpan, maxAccessPoints);
+        stream.writeIndex(indexPath);
+        return stream;
+    }
+
+    private static CompressedFileByteStream buildIndex(final Path path, final Format format, final MappedFileByteStream input, final long accessPointSpan, final int maxAccessPoints) throws IOException {
+        final ByteStreamSource source = new ByteStreamSource(input);
+        final List<Member> members = new ArrayList<>();
+        final List<AccessPoint> accessPoints = new ArrayList<>();
+        final byte[] buffer = new byte[1 << 15];
+        long dataOffset = format == Format.GZIP ? readGzipHeader(input, 0) : 0;
+        long outputStart = 0;
+        long span = accessPointSpan;
+        int checkpointCount = 0;
+        while (true) {
+            final DeflateDecoder decoder = new DeflateDecoder(createSlice(source, input.size, dataOffset));
+            final CRC32 crc = new CRC32();
+            accessPoints.add(new AccessPoint(members.size(), outputStart, null));
+            long lastAccessPoint = outputStart;
+            try {
+                while (!decoder.isFinished()) {
+                    if (decoder.isAtBlockBoundary() && outputStart + decoder.getOutputPosition() - lastAccessPoint >= span) {
+                        lastAccessPoint = outputStart + decoder.getOutputPosition();
+                        accessPoints.add(new AccessPoint(members.size(), lastAccessPoint, decoder.checkpoint()));
+                        if (++checkpointCount > maxAccessPoints) {
+                            checkpointCount = thin(accessPoints);
+                            span *= 2;
+                            lastAccessPoint = accessPoints.get(accessPoints.size() - 1).outputOffset;
+                        }
+                    }
+                    final int read = decoder.read(buffer, 0, buffer.length);
+                    if (read > 0) {
+                        crc.update(buffer, 0, read);
+                    }
+                }
+            } catch (final DataFormatException exception) {
+                throw new IOException(format("Invalid compressed data in member at offset %d of %s.", dataOffset, path), exception);
+            }
+            members.add(new Member(dataOffset, outputStart, decoder.getOutputPosition()));
+            outputStart += decoder.getOutputPosition();
+            if (format == Format.RAW) {
+                break;
+            }
+            final long trailerOffset = dataOffset + decoder.getInputPosition();
+            checkGzipTrailer(input, trailerOffset, crc.getValue(), decoder.getOutputPosition());
+            final long nextMember = trailerOffset + GZIP_TRAILER_SIZE;
+            if (!isGzipMember(input, nextMember)) {
+                break;
+            }
+            dataOffset = readGzipHeader(input, nextMember);
+        }
+        return new CompressedFileByteStream(path, format, input, members.toArray(new Member[0]), accessPoints.toArray(new AccessPoint[0]));
+    }
+
+    /**
+     * Removes every other access point with a checkpoint, keeping the ones
+     * with an odd index among those, and returns the amount kept. Access
+     * points at the start of a member are always kept.
+     */
+    private static int thin(final List<AccessPoint> accessPoints) {
+        int kept = 0;
+        int checkpoints = 0;
+        for (final AccessPoint accessPoint : accessPoints) {
+            if (accessPoint.checkpoint == null || checkpoints++ % 2 == 1) {
+                accessPoints.set(kept++, accessPoint);
+            }
+        }
+        accessPoints.subList(kept, accessPoints.size()).clear();
+        return checkpoints / 2;
+    }
+
+    private static Slice createSlice(final Source source, final long inputSize, final long offset) {
+        return Slice.createFromSource(source, BigInteger.valueOf(offset), BigInteger.valueOf(inputSize - offset)).get();
+    }
+
+    private static boolean isGzipMember(final ByteStream input, final long offset) throws IOException {
+        if (!input.isAvailable(BigInteger.valueOf(offset), GZIP_HEADER_SIZE)) {
+            return false;
+        }
+        final byte[] magic = input.read(BigInteger.valueOf(offset), 2);
+        return magic[0] == (byte) 0x1f && magic[1] == (byte) 0x8b;
+    }
+
+    private static long readGzipHeader(final ByteStream input, final long offset) throws IOException {
+        if (!isGzipMember(input, offset)) {
+            throw new IOException(format("No gzip header at offset %d.", offset));
+        }
+        final byte[] header = input.read(BigInteger.valueOf(offset), GZIP_HEADER_SIZE);
+        if (header[2] != 8) {
+            throw new IOException(format("Unsupported gzip compression method %d at offset %d.", header[2], offset));
+        }
+        final int flags = header[3] & 0xff;
+        long position = offset + GZIP_HEADER_SIZE;
+        if ((flags & FEXTRA) != 0) {
+            final byte[] extraLength = input.read(BigInteger.valueOf(position), 2);
+            position += 2 + ((extraLength[0] & 0xff) | (extraLength[1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipZeroTerminated(input, position);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            position = skipZeroTerminated(input, position);
+        }
+        if ((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        return position;
+    }
+
+    private static long skipZeroTerminated(final ByteStream input, final long offset) throws IOException {
+        long position = offset;
+        while (input.read(BigInteger.valueOf(position), 1)[0] != 0) {
+            position++;
+        }
+        return position + 1;
+    }
+
+    private static void checkGzipTrailer(final ByteStream input, final long offset, final long crc, final long size) throws IOException {
+        if (!input.isAvailable(BigInteger.valueOf(offset), GZIP_TRAILER_SIZE)) {
+            throw new IOException(format("Missing gzip trailer at offset %d.", offset));
+        }
+        final byte[] trailer = input.read(BigInteger.valueOf(offset), GZIP_TRAILER_SIZE);
+        if (readInt(trailer, 0) != crc || readInt(trailer, 4) != (size & 0xffffffffL)) {
+            throw new IOException(format("Invalid gzip trailer at offset %d.", offset));
+        }
+    }
+
+    private static long readInt(final byte[] data, final int offset) {
+        return (data[offset] & 0xffL) | (data[offset + 1] & 0xffL) << 8 | (data[offset + 2] & 0xffL) << 16 | (data[offset + 3] & 0xffL) << 24;
+    }
+
+    public void writeIndex(final Path indexPath) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(checkNotNull(indexPath, "indexPath"))))) {
+            output.writeInt(INDEX_MAGIC);
+            output.writeInt(INDEX_VERSION);
+            output.writeInt(format.ordinal());
+            output.writeLong(inputSize);
+            output.writeLong(Files.getLastModifiedTime(path).toMillis());
+            output.writeInt(members.length);
+            for (final Member member : members) {
+                output.writeLong(member.dataOffset);
+                output.writeLong(member.outputStart);
+                output.writeLong(member.outputLength);
+            }
+            output.writeInt(accessPoints.length);
+            for (final AccessPoint accessPoint : accessPoints) {
+                output.writeInt(accessPoint.member);
+                output.writeLong(accessPoint.outputOffset);
+                output.writeBoolean(accessPoint.checkpoint != null);
+                if (accessPoint.checkpoint != null) {
+                    accessPoint.checkpoint.write(output);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a stream with the index from <code>indexPath</code>, or
+     * <code>null</code> if that index does not match the compressed file or
+     * cannot be read (for instance because it is truncated or corrupt).
+     */
+    private static CompressedFileByteStream readIndex(final Path path, final Format format, final Path indexPath) throws IOException {
+        final MappedFileByteStream input = MappedFileByteStream.create(path);
+        final long indexSize = Files.size(indexPath);
+        try (DataInputStream index = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (index.readInt() != INDEX_MAGIC
+                || index.readInt() != INDEX_VERSION
+                || index.readInt() != format.ordinal()
+                || index.readLong() != input.size
+                || index.readLong() != Files.getLastModifiedTime(path).toMillis()) {
+                return null;
+            }
+            final int memberCount = index.readInt();
+            if (memberCount <= 0 || memberCount > indexSize / MEMBER_INDEX_SIZE) {
+                return null;
+            }
+            final Member[] members = new Member[memberCount];
+            for (int i = 0; i < members.length; i++) {
+                members[i] = new Member(index.readLong(), index.readLong(), index.readLong());
+                if (members[i].dataOffset < 0 || members[i].dataOffset > input.size || members[i].outputLength < 0
+                    || members[i].outputStart != (i == 0 ? 0 : members[i - 1].outputStart + members[i - 1].outputLength)) {
+                    return null;
+                }
+            }
+            final int accessPointCount = index.readInt();
+            if (accessPointCount < memberCount || accessPointCount > indexSize / ACCESS_POINT_INDEX_SIZE) {
+                return null;
+            }
+            final AccessPoint[] accessPoints = new AccessPoint[accessPointCount];
+            for (int i = 0; i < accessPoints.length; i++) {
+                accessPoints[i] = new AccessPoint(index.readInt(), index.readLong(), index.readBoolean() ? Checkpoint.read(index) : null);
+                if (accessPoints[i].member < 0 || accessPoints[i].member >= memberCount || (i > 0 && accessPoints[i].member < accessPoints[i - 1].member)) {
+                    return null;
+                }
+            }
+            return new CompressedFileByteStream(path, format, input, members, accessPoints);
+        } catch (final IOException | RuntimeException exception) {
+            // A truncated or corrupt index is treated like a stale one, so that it is rebuilt.
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] read(final BigInteger offset, final int length) throws IOException {
+        if (!isAvailable(offset, length)) {
+            throw new IOException(format("Data to read is not available (offset=%d;length=%d;stream=%s).", offset, length, this));
+        }
+        final byte[] data = new byte[length];
+        long position = offset.longValue();
+        int copied = 0;
+        synchronized (this) {
+            try {
+                while (copied < length) {
+                    final int memberIndex = findMember(position);
+                    final Member member = members[memberIndex];
+                    final int toRead = (int) Math.min(length - copied, member.outputStart + member.outputLength - position);
+                    int read = readWindow(memberIndex, position - member.outputStart, data, copied, toRead);
+                    final DeflateDecoder memberDecoder = read < toRead ? prepareDecoder(memberIndex, position - member.outputStart + read) : decoder;
+                    while (read < toRead) {
+                        final int result = memberDecoder.read(data, copied + read, toRead - read);
+                        if (result < 0) {
+                            throw new IOException(format("Compressed data ended prematurely (offset=%d;length=%d;stream=%s).", offset, length, this));
+                        }
+                        read += result;
+                    }
+                    copied += toRead;
+                    position += toRead;
+                }
+            } catch (final DataFormatException exception) {
+                decoder = null;
+                throw new IOException(exception);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Reads the part of the requested data that the decoder has already
+     * decoded and still has in its window, so that reading data again (for
+     * instance a byte that was just read through {@link #getByte(BigInteger)})
+     * does not restart decoding from an access point.
+     */
+    private int readWindow(final int memberIndex, final long memberOffset, final byte[] data, final int position, final int length) {
+        return decoder == null || decoderMember != memberIndex ? 0 : decoder.readWindow(memberOffset, data, position, length);
+    }
+
+    private DeflateDecoder prepareDecoder(final int memberIndex, final long memberOffset) throws DataFormatException {
+        final AccessPoint accessPoint = findAccessPoint(memberIndex, members[memberIndex].outputStart + memberOffset);
+        final long accessPointOffset = accessPoint.checkpoint == null ? 0 : accessPoint.checkpoint.outputPosition;
+        if (decoder == null || decoderMember != memberIndex || decoder.getOutputPosition() > memberOffset || decoder.getOutputPosition() < accessPointOffset) {
+            final Slice slice = createSlice(input, inputSize, members[memberIndex].dataOffset);
+            decoder = accessPoint.checkpoint == null ? new DeflateDecoder(slice) : new DeflateDecoder(slice, accessPoint.checkpoint);
+            decoderMember = memberIndex;
+        }
+        decoder.skip(memberOffset - decoder.getOutputPosition());
+        return decoder;
+    }
+
+    /**
+     * Returns the index of the last member with output that starts at or
+     * before <code>position</code>.
+     */
+    private int findMember(final long position) {
+        int low = 0;
+        int high = members.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (members[middle].outputStart <= position) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the last access point in the given member at or before
+     * <code>position</code>.
+     */
+    private AccessPoint findAccessPoint(final int memberIndex, final long position) {
+        int low = 0;
+        int high = accessPoints.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            final AccessPoint accessPoint = accessPoints[middle];
+            if (accessPoint.member < memberIndex || (accessPoint.member == memberIndex && accessPoint.outputOffset <= position)) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return accessPoints[low];
+    }
+
+    int getCheckpointCount() {
+        int count = 0;
+        for (final AccessPoint accessPoint : accessPoints) {
+            if (accessPoint.checkpoint != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isAvailable(final BigInteger offset, final int length) {
+        return offset.signum() >= 0
+            && length >= 0
+            && offset.bitLength() < Long.SIZE
+            && offset.longValue() <= size - length;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + path + ":" + format + ":" + size + ")";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return Util.notNullAndSameClass(this, obj)
+            && Objects.equals(path, ((CompressedFileByteStream)obj).path)
+            && Objects.equals(format, ((CompressedFileByteStream)obj).format);
+            // The other fields are excluded from equals() and hashCode() because they are derived from the file.
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), path, format);
+    }
+
+    private static class Member {
+
+        final long dataOffset;
+        final long outputStart;
+        final long outputLength;
+
+        Member(final long dataOffset, final long outputStart, final long outputLength) {
+            this.dataOffset = dataOffset;
+            this.outputStart = outputStart;
+            this.outputLength = outputLength;
+        }
+
+    }
+
+    private static class AccessPoint {
+
+        final int member;
+        final long outputOffset;
+        final Checkpoint checkpoint;
+
+        AccessPoint(final int member, final long outputOffset, final Checkpoint checkpoint) {
+            this.member = member;
+            this.outputOffset = outputOffset;
+            this.checkpoint = checkpoint;
+        }
+
+    }
+
+}
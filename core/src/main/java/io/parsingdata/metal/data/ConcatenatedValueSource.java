@@ -23,6 +23,7 @@ import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNegative;
 import static io.parsingdata.metal.Util.checkNotNull;
 import static io.parsingdata.metal.Util.format;
+import static io.parsingdata.metal.Util.isWithin;
 
 import java.math.BigInteger;
 import java.util.Objects;
@@ -32,11 +33,24 @@ import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.expression.value.Value;
 
+/**
+ * A {@link Source} that presents a list of {@link Value}s as a single
+ * contiguous range of bytes.
+ * <p>
+ * On the first read, the start offset of every value within the
+ * concatenation is calculated and stored in an index. A read looks up the first value it
+ * overlaps through a binary search on this index and then reads only the
+ * required range of each value it overlaps.
+ */
 public class ConcatenatedValueSource extends Source {
 
     public final ImmutableList<Value> values;
     public final BigInteger length;
 
+    // Volatile because they are lazily initialized on the first read, which may happen on any thread. Starts is set before parts.
+    private volatile Value[] parts = null; // Private because array content is mutable.
+    private volatile BigInteger[] starts = null; // Private because array content is mutable.
+
     private ConcatenatedValueSource(final ImmutableList<Value> values, final BigInteger length) {
         this.values = checkNotNull(values, "values");
         this.length = checkNotNegative(length, "length");
@@ -71,30 +85,89 @@ public class ConcatenatedValueSource extends Source {
         return intermediate(() -> calculateTotalSize(values.tail, size.add(values.head.slice.length)));
     }
 
+    private synchronized void buildIndex() {
+        if (parts == null) {
+            final Value[] parts = new Value[(int) values.size];
+            final BigInteger[] starts = new BigInteger[parts.length];
+            buildIndex(values, parts, starts, 0, ZERO).computeResult();
+            this.starts = starts;
+            this.parts = parts;
+        }
+    }
+
+    private static Trampoline<Integer> buildIndex(final ImmutableList<Value> values, final Value[] parts, final BigInteger[] starts, final int index, final BigInteger start) {
+        if (values.isEmpty()) {
+            return complete(() -> index);
+        }
+        parts[index] = values.head;
+        starts[index] = start;
+        return intermediate(() -> buildIndex(values.tail, parts, starts, index + 1, start.add(values.head.slice.length)));
+    }
+
     @Override
     protected byte[] getData(final BigInteger offset, final BigInteger length) {
         if (!isAvailable(offset, length)) {
             throw new IllegalStateException(format("Data to read is not available (offset=%d;length=%d;source=%s).", offset, length, this));
         }
-        return getData(values, ZERO, ZERO, offset, length, new byte[length.intValueExact()]).computeResult();
+        final byte[] output = new byte[length.intValueExact()];
+        copy(offset, output, 0, output.length);
+        return output;
     }
 
-    private Trampoline<byte[]> getData(final ImmutableList<Value> values, final BigInteger currentOffset, final BigInteger currentDest, final BigInteger offset, final BigInteger length, final byte[] output) {
-        if (length.compareTo(ZERO) <= 0) {
-            return complete(() -> output);
+    @Override
+    protected void readInto(final BigInteger offset, final int length, final byte[] destination, final int position) {
+        if (!isAvailable(offset, BigInteger.valueOf(length))) {
+            throw new IllegalStateException(format("Data to read is not available (offset=%d;length=%d;source=%s).", offset, length, this));
+        }
+        copy(offset, destination, position, length);
+    }
+
+    private void copy(final BigInteger offset, final byte[] destination, final int position, final int length) {
+        if (parts == null) {
+            buildIndex();
         }
-        if (currentOffset.add(values.head.slice.length).compareTo(offset) <= 0) {
-            return intermediate(() -> getData(values.tail, currentOffset.add(values.head.slice.length), currentDest, offset, length, output));
+        // Parts is read first, so that starts is read after it was set.
+        final Value[] parts = this.parts;
+        final BigInteger[] starts = this.starts;
+        int copied = 0;
+        for (int index = findPart(starts, offset); copied < length; index++) {
+            final Slice slice = parts[index].slice;
+            final BigInteger localOffset = copied == 0 ? offset.subtract(starts[index]) : ZERO;
+            final int toCopy = slice.length.subtract(localOffset).min(BigInteger.valueOf(length - copied)).intValueExact();
+            if (toCopy > 0) {
+                slice.source.readInto(Util.add(slice.offset, localOffset), toCopy, destination, position + copied);
+                copied += toCopy;
+            }
         }
-        final BigInteger localOffset = offset.subtract(currentOffset).compareTo(ZERO) < 0 ? ZERO : offset.subtract(currentOffset);
-        final BigInteger toCopy = length.compareTo(values.head.slice.length.subtract(localOffset)) > 0 ? values.head.slice.length.subtract(localOffset) : length;
-        System.arraycopy(values.head.slice.getData(), localOffset.intValueExact(), output, currentDest.intValueExact(), toCopy.intValueExact());
-        return intermediate(() -> getData(values.tail, currentOffset.add(values.head.slice.length), currentDest.add(toCopy), offset, length.subtract(toCopy), output));
+    }
+
+    /**
+     * Returns the index of the last part that starts at or before
+     * <code>offset</code>.
+     */
+    private static int findPart(final BigInteger[] starts, final BigInteger offset) {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (starts[middle].compareTo(offset) <= 0) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return low;
     }
 
     @Override
     protected boolean isAvailable(final BigInteger offset, final BigInteger length) {
-        return checkNotNegative(length, "length").add(checkNotNegative(offset, "offset")).compareTo(this.length) <= 0;
+        checkNotNegative(length, "length");
+        checkNotNegative(offset, "offset");
+        if (this.length.bitLength() < Long.SIZE) {
+            return isWithin(offset, length, this.length.longValue());
+        }
+        return length.add(offset).compareTo(this.length) <= 0;
     }
 
     @Override
@@ -107,6 +180,7 @@ public class ConcatenatedValueSource extends Source {
         return Util.notNullAndSameClass(this, obj)
             && Objects.equals(values, ((ConcatenatedValueSource)obj).values)
             && Objects.equals(length, ((ConcatenatedValueSource)obj).length);
+        // The parts and starts fields are excluded from equals() and hashCode() because they are cached data.
     }
 
     @Override
@@ -20,8 +20,10 @@ import static io.parsingdata.metal.Util.bytesToHexString;
 import static io.parsingdata.metal.Util.checkNotNegative;
 import static io.parsingdata.metal.Util.checkNotNull;
 import static io.parsingdata.metal.Util.format;
+import static io.parsingdata.metal.Util.isWithin;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -45,9 +47,34 @@ public class ConstantSource extends Source {
         return outputData;
     }
 
+    @Override
+    protected void readInto(final BigInteger offset, final int length, final byte[] destination, final int position) {
+        if (!isAvailable(offset, BigInteger.valueOf(length))) {
+            throw new IllegalStateException(format("Data to read is not available ([offset=%d;length=%d;source=%s).", offset, length, this));
+        }
+        System.arraycopy(data, offset.intValueExact(), destination, position, length);
+    }
+
+    @Override
+    protected ByteBuffer asByteBuffer(final BigInteger offset, final BigInteger length) {
+        if (!isAvailable(offset, length)) {
+            throw new IllegalStateException(format("Data to read is not available ([offset=%d;length=%d;source=%s).", offset, length, this));
+        }
+        return ByteBuffer.wrap(data, offset.intValueExact(), length.intValueExact()).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    protected byte getByte(final BigInteger offset) {
+        if (!isAvailable(offset, BigInteger.ONE)) {
+            throw new IllegalStateException(format("Data to read is not available ([offset=%d;length=%d;source=%s).", offset, 1, this));
+        }
+        return data[offset.intValueExact()];
+    }
+
     @Override
     protected boolean isAvailable(final BigInteger offset, final BigInteger length) {
-        return checkNotNegative(length, "length").add(checkNotNegative(offset, "offset")).compareTo(BigInteger.valueOf(data.length)) <= 0;
+        checkNotNegative(length, "length");
+        return isWithin(checkNotNegative(offset, "offset"), length, data.length);
     }
 
     @Override
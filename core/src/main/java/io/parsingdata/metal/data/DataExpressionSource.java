@@ -21,8 +21,10 @@ import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNegative;
 import static io.parsingdata.metal.Util.checkNotNull;
 import static io.parsingdata.metal.Util.format;
+import static io.parsingdata.metal.Util.isWithin;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -39,7 +41,7 @@ public class DataExpressionSource extends Source {
     public final ParseState parseState;
     public final Encoding encoding;
 
-    private byte[] cache = null;
+    private Slice cache = null;
 
     public DataExpressionSource(final ValueExpression dataExpression, final int index, final ParseState parseState, final Encoding encoding) {
         this.dataExpression = checkNotNull(dataExpression, "dataExpression");
@@ -50,22 +52,52 @@ public class DataExpressionSource extends Source {
 
     @Override
     protected byte[] getData(final BigInteger offset, final BigInteger length) {
-        checkNotNegative(offset, "offset");
-        final byte[] data = getValue();
-        if (checkNotNegative(length, "length").add(offset).compareTo(BigInteger.valueOf(data.length)) > 0) {
+        final Slice slice = getAvailableSlice(offset, length);
+        return slice.source.getData(Util.add(slice.offset, offset), length);
+    }
+
+    @Override
+    protected void readInto(final BigInteger offset, final int length, final byte[] destination, final int position) {
+        final Slice slice = getAvailableSlice(offset, BigInteger.valueOf(length));
+        slice.source.readInto(Util.add(slice.offset, offset), length, destination, position);
+    }
+
+    @Override
+    protected ByteBuffer asByteBuffer(final BigInteger offset, final BigInteger length) {
+        final Slice slice = getAvailableSlice(offset, length);
+        return slice.source.asByteBuffer(Util.add(slice.offset, offset), length);
+    }
+
+    @Override
+    protected byte getByte(final BigInteger offset) {
+        final Slice slice = getAvailableSlice(offset, BigInteger.ONE);
+        return slice.source.getByte(Util.add(slice.offset, offset));
+    }
+
+    private Slice getAvailableSlice(final BigInteger offset, final BigInteger length) {
+        if (!isAvailable(offset, length)) {
             throw new IllegalStateException(format("Data to read is not available ([offset=%d;length=%d;source=%s).", offset, length, this));
         }
-        final byte[] outputData = new byte[length.intValueExact()];
-        System.arraycopy(data, offset.intValueExact(), outputData, 0, outputData.length);
-        return outputData;
+        return getSlice();
     }
 
     @Override
     protected boolean isAvailable(final BigInteger offset, final BigInteger length) {
-        return checkNotNegative(offset, "offset").add(checkNotNegative(length, "length")).compareTo(BigInteger.valueOf(getValue().length)) <= 0;
+        checkNotNegative(offset, "offset");
+        checkNotNegative(length, "length");
+        final BigInteger size = getSlice().length;
+        if (size.bitLength() < Long.SIZE) {
+            return isWithin(offset, length, size.longValue());
+        }
+        return offset.add(length).compareTo(size) <= 0;
     }
 
-    private synchronized byte[] getValue() {
+    /**
+     * Returns the slice of the value this source refers to. Only the slice is
+     * cached (instead of a copy of its data), so that reads are delegated to
+     * the value's own source, which may not keep its data in memory.
+     */
+    private synchronized Slice getSlice() {
         if (cache == null) {
             final ImmutableList<Optional<Value>> results = dataExpression.eval(parseState, encoding);
             if (results.size <= index) {
@@ -73,7 +105,7 @@ public class DataExpressionSource extends Source {
             }
             cache = getValueAtIndex(results, index, 0)
                 .computeResult()
-                .map(Value::getValue)
+                .map(value -> value.slice)
                 .orElseThrow(() -> new IllegalStateException(format("ValueExpression dataExpression yields empty Value at index %d.", index)));
         }
         return cache;
@@ -0,0 +1,527 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import io.parsingdata.metal.Util;
+
+/**
+ * A decoder for raw deflate data (RFC 1951) that reads its input from a
+ * {@link Source}.
+ * <p>
+ * Unlike {@link java.util.zip.Inflater}, the complete state of this decoder
+ * at the start of a block can be captured in a {@link Checkpoint}: the
+ * position in the input (in bits, since blocks are not byte-aligned), the
+ * position in the output and the last 32 KiB of output (the window that
+ * back-references may refer to). A new decoder can be created from a
+ * checkpoint to resume decoding at that point. The window of a checkpoint is
+ * kept compressed with deflate, since checkpoints are kept for a long time
+ * and only a few of them are used to resume decoding.
+ * <p>
+ * Calls to {@link #read(byte[], int, int)} return at the end of every block,
+ * so that the caller can take a checkpoint between blocks.
+ * <p>
+ * Huffman codes are decoded with a lookup table indexed by the next
+ * nine bits of input. Only the rare longer codes are decoded
+ * one bit at a time.
+ */
+final class DeflateDecoder {
+
+    static final int WINDOW_SIZE = 1 << 15;
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+    private static final int INPUT_BUFFER_SIZE = 1 << 13;
+    private static final int MAX_BITS = 15;
+    private static final int LOOKUP_BITS = 9;
+
+    private static final int HEADER = 0;
+    private static final int STORED = 1;
+    private static final int HUFFMAN = 2;
+    private static final int DONE = 3;
+
+    private static final int[] LENGTH_BASE = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+    private static final int[] LENGTH_EXTRA = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0 };
+    private static final int[] DISTANCE_BASE = { 1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577 };
+    private static final int[] DISTANCE_EXTRA = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13 };
+    private static final int[] CODE_LENGTH_ORDER = { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+    private static final Huffman FIXED_LITERALS;
+    private static final Huffman FIXED_DISTANCES;
+
+    static {
+        final int[] lengths = new int[288 + 30];
+        for (int symbol = 0; symbol < 288; symbol++) {
+            lengths[symbol] = symbol < 144 ? 8 : symbol < 256 ? 9 : symbol < 280 ? 7 : 8;
+        }
+        for (int symbol = 0; symbol < 30; symbol++) {
+            lengths[288 + symbol] = 5;
+        }
+        try {
+            FIXED_LITERALS = new Huffman(lengths, 0, 288);
+            FIXED_DISTANCES = new Huffman(lengths, 288, 30);
+        } catch (final DataFormatException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private final Slice input;
+    private final long inputLength;
+    private final byte[] inputBuffer = new byte[INPUT_BUFFER_SIZE];
+    private long inputBufferStart = 0;
+    private int inputBufferLength = 0;
+    private long inputPosition;
+    private long bitBuffer = 0;
+    private int bitCount = 0;
+
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private long outputPosition;
+
+    private int state = HEADER;
+    private boolean lastBlock = false;
+    private int storedRemaining = 0;
+    private Huffman literals = null;
+    private Huffman distances = null;
+    private int copyLength = 0;
+    private int copyDistance = 0;
+
+    DeflateDecoder(final Slice input) {
+        this.input = checkNotNull(input, "input");
+        this.inputLength = input.length.longValueExact();
+        this.inputPosition = 0;
+        this.outputPosition = 0;
+    }
+
+    DeflateDecoder(final Slice input, final Checkpoint checkpoint) throws DataFormatException {
+        this.input = checkNotNull(input, "input");
+        this.inputLength = input.length.longValueExact();
+        this.inputPosition = checkNotNull(checkpoint, "checkpoint").bitPosition >>> 3;
+        this.outputPosition = checkpoint.outputPosition;
+        checkpoint.readWindow(window);
+        bits((int) (checkpoint.bitPosition & 7));
+    }
+
+    long getOutputPosition() {
+        return outputPosition;
+    }
+
+    /**
+     * Returns the amount of input bytes that have been (partially) consumed.
+     * After the last block, this is the length of the compressed data.
+     */
+    long getInputPosition() {
+        return inputPosition - (bitCount >>> 3);
+    }
+
+    boolean isAtBlockBoundary() {
+        return state == HEADER && !lastBlock;
+    }
+
+    boolean isFinished() {
+        return state == DONE;
+    }
+
+    Checkpoint checkpoint() {
+        if (!isAtBlockBoundary()) {
+            throw new IllegalStateException("A checkpoint can only be taken at a block boundary.");
+        }
+        return new Checkpoint((inputPosition << 3) - bitCount, outputPosition, compress(window));
+    }
+
+    /**
+     * Decodes at most <code>length</code> bytes into <code>destination</code>,
+     * starting at <code>position</code>. Returns the amount of bytes decoded,
+     * which is less than <code>length</code> (possibly zero) if the end of a
+     * block is reached, or <code>-1</code> if the end of the data has been
+     * reached.
+     */
+    int read(final byte[] destination, final int position, final int length) throws DataFormatException {
+        int produced = 0;
+        while (produced < length) {
+            if (state == HEADER) {
+                if (lastBlock) {
+                    state = DONE;
+                }
+                else {
+                    readHeader();
+                }
+            }
+            else if (state == STORED) {
+                if (storedRemaining == 0) {
+                    state = HEADER;
+                    return produced;
+                }
+                final byte value = (byte) bits(8);
+                window[(int) (outputPosition++ & WINDOW_MASK)] = value;
+                destination[position + produced++] = value;
+                storedRemaining--;
+            }
+            else if (state == HUFFMAN) {
+                if (copyLength > 0) {
+                    final byte value = window[(int) ((outputPosition - copyDistance) & WINDOW_MASK)];
+                    window[(int) (outputPosition++ & WINDOW_MASK)] = value;
+                    destination[position + produced++] = value;
+                    copyLength--;
+                    continue;
+                }
+                final int symbol = literals.decode(this);
+                if (symbol < 256) {
+                    final byte value = (byte) symbol;
+                    window[(int) (outputPosition++ & WINDOW_MASK)] = value;
+                    destination[position + produced++] = value;
+                }
+                else if (symbol == 256) {
+                    state = HEADER;
+                    return produced;
+                }
+                else {
+                    readCopy(symbol - 257);
+                }
+            }
+            else {
+                return produced == 0 ? -1 : produced;
+            }
+        }
+        return produced;
+    }
+
+    /**
+     * Copies at most <code>length</code> bytes of output starting at output
+     * position <code>from</code> that have already been decoded and are still
+     * in the window into <code>destination</code>, starting at
+     * <code>position</code>. Returns the amount of bytes copied, which is
+     * zero if the byte at <code>from</code> is not in the window.
+     */
+    int readWindow(final long from, final byte[] destination, final int position, final int length) {
+        if (from < 0 || from < outputPosition - WINDOW_SIZE || from >= outputPosition) {
+            return 0;
+        }
+        final int count = (int) Math.min(length, outputPosition - from);
+        for (int i = 0; i < count; i++) {
+            destination[position + i] = window[(int) ((from + i) & WINDOW_MASK)];
+        }
+        return count;
+    }
+
+    long skip(final long count) throws DataFormatException {
+        final byte[] buffer = new byte[(int) Math.min(count, INPUT_BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < count) {
+            final int read = read(buffer, 0, (int) Math.min(count - skipped, buffer.length));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    private void readHeader() throws DataFormatException {
+        lastBlock = bits(1) == 1;
+        final int type = bits(2);
+        if (type == 0) {
+            final int unaligned = bitCount & 7;
+            bitBuffer >>>= unaligned;
+            bitCount -= unaligned;
+            storedRemaining = bits(16);
+            if (storedRemaining != (~bits(16) & 0xffff)) {
+                throw new DataFormatException("Invalid stored block length.");
+            }
+            state = STORED;
+        }
+        else if (type == 1) {
+            literals = FIXED_LITERALS;
+            distances = FIXED_DISTANCES;
+            state = HUFFMAN;
+        }
+        else if (type == 2) {
+            readDynamicCodes();
+            state = HUFFMAN;
+        }
+        else {
+            throw new DataFormatException("Invalid block type.");
+        }
+    }
+
+    private void readDynamicCodes() throws DataFormatException {
+        final int literalCount = bits(5) + 257;
+        final int distanceCount = bits(5) + 1;
+        final int codeLengthCount = bits(4) + 4;
+        if (literalCount > 286 || distanceCount > 30) {
+            throw new DataFormatException("Too many length or distance symbols.");
+        }
+        final int[] lengths = new int[literalCount + distanceCount];
+        final int[] codeLengths = new int[19];
+        for (int i = 0; i < codeLengthCount; i++) {
+            codeLengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        final Huffman codeLengthCode = new Huffman(codeLengths, 0, codeLengths.length);
+        int index = 0;
+        while (index < lengths.length) {
+            final int symbol = codeLengthCode.decode(this);
+            if (symbol < 16) {
+                lengths[index++] = symbol;
+                continue;
+            }
+            final int value;
+            final int repeat;
+            if (symbol == 16) {
+                if (index == 0) {
+                    throw new DataFormatException("Repeated code length without previous length.");
+                }
+                value = lengths[index - 1];
+                repeat = 3 + bits(2);
+            }
+            else {
+                value = 0;
+                repeat = symbol == 17 ? 3 + bits(3) : 11 + bits(7);
+            }
+            if (index + repeat > lengths.length) {
+                throw new DataFormatException("Too many code lengths.");
+            }
+            for (int i = 0; i < repeat; i++) {
+                lengths[index++] = value;
+            }
+        }
+        if (lengths[256] == 0) {
+            throw new DataFormatException("Missing end-of-block code.");
+        }
+        literals = new Huffman(lengths, 0, literalCount);
+        distances = new Huffman(lengths, literalCount, distanceCount);
+    }
+
+    private void readCopy(final int lengthSymbol) throws DataFormatException {
+        if (lengthSymbol >= LENGTH_BASE.length) {
+            throw new DataFormatException("Invalid length symbol.");
+        }
+        final int length = LENGTH_BASE[lengthSymbol] + bits(LENGTH_EXTRA[lengthSymbol]);
+        final int distanceSymbol = distances.decode(this);
+        if (distanceSymbol >= DISTANCE_BASE.length) {
+            throw new DataFormatException("Invalid distance symbol.");
+        }
+        final int distance = DISTANCE_BASE[distanceSymbol] + bits(DISTANCE_EXTRA[distanceSymbol]);
+        if (distance > outputPosition) {
+            throw new DataFormatException("Invalid distance too far back.");
+        }
+        copyLength = length;
+        copyDistance = distance;
+    }
+
+    private int bits(final int count) throws DataFormatException {
+        while (bitCount < count) {
+            bitBuffer |= (long) (nextByte() & 0xff) << bitCount;
+            bitCount += 8;
+        }
+        final int value = (int) (bitBuffer & ((1L << count) - 1));
+        bitBuffer >>>= count;
+        bitCount -= count;
+        return value;
+    }
+
+    /**
+     * Buffers at least <code>count</code> bits if that much input remains,
+     * without consuming them. Returns the amount of bits buffered.
+     */
+    private int fill(final int count) throws DataFormatException {
+        while (bitCount < count && inputPosition < inputLength) {
+            bitBuffer |= (long) (nextByte() & 0xff) << bitCount;
+            bitCount += 8;
+        }
+        return bitCount;
+    }
+
+    private void consume(final int count) {
+        bitBuffer >>>= count;
+        bitCount -= count;
+    }
+
+    private byte nextByte() throws DataFormatException {
+        if (inputPosition >= inputLength) {
+            throw new DataFormatException("Unexpected end of compressed data.");
+        }
+        if (inputPosition < inputBufferStart || inputPosition >= inputBufferStart + inputBufferLength) {
+            inputBufferStart = inputPosition;
+            inputBufferLength = (int) Math.min(inputBuffer.length, inputLength - inputPosition);
+            input.source.readInto(Util.add(input.offset, inputBufferStart), inputBufferLength, inputBuffer, 0);
+        }
+        return inputBuffer[(int) (inputPosition++ - inputBufferStart)];
+    }
+
+    private static byte[] compress(final byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 4);
+            final byte[] buffer = new byte[INPUT_BUFFER_SIZE];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    static final class Checkpoint {
+
+        final long bitPosition;
+        final long outputPosition;
+        private final byte[] window; // Private because array content is mutable.
+
+        private Checkpoint(final long bitPosition, final long outputPosition, final byte[] window) {
+            this.bitPosition = bitPosition;
+            this.outputPosition = outputPosition;
+            this.window = checkNotNull(window, "window");
+        }
+
+        /**
+         * Decompresses the window of this checkpoint into
+         * <code>destination</code>, which must hold 32 KiB.
+         */
+        void readWindow(final byte[] destination) throws DataFormatException {
+            final DeflateDecoder decoder = new DeflateDecoder(Slice.createFromBytes(window));
+            int read = 0;
+            while (read < WINDOW_SIZE) {
+                final int result = decoder.read(destination, read, WINDOW_SIZE - read);
+                if (result < 0) {
+                    throw new DataFormatException("Window of checkpoint is too short.");
+                }
+                read += result;
+            }
+        }
+
+        void write(final DataOutput output) throws IOException {
+            output.writeLong(bitPosition);
+            output.writeLong(outputPosition);
+            output.writeInt(window.length);
+            output.write(window);
+        }
+
+        /**
+         * Reads a checkpoint that was written with {@link #write(DataOutput)}
+         * and verifies that its window can be decompressed.
+         */
+        static Checkpoint read(final DataInput input) throws IOException {
+            final long bitPosition = input.readLong();
+            final long outputPosition = input.readLong();
+            final int length = input.readInt();
+            if (length <= 0 || length > WINDOW_SIZE * 2) {
+                throw new IOException(format("Invalid checkpoint window length %d.", length));
+            }
+            final byte[] window = new byte[length];
+            input.readFully(window);
+            final Checkpoint checkpoint = new Checkpoint(bitPosition, outputPosition, window);
+            try {
+                checkpoint.readWindow(new byte[WINDOW_SIZE]);
+            } catch (final DataFormatException exception) {
+                throw new IOException(exception);
+            }
+            return checkpoint;
+        }
+
+    }
+
+    /**
+     * A canonical Huffman code. The <code>lookup</code> table maps every
+     * combination of the next nine input bits to the symbol
+     * and length of the code they start with (as
+     * <code>symbol &lt;&lt; 4 | length</code>), or to zero if the code is
+     * longer. Longer codes are decoded one bit at a time, using the counts and
+     * sorted symbols of the canonical code.
+     */
+    private static final class Huffman {
+
+        private final int[] counts = new int[MAX_BITS + 1];
+        private final int[] symbols;
+        private final int[] lookup = new int[1 << LOOKUP_BITS];
+
+        Huffman(final int[] lengths, final int offset, final int count) throws DataFormatException {
+            symbols = new int[count];
+            for (int symbol = 0; symbol < count; symbol++) {
+                counts[lengths[offset + symbol]]++;
+            }
+            int left = 1;
+            for (int length = 1; length <= MAX_BITS; length++) {
+                left = (left << 1) - counts[length];
+                if (left < 0) {
+                    throw new DataFormatException("Over-subscribed Huffman code.");
+                }
+            }
+            final int[] offsets = new int[MAX_BITS + 2];
+            final int[] nextCode = new int[MAX_BITS + 1];
+            for (int length = 1; length <= MAX_BITS; length++) {
+                offsets[length + 1] = offsets[length] + counts[length];
+                if (length > 1) {
+                    nextCode[length] = (nextCode[length - 1] + counts[length - 1]) << 1;
+                }
+            }
+            for (int symbol = 0; symbol < count; symbol++) {
+                final int length = lengths[offset + symbol];
+                if (length != 0) {
+                    symbols[offsets[length]++] = symbol;
+                    final int code = nextCode[length]++;
+                    if (length <= LOOKUP_BITS) {
+                        // Codes are stored most significant bit first, but the input is read least significant bit first.
+                        final int reversed = Integer.reverse(code) >>> (Integer.SIZE - length);
+                        for (int index = reversed; index < lookup.length; index += 1 << length) {
+                            lookup[index] = (symbol << 4) | length;
+                        }
+                    }
+                }
+            }
+        }
+
+        int decode(final DeflateDecoder decoder) throws DataFormatException {
+            final int available = decoder.fill(MAX_BITS);
+            final int entry = lookup[(int) (decoder.bitBuffer & (lookup.length - 1))];
+            if (entry != 0) {
+                final int length = entry & 0xf;
+                if (length > available) {
+                    throw new DataFormatException("Unexpected end of compressed data.");
+                }
+                decoder.consume(length);
+                return entry >>> 4;
+            }
+            int code = 0;
+            int first = 0;
+            int index = 0;
+            for (int length = 1; length <= Math.min(MAX_BITS, available); length++) {
+                code |= (int) (decoder.bitBuffer >>> (length - 1)) & 1;
+                final int count = counts[length];
+                if (code - count < first) {
+                    decoder.consume(length);
+                    return symbols[index + (code - first)];
+                }
+                index += count;
+                first = (first + count) << 1;
+                code <<= 1;
+            }
+            throw new DataFormatException(available < MAX_BITS ? "Unexpected end of compressed data." : "Invalid Huffman code.");
+        }
+
+    }
+
+}
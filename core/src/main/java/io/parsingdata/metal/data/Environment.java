@@ -18,7 +18,6 @@ package io.parsingdata.metal.data;
 
 import static io.parsingdata.metal.Util.checkNotNull;
 import static io.parsingdata.metal.token.Token.NO_NAME;
-import static io.parsingdata.metal.token.Token.SEPARATOR;
 
 import io.parsingdata.metal.data.callback.Callbacks;
 import io.parsingdata.metal.encoding.Encoding;
@@ -30,12 +29,31 @@ public class Environment {
     public final ParseState parseState;
     public final Callbacks callbacks;
     public final Encoding encoding;
+    /**
+     * Which records are kept in the graph while parsing. Public like the
+     * other fields of Environment, so that custom tokens pass it on when
+     * they create an Environment.
+     */
+    public final Retention retention;
+    /**
+     * The results of tokens parsed earlier that may be reused. Public for
+     * the same reason as {@link #retention}.
+     */
+    public final Memo memo;
+    private final Scope scopePath;
 
-    public Environment(final String scope, final ParseState parseState, final Callbacks callbacks, final Encoding encoding) {
-        this.scope = checkNotNull(scope, "scope");
+    private Environment(final Scope scopePath, final ParseState parseState, final Callbacks callbacks, final Encoding encoding, final Retention retention, final Memo memo) {
+        this.scopePath = scopePath;
+        this.scope = scopePath.path;
         this.parseState = checkNotNull(parseState, "parseState");
         this.callbacks = checkNotNull(callbacks, "callbacks");
         this.encoding = checkNotNull(encoding, "encoding");
+        this.retention = checkNotNull(retention, "retention");
+        this.memo = checkNotNull(memo, "memo");
+    }
+
+    public Environment(final String scope, final ParseState parseState, final Callbacks callbacks, final Encoding encoding) {
+        this(new Scope(checkNotNull(scope, "scope")), parseState, callbacks, encoding, Retention.ALL, Memo.NONE);
     }
 
     public Environment(final String scope, final ParseState parseState, final Encoding encoding) {
@@ -43,7 +61,7 @@ public class Environment {
     }
 
     public Environment(final ParseState parseState, final Callbacks callbacks, final Encoding encoding) {
-        this(NO_NAME, parseState, callbacks, encoding);
+        this(new Scope(NO_NAME), parseState, callbacks, encoding, Retention.ALL, Memo.NONE);
     }
 
     public Environment(final ParseState parseState, final Encoding encoding) {
@@ -51,11 +69,25 @@ public class Environment {
     }
 
     public Environment withParseState(final ParseState parseState) {
-        return new Environment(scope, parseState, callbacks, encoding);
+        return new Environment(scopePath, parseState, callbacks, encoding, retention, memo);
     }
 
     public Environment withEncoding(final Encoding encoding) {
-        return new Environment(scope, parseState, callbacks, encoding);
+        return new Environment(scopePath, parseState, callbacks, encoding, retention, memo);
+    }
+
+    /**
+     * Returns this Environment with a {@link Retention} that removes records
+     * from the graph while parsing. Lookups through the index of the graph,
+     * such as <code>getRecentValues(graph, name, NO_LIMIT)</code>, may still
+     * return values of removed records until the index is compacted.
+     */
+    public Environment withRetention(final Retention retention) {
+        return new Environment(scopePath, parseState, callbacks, encoding, retention, memo);
+    }
+
+    public Environment withMemo(final Memo memo) {
+        return new Environment(scopePath, parseState, callbacks, encoding, retention, memo);
     }
 
     public Environment addBranch(final Token token) {
@@ -63,7 +95,8 @@ public class Environment {
     }
 
     public Environment extendScope(final String name) {
-        return new Environment(scope + (scope.isEmpty() || name.isEmpty() ? NO_NAME : SEPARATOR) + name, parseState, callbacks, encoding);
+        final Scope extended = scopePath.extend(name);
+        return extended == scopePath ? this : new Environment(extended, parseState, callbacks, encoding, retention, memo);
     }
 
 }
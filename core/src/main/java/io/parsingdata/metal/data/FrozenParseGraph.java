@@ -0,0 +1,520 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.data.ParseGraph.EMPTY;
+import static io.parsingdata.metal.data.ParseGraph.NONE;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import io.parsingdata.metal.Util;
+import io.parsingdata.metal.encoding.Encoding;
+import io.parsingdata.metal.token.Token;
+
+/**
+ * A compact, read-only representation of a completed {@link ParseGraph}.
+ * <p>
+ * The items of the graph are stored in columns: one element per item in
+ * every column, in the order in which the items were added to the graph.
+ * Offsets and lengths are stored as <code>long</code>s. Names, definitions,
+ * sources and encodings are stored as ids into tables that contain every
+ * distinct instance once. The structure of the graph is stored as the index
+ * of the parent graph of every item, together with the index after the last
+ * item below every item. This requires about 44 bytes per item, instead of
+ * the separate {@link ParseValue}, {@link Slice} and ParseGraph objects (and
+ * their <code>BigInteger</code>s) that a ParseGraph keeps.
+ * <p>
+ * Values, definitions and roots are looked up directly in the columns, like
+ * the corresponding methods of {@link Selection} do on a ParseGraph, without
+ * creating objects for the items that do not match. The positions of the
+ * values of every name and of the items of every definition are stored on
+ * the first lookup. All other reading is done on the ParseGraph that
+ * {@link #thaw()} rebuilds, so the expressions that evaluate on a
+ * {@link ParseState} work as before.
+ */
+public class FrozenParseGraph {
+
+    private static final byte VALUE = 0;
+    private static final byte GRAPH = 1;
+    private static final byte REFERENCE = 2;
+    private static final int NO_ID = -1;
+    private static final int NOT_FOUND = -2;
+
+    public final Token definition;
+    public final int size;
+
+    // Private because array content is mutable.
+    private final byte[] kinds;
+    private final int[] parents;
+    private final int[] ends;
+    private final int[] nameIds;
+    private final int[] definitionIds;
+    private final int[] sourceIds;
+    private final int[] encodingIds;
+    private final long[] offsets;
+    private final long[] lengths;
+    private final String[] names;
+    private final Token[] definitions;
+    private final Source[] sources;
+    private final Encoding[] encodings;
+    // Not final because they are lazily initialized on the first lookup, which may happen on any thread. Private because array content is mutable.
+    private volatile int[][] valuesByName;
+    private volatile int[][] itemsByDefinition;
+
+    private FrozenParseGraph(final Token definition, final byte[] kinds, final int[] parents, final int[] nameIds, final int[] definitionIds, final int[] sourceIds, final int[] encodingIds, final long[] offsets, final long[] lengths, final String[] names, final Token[] definitions, final Source[] sources, final Encoding[] encodings) {
+        this.definition = checkNotNull(definition, "definition");
+        this.size = kinds.length;
+        this.kinds = kinds;
+        this.parents = parents;
+        this.ends = findEnds(parents);
+        this.nameIds = nameIds;
+        this.definitionIds = definitionIds;
+        this.sourceIds = sourceIds;
+        this.encodingIds = encodingIds;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.names = names;
+        this.definitions = definitions;
+        this.sources = sources;
+        this.encodings = encodings;
+    }
+
+    /**
+     * Converts a completed graph into a FrozenParseGraph. The graph may not
+     * have open branches and the offsets and lengths of all its values and
+     * the locations of all its references must fit in a <code>long</code>.
+     */
+    public static FrozenParseGraph freeze(final ParseGraph graph) {
+        if (checkNotNull(graph, "graph").branched) {
+            throw new IllegalArgumentException("Argument graph may not have open branches.");
+        }
+        final int size = countItems(graph);
+        final byte[] kinds = new byte[size];
+        final int[] parents = new int[size];
+        final int[] nameIds = new int[size];
+        final int[] definitionIds = new int[size];
+        final int[] sourceIds = new int[size];
+        final int[] encodingIds = new int[size];
+        final long[] offsets = new long[size];
+        final long[] lengths = new long[size];
+        final Map<String, Integer> names = new HashMap<>();
+        final Map<Token, Integer> definitions = new IdentityHashMap<>();
+        final Map<Source, Integer> sources = new IdentityHashMap<>();
+        final Map<Encoding, Integer> encodings = new IdentityHashMap<>();
+        final Deque<ImmutablePair<ParseItem, Integer>> backlog = new ArrayDeque<>();
+        pushItems(backlog, graph, NO_ID);
+        for (int index = 0; index < size; index++) {
+            final ImmutablePair<ParseItem, Integer> next = backlog.pop();
+            final ParseItem item = next.left;
+            parents[index] = next.right;
+            definitionIds[index] = getId(definitions, item.getDefinition());
+            nameIds[index] = NO_ID;
+            sourceIds[index] = NO_ID;
+            encodingIds[index] = NO_ID;
+            if (item.isValue()) {
+                final ParseValue value = item.asValue();
+                kinds[index] = VALUE;
+                nameIds[index] = getId(names, value.name);
+                sourceIds[index] = getId(sources, value.slice.source);
+                encodingIds[index] = getId(encodings, value.encoding);
+                offsets[index] = value.slice.offset.longValueExact();
+                lengths[index] = value.slice.length.longValueExact();
+            }
+            else if (item.isReference()) {
+                final ParseReference reference = item.asReference();
+                kinds[index] = REFERENCE;
+                sourceIds[index] = getId(sources, reference.source);
+                offsets[index] = reference.location.longValueExact();
+            }
+            else {
+                kinds[index] = GRAPH;
+                pushItems(backlog, item.asGraph(), index);
+            }
+        }
+        return new FrozenParseGraph(graph.definition, kinds, parents, nameIds, definitionIds, sourceIds, encodingIds, offsets, lengths,
+                                    toArray(names, new String[0]), toArray(definitions, new Token[0]), toArray(sources, new Source[0]), toArray(encodings, new Encoding[0]));
+    }
+
+    /**
+     * @return For every item, the index after the last item below it
+     */
+    private static int[] findEnds(final int[] parents) {
+        final int[] ends = new int[parents.length];
+        // Items are stored depth-first, so the items below an item directly follow it.
+        for (int index = parents.length - 1; index >= 0; index--) {
+            ends[index] = Math.max(ends[index], index + 1);
+            if (parents[index] != NO_ID) {
+                ends[parents[index]] = Math.max(ends[parents[index]], ends[index]);
+            }
+        }
+        return ends;
+    }
+
+    private static int countItems(final ParseGraph graph) {
+        int count = 0;
+        final Deque<ParseGraph> backlog = new ArrayDeque<>();
+        backlog.push(graph);
+        while (!backlog.isEmpty()) {
+            for (ParseGraph items = backlog.pop(); !items.isEmpty(); items = items.tail) {
+                count++;
+                if (items.head.isGraph()) {
+                    backlog.push(items.head.asGraph());
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Pushes the items of <code>graph</code> so that the first item that was
+     * added to it is on top of the backlog.
+     */
+    private static void pushItems(final Deque<ImmutablePair<ParseItem, Integer>> backlog, final ParseGraph graph, final int parent) {
+        for (ParseGraph items = graph; !items.isEmpty(); items = items.tail) {
+            backlog.push(new ImmutablePair<>(items.head, parent));
+        }
+    }
+
+    private static <T> int getId(final Map<T, Integer> table, final T element) {
+        return table.computeIfAbsent(element, key -> table.size());
+    }
+
+    private static <T> T[] toArray(final Map<T, Integer> table, final T[] template) {
+        final T[] array = Arrays.copyOf(template, table.size());
+        table.forEach((element, id) -> array[id] = element);
+        return array;
+    }
+
+    /**
+     * Rebuilds the {@link ParseGraph} this graph was created from. If its
+     * definition is {@link ParseGraph#NONE}, it is built from
+     * {@link ParseGraph#EMPTY} like the graph of a {@link ParseState}.
+     */
+    public ParseGraph thaw() {
+        final ParseGraph graph = addItems(definition.equals(NONE) ? EMPTY : EMPTY.addBranch(definition), NO_ID);
+        return definition.equals(NONE) ? graph : graph.closeBranch().head.asGraph();
+    }
+
+    /**
+     * Adds the items below <code>parent</code> to <code>graph</code> and
+     * closes the branches it opened for them.
+     */
+    private ParseGraph addItems(final ParseGraph graph, final int parent) {
+        ParseGraph result = graph;
+        final int[] open = new int[size];
+        int depth = 0;
+        final int end = end(parent);
+        for (int index = parent + 1; index < end; index++) {
+            for (; depth > 0 && open[depth - 1] != parents[index]; depth--) {
+                result = result.closeBranch();
+            }
+            if (kinds[index] == GRAPH) {
+                result = result.addBranch(definitions[definitionIds[index]]);
+                open[depth++] = index;
+            }
+            else if (kinds[index] == REFERENCE) {
+                result = result.add(getReference(index));
+            }
+            else {
+                result = result.add(getValue(index));
+            }
+        }
+        for (; depth > 0; depth--) {
+            result = result.closeBranch();
+        }
+        return result;
+    }
+
+    /**
+     * @return The index after the last item below the item at <code>index</code>,
+     * which is {@link #size} for {@link #NO_ID}
+     */
+    private int end(final int index) {
+        return index == NO_ID ? size : ends[index];
+    }
+
+    /**
+     * Returns the same values as {@link Selection#getRecentValues(ParseGraph, String, int)}
+     * on the graph this graph was created from.
+     */
+    public ImmutableList<ParseValue> getRecentValues(final String name, final int limit) {
+        checkNotNull(name, "name");
+        int[][] valuesByName = this.valuesByName;
+        if (valuesByName == null) {
+            valuesByName = groupById(nameIds, names.length, index -> kinds[index] == VALUE);
+            this.valuesByName = valuesByName;
+        }
+        return getRecentValues(select(valuesByName, id -> ParseValue.matches(names[id], name)), limit);
+    }
+
+    /**
+     * Returns the same values as {@link Selection#getRecentValues(ParseGraph, Token, int)}
+     * on the graph this graph was created from.
+     */
+    public ImmutableList<ParseValue> getRecentValues(final Token definition, final int limit) {
+        checkNotNull(definition, "definition");
+        final int[][] items = select(getItemsByDefinition(), id -> definitions[id].equals(definition));
+        for (int list = 0; list < items.length; list++) {
+            items[list] = Arrays.stream(items[list]).filter(index -> kinds[index] == VALUE).toArray();
+        }
+        return getRecentValues(items, limit);
+    }
+
+    /**
+     * Returns the values at the positions in <code>lists</code>, which are
+     * each in ascending order, with the most recently added value first.
+     */
+    private ImmutableList<ParseValue> getRecentValues(final int[][] lists, final int limit) {
+        final int[] next = new int[lists.length];
+        for (int list = 0; list < lists.length; list++) {
+            next[list] = lists[list].length - 1;
+        }
+        final List<ParseValue> values = new ArrayList<>();
+        while (limit < 0 || values.size() < limit) {
+            int highest = NO_ID;
+            for (int list = 0; list < lists.length; list++) {
+                if (next[list] >= 0 && (highest == NO_ID || lists[list][next[list]] > lists[highest][next[highest]])) {
+                    highest = list;
+                }
+            }
+            if (highest == NO_ID) {
+                break;
+            }
+            values.add(getValue(lists[highest][next[highest]--]));
+        }
+        ImmutableList<ParseValue> result = new ImmutableList<>();
+        for (int index = values.size() - 1; index >= 0; index--) {
+            result = result.add(values.get(index));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the same definition as {@link Selection#findDefinition(ParseGraph, String)}
+     * on the graph this graph was created from.
+     */
+    public Optional<Token> findDefinition(final String name) {
+        checkNotNull(name, "name");
+        if (definition.name.equals(name)) {
+            return Optional.of(definition);
+        }
+        int found = NO_ID;
+        for (final int[] items : select(getItemsByDefinition(), id -> definitions[id].name.equals(name))) {
+            found = Math.max(found, items[items.length - 1]);
+        }
+        // The traversal visits the most recently added item first, but visits a graph before the items in it.
+        for (int index = found; index != NO_ID; index = parents[index]) {
+            if (definitions[definitionIds[index]].name.equals(name)) {
+                found = index;
+            }
+        }
+        return found == NO_ID ? Optional.empty() : Optional.of(definitions[definitionIds[found]]);
+    }
+
+    /**
+     * Returns the same result as {@link Selection#hasRootAtOffset(ParseGraph, Token, BigInteger, Source)}
+     * on the graph this graph was created from.
+     */
+    public boolean hasRootAtOffset(final Token definition, final BigInteger offset, final Source source) {
+        return findRoot(definition, offset, source) != NOT_FOUND;
+    }
+
+    /**
+     * Returns the same item as {@link Selection#findRootAtOffset(ParseGraph, Token, BigInteger, Source)}
+     * on the graph this graph was created from. Only the item that is found
+     * is rebuilt.
+     */
+    public Optional<ParseItem> findRootAtOffset(final Token definition, final BigInteger offset, final Source source) {
+        final int root = findRoot(definition, offset, source);
+        if (root == NOT_FOUND) {
+            return Optional.empty();
+        }
+        return Optional.of(root == NO_ID ? thaw() : getItem(root));
+    }
+
+    /**
+     * @return The index of the first root of <code>definition</code> in the
+     * order of {@link Selection#getAllRoots(ParseGraph, Token)} of which the
+     * location matches, {@link #NO_ID} if that is the graph itself and
+     * {@link #NOT_FOUND} if there is none
+     */
+    private int findRoot(final Token definition, final BigInteger offset, final Source source) {
+        checkNotNull(definition, "definition");
+        checkNotNull(offset, "offset");
+        checkNotNull(source, "source");
+        final int[] items = Arrays.stream(select(getItemsByDefinition(), id -> definitions[id].equals(definition)))
+            .flatMapToInt(Arrays::stream)
+            .filter(index -> !getParentDefinition(index).equals(definition) && matchesLocation(index, offset, source))
+            .sorted()
+            .toArray();
+        // The roots are ordered so that the items below a root come before it.
+        int found = NOT_FOUND;
+        for (final int index : items) {
+            if (found != NOT_FOUND && !isBelow(index, found)) {
+                break;
+            }
+            found = index;
+        }
+        if (found == NOT_FOUND && this.definition.equals(definition) && matchesLocation(NO_ID, offset, source)) {
+            return NO_ID;
+        }
+        return found;
+    }
+
+    private Token getParentDefinition(final int index) {
+        return parents[index] == NO_ID ? definition : definitions[definitionIds[parents[index]]];
+    }
+
+    private boolean isBelow(final int index, final int ancestor) {
+        for (int parent = parents[index]; parent != NO_ID; parent = parents[parent]) {
+            if (parent == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the value at <code>index</code>, or the value with the
+     * lowest offset in the graph at <code>index</code> as determined by
+     * {@link Selection#getLowestOffsetValue(ParseGraph)}, is at
+     * <code>offset</code> in <code>source</code>.
+     */
+    private boolean matchesLocation(final int index, final BigInteger offset, final Source source) {
+        if (index != NO_ID && kinds[index] != GRAPH) {
+            return kinds[index] == VALUE && valueMatchesLocation(index, offset, source);
+        }
+        if (index != NO_ID ? !definitions[definitionIds[index]].isLocal() : !definition.isLocal()) {
+            return false;
+        }
+        int lowest = NO_ID;
+        final int end = end(index);
+        for (int item = index + 1; item < end; item++) {
+            if (kinds[item] == GRAPH && !definitions[definitionIds[item]].isLocal()) {
+                item = end(item) - 1;
+            }
+            // Of the values with the same offset, the traversal keeps the most recently added one.
+            else if (kinds[item] == VALUE && (lowest == NO_ID || offsets[item] <= offsets[lowest])) {
+                lowest = item;
+            }
+        }
+        return lowest != NO_ID && valueMatchesLocation(lowest, offset, source);
+    }
+
+    private boolean valueMatchesLocation(final int index, final BigInteger offset, final Source source) {
+        return offset.bitLength() < Long.SIZE && offset.longValue() == offsets[index] && sources[sourceIds[index]].equals(source);
+    }
+
+    private int[][] getItemsByDefinition() {
+        int[][] itemsByDefinition = this.itemsByDefinition;
+        if (itemsByDefinition == null) {
+            itemsByDefinition = groupById(definitionIds, definitions.length, index -> true);
+            this.itemsByDefinition = itemsByDefinition;
+        }
+        return itemsByDefinition;
+    }
+
+    /**
+     * @return For every id, the ascending positions of the items for which
+     * <code>ids</code> contains it and <code>includes</code> is true
+     */
+    private int[][] groupById(final int[] ids, final int idCount, final IntPredicate includes) {
+        final int[] counts = new int[idCount];
+        for (int index = 0; index < size; index++) {
+            if (includes.test(index)) {
+                counts[ids[index]]++;
+            }
+        }
+        final int[][] positions = new int[idCount][];
+        for (int id = 0; id < idCount; id++) {
+            positions[id] = new int[counts[id]];
+            counts[id] = 0;
+        }
+        for (int index = 0; index < size; index++) {
+            if (includes.test(index)) {
+                positions[ids[index]][counts[ids[index]]++] = index;
+            }
+        }
+        return positions;
+    }
+
+    private static int[][] select(final int[][] positions, final IntPredicate matches) {
+        return IntStream.range(0, positions.length).filter(matches).mapToObj(id -> positions[id]).toArray(int[][]::new);
+    }
+
+    private ParseItem getItem(final int index) {
+        if (kinds[index] == GRAPH) {
+            return addItems(EMPTY.addBranch(definitions[definitionIds[index]]), index).closeBranch().head;
+        }
+        return kinds[index] == REFERENCE ? getReference(index) : getValue(index);
+    }
+
+    private ParseReference getReference(final int index) {
+        return new ParseReference(BigInteger.valueOf(offsets[index]), sources[sourceIds[index]], definitions[definitionIds[index]]);
+    }
+
+    private ParseValue getValue(final int index) {
+        final Slice slice = Slice.createFromSource(sources[sourceIds[index]], BigInteger.valueOf(offsets[index]), BigInteger.valueOf(lengths[index]))
+            .orElseThrow(() -> new IllegalStateException("Frozen value is no longer available in its source."));
+        return new ParseValue(names[nameIds[index]], definitions[definitionIds[index]], slice, encodings[encodingIds[index]]);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + definition + ";size:" + size + ")";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return Util.notNullAndSameClass(this, obj)
+            && Objects.equals(definition, ((FrozenParseGraph)obj).definition)
+            && Arrays.equals(kinds, ((FrozenParseGraph)obj).kinds)
+            && Arrays.equals(parents, ((FrozenParseGraph)obj).parents)
+            && Arrays.equals(nameIds, ((FrozenParseGraph)obj).nameIds)
+            && Arrays.equals(definitionIds, ((FrozenParseGraph)obj).definitionIds)
+            && Arrays.equals(sourceIds, ((FrozenParseGraph)obj).sourceIds)
+            && Arrays.equals(encodingIds, ((FrozenParseGraph)obj).encodingIds)
+            && Arrays.equals(offsets, ((FrozenParseGraph)obj).offsets)
+            && Arrays.equals(lengths, ((FrozenParseGraph)obj).lengths)
+            && Arrays.equals(names, ((FrozenParseGraph)obj).names)
+            && Arrays.equals(definitions, ((FrozenParseGraph)obj).definitions)
+            && Arrays.equals(sources, ((FrozenParseGraph)obj).sources)
+            && Arrays.equals(encodings, ((FrozenParseGraph)obj).encodings);
+        // The size and ends fields are excluded from equals() and hashCode() because they are derived from kinds and parents.
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), definition, Arrays.hashCode(kinds), Arrays.hashCode(parents), Arrays.hashCode(nameIds), Arrays.hashCode(definitionIds),
+                            Arrays.hashCode(sourceIds), Arrays.hashCode(encodingIds), Arrays.hashCode(offsets), Arrays.hashCode(lengths),
+                            Arrays.hashCode(names), Arrays.hashCode(definitions), Arrays.hashCode(sources), Arrays.hashCode(encodings));
+    }
+
+}
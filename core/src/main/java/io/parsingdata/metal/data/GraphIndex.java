@@ -0,0 +1,583 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Optional;
+
+import io.parsingdata.metal.token.Token;
+
+/**
+ * A persistent index of the items in a {@link ParseGraph}.
+ * <p>
+ * The index only contains the names, definitions and token names that have
+ * been looked up in the graph it belongs to or in a graph it was built
+ * from. The first lookup of a key traverses the graph once, after which
+ * the key is kept up to date as items are added. A graph that is never
+ * queried therefore costs nothing to index.
+ * <p>
+ * For a name, the index lists the {@link ParseValue}s that
+ * {@link ParseValue#matches(String) match} it and for a definition the
+ * values with that definition. The lists are ordered from the most
+ * recently added value to the first, which is the order in which
+ * {@link Selection} traverses a graph. The first value of every list is
+ * kept as well, so that it can be looked up without walking the list.
+ * <p>
+ * For a definition of which roots have been looked up, the completed roots
+ * (as defined by {@link Selection#getAllRoots(ParseGraph, Token)}) are
+ * indexed by the offset of their lowest offset value, which is the location
+ * {@link Selection#findItemAtOffset(ImmutableList, BigInteger, Source)}
+ * matches on. A value is complete when it is added and a graph when its
+ * branch is closed. The index does not record the order of the roots in a
+ * graph. To determine the location of a graph when it is closed, the index
+ * keeps the lowest offset value of the completed items in every open
+ * branch, but only once roots have been looked up.
+ * <p>
+ * Finally, for a token name the index keeps the definition that a
+ * traversal of the graph from the root (see {@link Selection#findDefinition(ParseGraph, String)})
+ * finds first. That is the outermost definition with the name among the
+ * most recently added item with the name and the branches that were open
+ * when it was added.
+ * <p>
+ * Values that a {@link Retention} removes from the graph stay in the lists
+ * until the index is compacted, which is done once more entries refer to
+ * removed values than to values that remain.
+ */
+class GraphIndex {
+
+    private static final int NO_NAME = -1;
+
+    static final GraphIndex EMPTY = new GraphIndex(new ImmutableList<>(), ImmutableMap.empty(), new ImmutableList<>(), ImmutableMap.empty(), null, new ImmutableList<>(), ImmutableMap.empty(), 0, 0);
+
+    private final ImmutableList<String> names; // The names that have been looked up.
+    private final ImmutableMap<String, Values> valuesByName;
+    private final ImmutableList<Token> definitions; // The definitions that have been looked up.
+    private final ImmutableMap<Token, Values> valuesByDefinition;
+    private final Roots roots; // Null if no roots have been looked up.
+    private final ImmutableList<String> tokenNames; // The token names that have been looked up.
+    private final ImmutableMap<String, Optional<Token>> tokens;
+    final long entryCount; // The number of values in the lists, including removed values.
+    final long removedCount; // The number of entries for values removed from the graph since the index was last compacted.
+
+    private GraphIndex(final ImmutableList<String> names, final ImmutableMap<String, Values> valuesByName, final ImmutableList<Token> definitions, final ImmutableMap<Token, Values> valuesByDefinition, final Roots roots, final ImmutableList<String> tokenNames, final ImmutableMap<String, Optional<Token>> tokens, final long entryCount, final long removedCount) {
+        this.names = names;
+        this.valuesByName = valuesByName;
+        this.definitions = definitions;
+        this.valuesByDefinition = valuesByDefinition;
+        this.roots = roots;
+        this.tokenNames = tokenNames;
+        this.tokens = tokens;
+        this.entryCount = entryCount;
+        this.removedCount = removedCount;
+    }
+
+    /**
+     * @param value The value that is added
+     * @param graph The graph the value is added to, before adding it
+     */
+    GraphIndex add(final ParseValue value, final ParseGraph graph) {
+        ImmutableMap<String, Values> newValuesByName = valuesByName;
+        long newEntryCount = entryCount;
+        for (int start = names.isEmpty() ? NO_NAME : 0; start != NO_NAME; start = nextName(value.name, start)) {
+            final String name = value.name.substring(start);
+            if (valuesByName.get(name) != null) {
+                newValuesByName = newValuesByName.put(name, newValuesByName.get(name).add(value));
+                newEntryCount++;
+            }
+        }
+        ImmutableMap<Token, Values> newValuesByDefinition = valuesByDefinition;
+        if (valuesByDefinition.get(value.definition) != null) {
+            newValuesByDefinition = newValuesByDefinition.put(value.definition, valuesByDefinition.get(value.definition).add(value));
+            newEntryCount++;
+        }
+        final Roots newRoots = roots == null ? null : roots.add(value, getOpenBranch(graph).definition);
+        final ImmutableMap<String, Optional<Token>> newTokens = addToken(value.definition, graph);
+        if (newEntryCount == entryCount && newRoots == roots && newTokens == tokens) {
+            return this;
+        }
+        return new GraphIndex(names, newValuesByName, definitions, newValuesByDefinition, newRoots, tokenNames, newTokens, newEntryCount, removedCount);
+    }
+
+    GraphIndex add(final ParseReference reference, final ParseGraph graph) {
+        return withTokens(addToken(reference.definition, graph));
+    }
+
+    GraphIndex addBranch(final Token definition, final ParseGraph graph) {
+        if (roots == null) {
+            return withTokens(addToken(definition, graph));
+        }
+        return new GraphIndex(names, valuesByName, definitions, valuesByDefinition, roots.addBranch(definition), tokenNames, addToken(definition, graph), entryCount, removedCount);
+    }
+
+    /**
+     * @param graph The graph of which the deepest open branch is closed, before closing it
+     */
+    GraphIndex close(final ParseGraph graph) {
+        if (roots == null) {
+            return this;
+        }
+        ParseGraph parent = graph;
+        while (parent.head.asGraph().branched) {
+            parent = parent.head.asGraph();
+        }
+        return new GraphIndex(names, valuesByName, definitions, valuesByDefinition, roots.close(parent.head.asGraph(), parent.definition), tokenNames, tokens, entryCount, removedCount);
+    }
+
+    private static ParseGraph getOpenBranch(final ParseGraph graph) {
+        ParseGraph branch = graph;
+        while (branch.branched) {
+            branch = branch.head.asGraph();
+        }
+        return branch;
+    }
+
+    private GraphIndex withTokens(final ImmutableMap<String, Optional<Token>> newTokens) {
+        return newTokens == tokens ? this : new GraphIndex(names, valuesByName, definitions, valuesByDefinition, roots, tokenNames, newTokens, entryCount, removedCount);
+    }
+
+    /**
+     * Records that the values in <code>item</code> were removed from the
+     * graph (see {@link ParseGraph#removeLast(GraphIndex)}). They stay in
+     * the index until it is {@link #compact(ParseGraph, Collection, Collection) compacted}.
+     *
+     * @param rest The branch that <code>item</code> was removed from, after removing it
+     */
+    GraphIndex remove(final ParseItem item, final ParseGraph rest) {
+        long count = 0;
+        boolean removedLowest = false;
+        final Deque<ParseItem> backlog = new ArrayDeque<>();
+        backlog.push(item);
+        while (!backlog.isEmpty()) {
+            final ParseItem next = backlog.pop();
+            if (next.isValue()) {
+                count += countEntries(next.asValue());
+                removedLowest |= roots != null && next.asValue().equals(roots.levels.lowest);
+            }
+            else if (next.isGraph()) {
+                for (ParseGraph graph = next.asGraph(); !graph.isEmpty(); graph = graph.tail) {
+                    backlog.push(graph.head);
+                }
+            }
+        }
+        return new GraphIndex(names, valuesByName, definitions, valuesByDefinition, removedLowest ? roots.withLowest(Selection.getLowestOffsetValue(rest)) : roots, tokenNames, tokens, entryCount, removedCount + count);
+    }
+
+    private long countEntries(final ParseValue value) {
+        long count = 0;
+        for (int start = names.isEmpty() ? NO_NAME : 0; start != NO_NAME; start = nextName(value.name, start)) {
+            if (valuesByName.get(value.name.substring(start)) != null) {
+                count++;
+            }
+        }
+        if (valuesByDefinition.get(value.definition) != null) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the start of the next name that a value named <code>path</code>
+     * {@link ParseValue#matches(String) matches}, after the one at
+     * <code>start</code>. These are the parts of <code>path</code> after a
+     * separator, so the names in the index that a value matches are found
+     * without comparing it to each of them.
+     *
+     * @return The position after the next separator, or {@link #NO_NAME} if there is none
+     */
+    private static int nextName(final String path, final int start) {
+        final int separator = path.indexOf(Token.SEPARATOR, start);
+        return separator < 0 ? NO_NAME : separator + Token.SEPARATOR.length();
+    }
+
+    /**
+     * Rebuilds the lists of values and the roots from the items that are in
+     * <code>graph</code>, so that removed items are no longer kept. The
+     * token definitions are kept as they are, since they do not depend on
+     * which items remain. For every name in <code>recentNames</code> and
+     * every definition in <code>recentDefinitions</code> that is in the
+     * index, the most recently added value is kept at the head of its list,
+     * even if it was removed, so that lookups of only the most recent value
+     * are not affected.
+     */
+    GraphIndex compact(final ParseGraph graph, final Collection<String> recentNames, final Collection<Token> recentDefinitions) {
+        ImmutableMap<String, Values> newValuesByName = ImmutableMap.empty();
+        long count = 0;
+        long removed = 0;
+        for (ImmutableList<String> name = names; !name.isEmpty(); name = name.tail) {
+            final ImmutableList<ParseValue> values = collect(graph, name.head);
+            final ImmutableList<ParseValue> kept = recentNames.contains(name.head) ? keepMostRecent(values, valuesByName.get(name.head).list) : values;
+            newValuesByName = newValuesByName.put(name.head, new Values(kept));
+            count += kept.size;
+            removed += kept.size - values.size;
+        }
+        ImmutableMap<Token, Values> newValuesByDefinition = ImmutableMap.empty();
+        for (ImmutableList<Token> definition = definitions; !definition.isEmpty(); definition = definition.tail) {
+            final ImmutableList<ParseValue> values = collect(graph, definition.head);
+            final ImmutableList<ParseValue> kept = recentDefinitions.contains(definition.head) ? keepMostRecent(values, valuesByDefinition.get(definition.head).list) : values;
+            newValuesByDefinition = newValuesByDefinition.put(definition.head, new Values(kept));
+            count += kept.size;
+            removed += kept.size - values.size;
+        }
+        Roots newRoots = null;
+        if (roots != null) {
+            newRoots = Roots.create(graph);
+            for (ImmutableList<Token> definition = roots.definitions; !definition.isEmpty(); definition = definition.tail) {
+                newRoots = newRoots.track(graph, definition.head);
+            }
+        }
+        return new GraphIndex(names, newValuesByName, definitions, newValuesByDefinition, newRoots, tokenNames, tokens, count, removed);
+    }
+
+    private static ImmutableList<ParseValue> keepMostRecent(final ImmutableList<ParseValue> values, final ImmutableList<ParseValue> previous) {
+        if (previous.isEmpty() || (!values.isEmpty() && values.head.equals(previous.head))) {
+            return values;
+        }
+        return values.add(previous.head);
+    }
+
+    private ImmutableMap<String, Optional<Token>> addToken(final Token definition, final ParseGraph graph) {
+        if (tokens.get(definition.name) == null) {
+            return tokens;
+        }
+        for (ParseGraph parent = graph; parent.branched; parent = parent.head.asGraph()) {
+            final Token branchDefinition = parent.head.asGraph().definition;
+            if (branchDefinition.name.equals(definition.name)) {
+                return tokens.put(definition.name, Optional.of(branchDefinition));
+            }
+        }
+        return tokens.put(definition.name, Optional.of(definition));
+    }
+
+    private static <K, V> ImmutableMap<K, ImmutableList<V>> add(final ImmutableMap<K, ImmutableList<V>> map, final K key, final V value) {
+        final ImmutableList<V> values = map.get(key);
+        return map.put(key, (values == null ? new ImmutableList<V>() : values).add(value));
+    }
+
+    /**
+     * Returns the values in <code>graph</code> that match <code>name</code>,
+     * from its index if the name has been looked up before. Otherwise the
+     * graph is traversed and the name is added to the index of the graph,
+     * so that graphs built from it keep its values up to date.
+     */
+    static ImmutableList<ParseValue> getByName(final ParseGraph graph, final String name) {
+        return getValuesByName(graph, name).list;
+    }
+
+    /**
+     * Returns the first value in <code>graph</code> that matches
+     * <code>name</code>, which is the last value of the list that
+     * {@link #getByName(ParseGraph, String)} returns.
+     */
+    static Optional<ParseValue> getFirstByName(final ParseGraph graph, final String name) {
+        return Optional.ofNullable(getValuesByName(graph, name).first);
+    }
+
+    private static Values getValuesByName(final ParseGraph graph, final String name) {
+        final GraphIndex index = graph.index;
+        final Values indexed = index.valuesByName.get(name);
+        if (indexed != null) {
+            return indexed;
+        }
+        final Values values = new Values(collect(graph, name));
+        store(graph, new GraphIndex(index.names.add(name), index.valuesByName.put(name, values), index.definitions, index.valuesByDefinition, index.roots, index.tokenNames, index.tokens, index.entryCount + values.list.size, index.removedCount));
+        return values;
+    }
+
+    /**
+     * Returns the values in <code>graph</code> with the given definition, in
+     * the same way as {@link #getByName(ParseGraph, String)}.
+     */
+    static ImmutableList<ParseValue> getByDefinition(final ParseGraph graph, final Token definition) {
+        return getValuesByDefinition(graph, definition).list;
+    }
+
+    /**
+     * Returns the first value in <code>graph</code> with the given
+     * definition, in the same way as {@link #getFirstByName(ParseGraph, String)}.
+     */
+    static Optional<ParseValue> getFirstByDefinition(final ParseGraph graph, final Token definition) {
+        return Optional.ofNullable(getValuesByDefinition(graph, definition).first);
+    }
+
+    private static Values getValuesByDefinition(final ParseGraph graph, final Token definition) {
+        final GraphIndex index = graph.index;
+        final Values indexed = index.valuesByDefinition.get(definition);
+        if (indexed != null) {
+            return indexed;
+        }
+        final Values values = new Values(collect(graph, definition));
+        store(graph, new GraphIndex(index.names, index.valuesByName, index.definitions.add(definition), index.valuesByDefinition.put(definition, values), index.roots, index.tokenNames, index.tokens, index.entryCount + values.list.size, index.removedCount));
+        return values;
+    }
+
+    /**
+     * Returns the definition that {@link Selection#findDefinition(ParseGraph, String)}
+     * finds for <code>name</code>, in the same way as {@link #getByName(ParseGraph, String)}.
+     */
+    static Optional<Token> getDefinition(final ParseGraph graph, final String name) {
+        final GraphIndex index = graph.index;
+        final Optional<Token> indexed = index.tokens.get(name);
+        if (indexed != null) {
+            return indexed;
+        }
+        final Optional<Token> definition = Selection.findDefinitionByTraversal(graph, name);
+        store(graph, new GraphIndex(index.names, index.valuesByName, index.definitions, index.valuesByDefinition, index.roots, index.tokenNames.add(name), index.tokens.put(name, definition), index.entryCount, index.removedCount));
+        return definition;
+    }
+
+    /**
+     * Stores the extended <code>index</code> in <code>graph</code>, so that
+     * the graphs built from it use it. Empty graphs keep their index, since
+     * {@link ParseGraph#EMPTY} is shared by all parses.
+     */
+    private static void store(final ParseGraph graph, final GraphIndex index) {
+        if (!graph.isEmpty()) {
+            graph.index = index;
+        }
+    }
+
+    /**
+     * Makes sure that <code>names</code> and <code>definitions</code> are in
+     * the index of <code>graph</code>, so that their values are kept in the
+     * index when they are removed from graphs built from it.
+     */
+    static void track(final ParseGraph graph, final Collection<String> names, final Collection<Token> definitions) {
+        for (final String name : names) {
+            getByName(graph, name);
+        }
+        for (final Token definition : definitions) {
+            getByDefinition(graph, definition);
+        }
+    }
+
+    private static ImmutableList<ParseValue> collect(final ParseGraph graph, final String name) {
+        return Selection.reverse(Selection.getAllValues(graph, value -> value.matches(name)));
+    }
+
+    private static ImmutableList<ParseValue> collect(final ParseGraph graph, final Token definition) {
+        return Selection.reverse(Selection.getAllValues(graph, value -> Objects.equals(value.definition, definition)));
+    }
+
+    /**
+     * Returns the roots in <code>graph</code> with the given definition and
+     * location, including the branches that are still open. The completed
+     * roots are taken from the index, after adding <code>definition</code>
+     * to it in the same way as {@link #getByName(ParseGraph, String)}.
+     */
+    static ImmutableList<ParseItem> findRoots(final ParseGraph graph, final Token definition, final BigInteger offset, final Source source) {
+        final GraphIndex index = graph.index;
+        Roots roots = index.roots == null ? Roots.create(graph) : index.roots;
+        if (!contains(roots.definitions, definition)) {
+            roots = roots.track(graph, definition);
+            store(graph, new GraphIndex(index.names, index.valuesByName, index.definitions, index.valuesByDefinition, roots, index.tokenNames, index.tokens, index.entryCount, index.removedCount));
+        }
+        ImmutableList<ParseItem> result = new ImmutableList<>();
+        final ImmutableList<Root> completed = roots.items.get(offset);
+        for (ImmutableList<Root> root = completed == null ? new ImmutableList<>() : completed; !root.isEmpty(); root = root.tail) {
+            if (root.head.item.getDefinition().equals(definition) && root.head.location.slice.source.equals(source)) {
+                result = result.add(root.head.item);
+            }
+        }
+        final ParseGraph[] path = graph.getOpenPath();
+        Level level = roots.levels;
+        ParseValue lowest = null;
+        for (int depth = path.length - 1; depth > 0; depth--) {
+            lowest = level.local ? getLowest(lowest, level.lowest) : null;
+            level = level.parent;
+            final ParseGraph branch = path[depth];
+            if (lowest != null && branch.definition.equals(definition) && !path[depth - 1].definition.equals(definition) && lowest.slice.offset.compareTo(offset) == 0 && lowest.slice.source.equals(source)) {
+                result = result.add(branch);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the lowest of two offset values. If both have the same offset,
+     * <code>newer</code> is returned, as in a traversal of the graph.
+     */
+    private static ParseValue getLowest(final ParseValue newer, final ParseValue older) {
+        if (newer == null) {
+            return older;
+        }
+        return older == null || newer.slice.offset.compareTo(older.slice.offset) <= 0 ? newer : older;
+    }
+
+    private static <T> boolean contains(final ImmutableList<T> list, final T element) {
+        for (ImmutableList<T> node = list; !node.isEmpty(); node = node.tail) {
+            if (Objects.equals(node.head, element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The completed roots of the definitions that have been looked up, and
+     * the lowest offset value of the completed items in each open branch.
+     */
+    private static final class Roots {
+
+        final ImmutableList<Token> definitions;
+        final ImmutableMap<BigInteger, ImmutableList<Root>> items;
+        final Level levels; // The deepest open branch.
+
+        private Roots(final ImmutableList<Token> definitions, final ImmutableMap<BigInteger, ImmutableList<Root>> items, final Level levels) {
+            this.definitions = definitions;
+            this.items = items;
+            this.levels = levels;
+        }
+
+        /**
+         * Returns Roots without definitions, with the levels of the open
+         * branches of <code>graph</code>.
+         */
+        static Roots create(final ParseGraph graph) {
+            Level levels = null;
+            for (ParseGraph branch = graph; branch != null; branch = branch.branched ? branch.head.asGraph() : null) {
+                ParseValue lowest = null;
+                if (branch.definition.isLocal()) {
+                    // The head of a branched graph is the open branch, which is accounted for by the next level.
+                    for (ParseGraph node = branch.branched ? branch.tail : branch; !node.isEmpty(); node = node.tail) {
+                        lowest = getLowest(lowest, node.head.isValue() ? node.head.asValue() : node.head.isGraph() ? Selection.getLowestOffsetValue(node.head.asGraph()) : null);
+                    }
+                }
+                levels = new Level(lowest, branch.definition.isLocal(), levels);
+            }
+            return new Roots(new ImmutableList<>(), ImmutableMap.empty(), levels);
+        }
+
+        /**
+         * Returns these Roots with the completed roots in <code>graph</code>
+         * with the given definition added.
+         */
+        Roots track(final ParseGraph graph, final Token definition) {
+            final ImmutableList<Token> newDefinitions = definitions.add(definition);
+            ImmutableMap<BigInteger, ImmutableList<Root>> newItems = items;
+            final Deque<ParseGraph> backlog = new ArrayDeque<>();
+            backlog.push(graph);
+            while (!backlog.isEmpty()) {
+                for (ParseGraph node = backlog.pop(); !node.isEmpty(); node = node.tail) {
+                    if (node.head.isValue()) {
+                        newItems = addRoot(newItems, newDefinitions, node.head, node.head.asValue(), node.definition);
+                    }
+                    else if (node.head.isGraph()) {
+                        if (!node.branched) {
+                            newItems = addRoot(newItems, newDefinitions, node.head, Selection.getLowestOffsetValue(node.head.asGraph()), node.definition);
+                        }
+                        backlog.push(node.head.asGraph());
+                    }
+                }
+            }
+            return new Roots(newDefinitions, newItems, levels);
+        }
+
+        Roots add(final ParseValue value, final Token parentDefinition) {
+            final ImmutableMap<BigInteger, ImmutableList<Root>> newItems = addRoot(items, definitions, value, value, parentDefinition);
+            final boolean lowest = levels.local && (levels.lowest == null || value.slice.offset.compareTo(levels.lowest.slice.offset) <= 0);
+            if (newItems == items && !lowest) {
+                return this;
+            }
+            return new Roots(definitions, newItems, lowest ? new Level(value, true, levels.parent) : levels);
+        }
+
+        Roots addBranch(final Token definition) {
+            return new Roots(definitions, items, new Level(null, definition.isLocal(), levels));
+        }
+
+        Roots close(final ParseGraph graph, final Token parentDefinition) {
+            final ParseValue lowest = levels.lowest;
+            final Level parent = levels.parent;
+            return new Roots(definitions, addRoot(items, definitions, graph, lowest, parentDefinition), new Level(parent.local ? getLowest(lowest, parent.lowest) : null, parent.local, parent.parent));
+        }
+
+        Roots withLowest(final ParseValue lowest) {
+            return new Roots(definitions, items, new Level(lowest, levels.local, levels.parent));
+        }
+
+        private static ImmutableMap<BigInteger, ImmutableList<Root>> addRoot(final ImmutableMap<BigInteger, ImmutableList<Root>> items, final ImmutableList<Token> definitions, final ParseItem item, final ParseValue location, final Token parentDefinition) {
+            if (location == null || !contains(definitions, item.getDefinition()) || item.getDefinition().equals(parentDefinition)) {
+                return items;
+            }
+            return GraphIndex.add(items, location.slice.offset, new Root(item, location));
+        }
+
+    }
+
+    /**
+     * The values of a name or definition, from the most recently added
+     * value to the first, and the first value.
+     */
+    private static final class Values {
+
+        final ImmutableList<ParseValue> list;
+        final ParseValue first; // Null if the list is empty.
+
+        Values(final ImmutableList<ParseValue> list) {
+            this(list, getLast(list));
+        }
+
+        private Values(final ImmutableList<ParseValue> list, final ParseValue first) {
+            this.list = list;
+            this.first = first;
+        }
+
+        private static ParseValue getLast(final ImmutableList<ParseValue> list) {
+            ImmutableList<ParseValue> node = list;
+            while (!node.isEmpty() && !node.tail.isEmpty()) {
+                node = node.tail;
+            }
+            return node.head;
+        }
+
+        Values add(final ParseValue value) {
+            return new Values(list.add(value), first == null ? value : first);
+        }
+
+    }
+
+    private static final class Root {
+
+        final ParseItem item;
+        final ParseValue location;
+
+        Root(final ParseItem item, final ParseValue location) {
+            this.item = item;
+            this.location = location;
+        }
+
+    }
+
+    private static final class Level {
+
+        final ParseValue lowest; // Null if the branch has no completed values or is not local.
+        final boolean local;
+        final Level parent;
+
+        Level(final ParseValue lowest, final boolean local, final Level parent) {
+            this.lowest = lowest;
+            this.local = local;
+            this.parent = parent;
+        }
+
+    }
+
+}
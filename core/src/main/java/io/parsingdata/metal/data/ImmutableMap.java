@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+
+/**
+ * A persistent hash map, implemented as a hash array mapped trie. Every
+ * {@link #put(Object, Object)} returns a new map that shares all unchanged
+ * nodes with the map it was called on, so both lookups and updates take a
+ * number of steps bounded by the number of bits in a hash code.
+ * <p>
+ * Keys are compared using {@link Object#equals(Object)}. Keys with the same
+ * hash code are kept together in a chain at the deepest node.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+class ImmutableMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final ImmutableMap<?, ?> EMPTY = new ImmutableMap<>(new Node(0, new Object[0]));
+
+    private final Node root;
+
+    private ImmutableMap(final Node root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> ImmutableMap<K, V> empty() {
+        return (ImmutableMap<K, V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(final K key) {
+        checkNotNull(key, "key");
+        final int hash = key.hashCode();
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            final int bit = bit(hash, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            final Object child = node.children[node.index(bit)];
+            if (child instanceof Node) {
+                node = (Node) child;
+                continue;
+            }
+            for (Entry entry = (Entry) child; entry != null; entry = entry.next) {
+                if (entry.hash == hash && entry.key.equals(key)) {
+                    return (V) entry.value;
+                }
+            }
+            return null;
+        }
+    }
+
+    ImmutableMap<K, V> put(final K key, final V value) {
+        checkNotNull(key, "key");
+        checkNotNull(value, "value");
+        return new ImmutableMap<>(root.put(new Entry(key.hashCode(), key, value, null), 0));
+    }
+
+    private static int bit(final int hash, final int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static class Node {
+
+        final int bitmap;
+        final Object[] children; // Either a Node or a chain of Entries with the same hash.
+
+        Node(final int bitmap, final Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        int index(final int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        Node put(final Entry entry, final int shift) {
+            final int bit = bit(entry.hash, shift);
+            final int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                final Object[] newChildren = new Object[children.length + 1];
+                System.arraycopy(children, 0, newChildren, 0, index);
+                newChildren[index] = entry;
+                System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+                return new Node(bitmap | bit, newChildren);
+            }
+            final Object child = children[index];
+            final Object newChild;
+            if (child instanceof Node) {
+                newChild = ((Node) child).put(entry, shift + BITS);
+            }
+            else if (((Entry) child).hash == entry.hash) {
+                newChild = ((Entry) child).replace(entry);
+            }
+            else {
+                newChild = merge((Entry) child, entry, shift + BITS);
+            }
+            final Object[] newChildren = children.clone();
+            newChildren[index] = newChild;
+            return new Node(bitmap, newChildren);
+        }
+
+        private static Node merge(final Entry first, final Entry second, final int shift) {
+            final int firstBit = bit(first.hash, shift);
+            final int secondBit = bit(second.hash, shift);
+            if (firstBit == secondBit) {
+                return new Node(firstBit, new Object[] { merge(first, second, shift + BITS) });
+            }
+            return new Node(firstBit | secondBit, Integer.compareUnsigned(firstBit, secondBit) < 0 ? new Object[] { first, second } : new Object[] { second, first });
+        }
+
+    }
+
+    private static class Entry {
+
+        final int hash;
+        final Object key;
+        final Object value;
+        final Entry next;
+
+        Entry(final int hash, final Object key, final Object value, final Entry next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        /**
+         * Returns a chain in which the entry with the same key as
+         * <code>entry</code> is replaced by it, or to which it is added.
+         */
+        Entry replace(final Entry entry) {
+            if (key.equals(entry.key)) {
+                return new Entry(hash, key, entry.value, next);
+            }
+            if (next == null) {
+                return new Entry(entry.hash, entry.key, entry.value, this);
+            }
+            return new Entry(hash, key, value, next.replace(entry));
+        }
+
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.Util.checkNotNegative;
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.format;
+import static io.parsingdata.metal.Util.isWithin;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+
+import io.parsingdata.metal.Util;
+import io.parsingdata.metal.data.DeflateDecoder.Checkpoint;
+
+/**
+ * A {@link Source} that presents the decompressed contents of raw deflate
+ * data (RFC 1951) in a {@link Slice}, without keeping them in memory.
+ * <p>
+ * When the source is created, the compressed data is decompressed once to
+ * determine its length and to verify that it is valid. If the decompressed
+ * data is no longer than <code>checkpointSpan</code>, it is kept in memory,
+ * so it is never decompressed again. Otherwise, a {@link Checkpoint} is
+ * recorded at the first block boundary after every
+ * <code>checkpointSpan</code> bytes of output. A read at an arbitrary offset
+ * resumes decompression from the nearest preceding checkpoint. The decoder is
+ * kept between reads, so sequential reads do not restart at a checkpoint.
+ * <p>
+ * Every checkpoint holds a 32 KiB window. To bound memory use regardless of
+ * the decompressed size, at most <code>maxCheckpoints</code> checkpoints are
+ * kept. When that number is exceeded, every other checkpoint is dropped and
+ * the span between checkpoints is doubled. Memory use is therefore at most
+ * <code>maxCheckpoints</code> times 32 KiB, plus <code>checkpointSpan</code>
+ * bytes for small data. For very large data, the span grows, so that a read
+ * may have to decompress up to the decompressed size divided by
+ * <code>maxCheckpoints</code> bytes that it does not need.
+ */
+public class InflateSource extends Source {
+
+    public static final long DEFAULT_CHECKPOINT_SPAN = 1 << 20;
+    public static final int DEFAULT_MAX_CHECKPOINTS = 256;
+
+    public final Slice compressed;
+    public final BigInteger length;
+    private final Checkpoint[] checkpoints; // Private because array content is mutable.
+    private final byte[] data; // Private because array content is mutable.
+
+    private DeflateDecoder decoder = null;
+
+    private InflateSource(final Slice compressed, final BigInteger length, final Checkpoint[] checkpoints, final byte[] data) {
+        this.compressed = checkNotNull(compressed, "compressed");
+        this.length = checkNotNegative(length, "length");
+        this.checkpoints = checkNotNull(checkpoints, "checkpoints");
+        this.data = data;
+    }
+
+    public static Optional<InflateSource> create(final Slice compressed) {
+        return create(compressed, DEFAULT_CHECKPOINT_SPAN);
+    }
+
+    public static Optional<InflateSource> create(final Slice compressed, final long checkpointSpan) {
+        return create(compressed, checkpointSpan, DEFAULT_MAX_CHECKPOINTS);
+    }
+
+    public static Optional<InflateSource> create(final Slice compressed, final long checkpointSpan, final int maxCheckpoints) {
+        checkNotNull(compressed, "compressed");
+        if (checkpointSpan <= 0) {
+            throw new IllegalArgumentException("Argument checkpointSpan must be positive.");
+        }
+        if (maxCheckpoints <= 0) {
+            throw new IllegalArgumentException("Argument maxCheckpoints must be positive.");
+        }
+        final DeflateDecoder decoder = new DeflateDecoder(compressed);
+        final List<Checkpoint> checkpoints = new ArrayList<>();
+        final byte[] buffer = new byte[8192];
+        final long inMemoryLimit = Math.min(checkpointSpan, Integer.MAX_VALUE - 8);
+        byte[] data = new byte[(int) Math.min(inMemoryLimit, buffer.length)];
+        long span = checkpointSpan;
+        long lastCheckpoint = 0;
+        try {
+            while (!decoder.isFinished()) {
+                if (decoder.isAtBlockBoundary() && decoder.getOutputPosition() - lastCheckpoint >= span) {
+                    checkpoints.add(decoder.checkpoint());
+                    lastCheckpoint = decoder.getOutputPosition();
+                    if (checkpoints.size() > maxCheckpoints) {
+                        thin(checkpoints);
+                        span *= 2;
+                        lastCheckpoint = checkpoints.get(checkpoints.size() - 1).outputPosition;
+                    }
+                }
+                if (data != null && decoder.getOutputPosition() == data.length) {
+                    data = data.length < inMemoryLimit ? Arrays.copyOf(data, (int) Math.min(inMemoryLimit, data.length * 2L)) : null;
+                }
+                if (data != null) {
+                    final int position = (int) decoder.getOutputPosition();
+                    decoder.read(data, position, data.length - position);
+                }
+                else {
+                    decoder.read(buffer, 0, buffer.length);
+                }
+            }
+        } catch (final DataFormatException exception) {
+            return Optional.empty();
+        }
+        final BigInteger length = BigInteger.valueOf(decoder.getOutputPosition());
+        if (data != null) {
+            return Optional.of(new InflateSource(compressed, length, new Checkpoint[0], Arrays.copyOf(data, length.intValueExact())));
+        }
+        return Optional.of(new InflateSource(compressed, length, checkpoints.toArray(new Checkpoint[0]), null));
+    }
+
+    /**
+     * Removes every other checkpoint, keeping the ones with an odd index.
+     */
+    private static void thin(final List<Checkpoint> checkpoints) {
+        int kept = 0;
+        for (int i = 1; i < checkpoints.size(); i += 2) {
+            checkpoints.set(kept++, checkpoints.get(i));
+        }
+        checkpoints.subList(kept, checkpoints.size()).clear();
+    }
+
+    @Override
+    protected byte[] getData(final BigInteger offset, final BigInteger length) {
+        final byte[] data = new byte[length.intValueExact()];
+        readInto(offset, data.length, data, 0);
+        return data;
+    }
+
+    @Override
+    protected synchronized void readInto(final BigInteger offset, final int length, final byte[] destination, final int position) {
+        if (!isAvailable(offset, BigInteger.valueOf(length))) {
+            throw new IllegalStateException(format("Data to read is not available ([offset=%d;length=%d;source=%s).", offset, length, this));
+        }
+        if (data != null) {
+            System.arraycopy(data, offset.intValueExact(), destination, position, length);
+            return;
+        }
+        try {
+            final long start = offset.longValueExact();
+            final Checkpoint checkpoint = findCheckpoint(start);
+            if (decoder == null || decoder.getOutputPosition() > start || (checkpoint != null && checkpoint.outputPosition > decoder.getOutputPosition())) {
+                decoder = checkpoint == null ? new DeflateDecoder(compressed) : new DeflateDecoder(compressed, checkpoint);
+            }
+            decoder.skip(start - decoder.getOutputPosition());
+            int read = 0;
+            while (read < length) {
+                final int result = decoder.read(destination, position + read, length - read);
+                if (result < 0) {
+                    throw new IllegalStateException(format("Compressed data ended prematurely ([offset=%d;length=%d;source=%s).", offset, length, this));
+                }
+                read += result;
+            }
+        } catch (final DataFormatException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Returns the last checkpoint at or before <code>offset</code>, or
+     * <code>null</code> if decompression must start at the beginning.
+     */
+    private Checkpoint findCheckpoint(final long offset) {
+        int low = 0;
+        int high = checkpoints.length - 1;
+        Checkpoint result = null;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (checkpoints[middle].outputPosition <= offset) {
+                result = checkpoints[middle];
+                low = middle + 1;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return result;
+    }
+
+    int getCheckpointCount() {
+        return checkpoints.length;
+    }
+
+    @Override
+    protected boolean isAvailable(final BigInteger offset, final BigInteger length) {
+        checkNotNegative(length, "length");
+        return isWithin(checkNotNegative(offset, "offset"), length, this.length.longValueExact());
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + compressed + ")";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return Util.notNullAndSameClass(this, obj)
+            && Objects.equals(compressed, ((InflateSource)obj).compressed);
+        // The length, checkpoints and data fields are excluded from equals() and hashCode() because they are derived from compressed.
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), compressed);
+    }
+
+}
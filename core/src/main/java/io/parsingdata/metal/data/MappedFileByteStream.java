@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.format;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import io.parsingdata.metal.Util;
+
+/**
+ * A {@link ByteStream} that reads from a file through memory-mapped
+ * segments.
+ * <p>
+ * Since a single {@link MappedByteBuffer} is limited to
+ * {@link Integer#MAX_VALUE} bytes, the file is mapped as a series of
+ * consecutive segments of <code>segmentSize</code> bytes each (the last
+ * segment may be smaller). Reads that cross a segment boundary are assembled
+ * from the segments involved. The size of the file is determined once, when
+ * the stream is created, so {@link #isAvailable(BigInteger, int)} does not
+ * access the file. Bytes and buffers within a segment are read from the
+ * mapped segment, without copying.
+ */
+public class MappedFileByteStream implements ByteStream {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    public final Path path;
+    public final long size;
+    public final int segmentSize;
+    private final MappedByteBuffer[] segments; // Private because array content is mutable.
+
+    private MappedFileByteStream(final Path path, final long size, final int segmentSize, final MappedByteBuffer[] segments) {
+        this.path = checkNotNull(path, "path");
+        this.size = size;
+        this.segmentSize = segmentSize;
+        this.segments = checkNotNull(segments, "segments");
+    }
+
+    public static MappedFileByteStream create(final Path path) throws IOException {
+        return create(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static MappedFileByteStream create(final Path path, final int segmentSize) throws IOException {
+        checkNotNull(path, "path");
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Argument segmentSize must be positive.");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                final long position = (long) i * segmentSize;
+                segments[i] = channel.map(MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+            }
+            return new MappedFileByteStream(path, size, segmentSize, segments);
+        }
+    }
+
+    @Override
+    public byte[] read(final BigInteger offset, final int length) throws IOException {
+        if (!isAvailable(offset, length)) {
+            throw new IOException(format("Data to read is not available (offset=%d;length=%d;stream=%s).", offset, length, this));
+        }
+        final byte[] data = new byte[length];
+        long position = offset.longValue();
+        int copied = 0;
+        while (copied < length) {
+            final int segmentOffset = (int) (position % segmentSize);
+            final int toCopy = Math.min(length - copied, segmentSize - segmentOffset);
+            // A duplicate is used so that concurrent reads do not share a position.
+            final ByteBuffer segment = segments[(int) (position / segmentSize)].duplicate();
+            segment.position(segmentOffset);
+            segment.get(data, copied, toCopy);
+            copied += toCopy;
+            position += toCopy;
+        }
+        return data;
+    }
+
+    /**
+     * Returns a read-only buffer with <code>length</code> bytes starting at
+     * <code>offset</code>. If these are in a single segment, the buffer is a
+     * view of the mapped segment, without copying.
+     */
+    @Override
+    public ByteBuffer asByteBuffer(final BigInteger offset, final int length) throws IOException {
+        if (!isAvailable(offset, length)) {
+            throw new IOException(format("Data to read is not available (offset=%d;length=%d;stream=%s).", offset, length, this));
+        }
+        final long position = offset.longValue();
+        final int segmentOffset = (int) (position % segmentSize);
+        if (length == 0 || segmentOffset + length > segmentSize) {
+            return ByteStream.super.asByteBuffer(offset, length);
+        }
+        // A duplicate is used so that concurrent reads do not share a position.
+        final ByteBuffer segment = segments[(int) (position / segmentSize)].duplicate();
+        segment.position(segmentOffset);
+        segment.limit(segmentOffset + length);
+        return segment.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte getByte(final BigInteger offset) throws IOException {
+        if (!isAvailable(offset, 1)) {
+            throw new IOException(format("Data to read is not available (offset=%d;length=1;stream=%s).", offset, this));
+        }
+        final long position = offset.longValue();
+        return segments[(int) (position / segmentSize)].get((int) (position % segmentSize));
+    }
+
+    @Override
+    public boolean isAvailable(final BigInteger offset, final int length) {
+        return offset.signum() >= 0
+            && length >= 0
+            && offset.bitLength() < Long.SIZE
+            && offset.longValue() <= size - length;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + path + ":" + size + ")";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return Util.notNullAndSameClass(this, obj)
+            && Objects.equals(path, ((MappedFileByteStream)obj).path)
+            && Objects.equals(segmentSize, ((MappedFileByteStream)obj).segmentSize);
+            // The size and segments fields are excluded from equals() and hashCode() because they are derived from the file.
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), path, segmentSize);
+    }
+
+}
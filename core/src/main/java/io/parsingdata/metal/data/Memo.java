@@ -0,0 +1,358 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.token.Token.SEPARATOR;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import io.parsingdata.metal.data.callback.Callbacks;
+import io.parsingdata.metal.encoding.Encoding;
+import io.parsingdata.metal.expression.comparison.ComparisonExpression;
+import io.parsingdata.metal.expression.value.Const;
+import io.parsingdata.metal.expression.value.reference.CurrentIteration;
+import io.parsingdata.metal.expression.value.reference.Ref;
+import io.parsingdata.metal.expression.value.reference.Self;
+import io.parsingdata.metal.token.Cho;
+import io.parsingdata.metal.token.Def;
+import io.parsingdata.metal.token.Post;
+import io.parsingdata.metal.token.Rep;
+import io.parsingdata.metal.token.Sub;
+import io.parsingdata.metal.token.Token;
+import io.parsingdata.metal.token.TokenRef;
+import io.parsingdata.metal.token.Until;
+
+/**
+ * A bounded table of the results of parsing tokens, to avoid parsing the
+ * same token at the same location again after backtracking (as in packrat
+ * parsing).
+ * <p>
+ * When a {@link Cho} alternative fails, or a {@link Rep} or {@link Until}
+ * attempt is retried, the tokens it parsed successfully are parsed again by
+ * the next attempt. With a Memo in the {@link Environment} (see
+ * {@link Environment#withMemo(Memo)}), the result of every token whose parse
+ * does not depend on the rest of the parse state is stored, keyed by the
+ * token, the source, the offset and the encoding. Tokens are compared with
+ * <code>equals()</code>, so equal tokens in different alternatives share
+ * their results. A stored result is the item the token added to the graph
+ * (or the failure to parse it) and the offset after it. It is added to the
+ * graph again, with the names of its values moved to the scope of the new
+ * parse.
+ * <p>
+ * A token is only memoized if its token tree contains no {@link Ref},
+ * {@link CurrentIteration}, {@link TokenRef} or {@link Sub}, and only reads
+ * the current value (with {@link Self} or a {@link ComparisonExpression}
+ * without a value) in the predicate of a {@link Post} around a {@link Def}
+ * of a positive constant size. No results are stored or used when the
+ * environment has {@link Callbacks} or a {@link Retention}, since those
+ * must see every parse.
+ * <p>
+ * The table holds at most <code>capacity</code> results and evicts the least
+ * recently used one when it is full. A Memo may be shared between parses and
+ * threads.
+ */
+public class Memo {
+
+    public static final Memo NONE = new Memo();
+
+    private static final ParseItem CLOSE_BRANCH = () -> null;
+    private static final Result FAILURE = new Result(null, null, null);
+
+    public final int capacity;
+    private final Table results; // Guarded by this.
+    private final Map<Token, Token> canonicalTokens = new HashMap<>(); // Guarded by this.
+    private final Map<Token, Optional<Token>> memoizableTokens = new IdentityHashMap<>(); // Guarded by this.
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private Memo() {
+        capacity = 0;
+        results = null;
+    }
+
+    public Memo(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Argument capacity must be positive.");
+        }
+        this.capacity = capacity;
+        results = new Table(capacity);
+    }
+
+    /**
+     * Returns the result of parsing <code>token</code> in
+     * <code>environment</code>, which is either taken from the table or
+     * obtained from <code>parser</code> and stored.
+     */
+    public Optional<ParseState> parse(final Token token, final Environment environment, final Supplier<Optional<ParseState>> parser) {
+        if (this == NONE || environment.callbacks != Callbacks.NONE || environment.retention != Retention.ALL) {
+            return parser.get();
+        }
+        final Optional<Token> canonical = getMemoizable(token);
+        if (!canonical.isPresent()) {
+            return parser.get();
+        }
+        final ParseState parseState = environment.parseState;
+        final Key key = new Key(canonical.get(), parseState.source, parseState.offset, environment.encoding);
+        final Result result;
+        synchronized (this) {
+            result = results.get(key);
+        }
+        if (result != null) {
+            final Optional<ParseState> replayed = result.replay(parseState, environment.scope);
+            if (replayed != null) {
+                hits.increment();
+                return replayed;
+            }
+        }
+        misses.increment();
+        final Optional<ParseState> parsed = parser.get();
+        final Result newResult = Result.record(parseState, environment.scope, parsed);
+        if (newResult != null) {
+            synchronized (this) {
+                results.put(key, newResult);
+            }
+        }
+        return parsed;
+    }
+
+    @SuppressWarnings("ReferenceEquality") // A token is analyzed once, as the canonical instance of the tokens that are equal to it.
+    private synchronized Optional<Token> getMemoizable(final Token token) {
+        final Optional<Token> memoizable = memoizableTokens.get(token);
+        if (memoizable != null) {
+            return memoizable;
+        }
+        final Token canonical = canonicalTokens.computeIfAbsent(token, key -> key);
+        final Optional<Token> result = canonical == token ? (isContextFree(token, false) ? Optional.of(token) : Optional.empty()) : getMemoizable(canonical);
+        memoizableTokens.put(token, result);
+        return result;
+    }
+
+    private static boolean isContextFree(final Object root, final boolean readsOwnValue) {
+        final TokenTree tree = new TokenTree(root);
+        for (Object object = tree.next(); object != null; object = tree.next()) {
+            if (object instanceof Ref || object instanceof CurrentIteration || object instanceof TokenRef || object instanceof Sub) {
+                return false;
+            }
+            if (!readsOwnValue && (object instanceof Self || (object instanceof ComparisonExpression && ((ComparisonExpression) object).value == null))) {
+                return false;
+            }
+            if (object instanceof Post && addsValue(((Post) object).token)) {
+                if (!isContextFree(((Post) object).predicate, true)) {
+                    return false;
+                }
+                tree.push(((Post) object).token);
+                continue;
+            }
+            tree.pushOperands(object);
+        }
+        return tree.isComplete();
+    }
+
+    private static boolean addsValue(final Token token) {
+        return token instanceof Def
+            && ((Def) token).size instanceof Const
+            && ((Const) ((Def) token).size).value.asNumeric().signum() > 0;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public synchronized int size() {
+        return results == null ? 0 : results.size();
+    }
+
+    public synchronized void clear() {
+        if (results != null) {
+            results.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(capacity:" + capacity + ")";
+    }
+
+    private static class Result {
+
+        final ParseItem item; // Null if the token added no item.
+        final String scope;
+        final BigInteger offset;
+
+        Result(final ParseItem item, final String scope, final BigInteger offset) {
+            this.item = item;
+            this.scope = scope;
+            this.offset = offset;
+        }
+
+        /**
+         * Returns the Result of a parse that started at <code>before</code>,
+         * or <code>null</code> if it changed the parse state in a way that
+         * cannot be replayed.
+         */
+        @SuppressWarnings("ReferenceEquality") // The parse must have continued from the same source and graph, not from equal ones.
+        static Result record(final ParseState before, final String scope, final Optional<ParseState> parsed) {
+            if (!parsed.isPresent()) {
+                return FAILURE;
+            }
+            final ParseState after = parsed.get();
+            if (after.source != before.source || after.iterations != before.iterations) {
+                return null;
+            }
+            final ParseGraph[] pathBefore = before.order.getOpenPath();
+            final ParseGraph[] pathAfter = after.order.getOpenPath();
+            if (pathBefore.length != pathAfter.length) {
+                return null;
+            }
+            final ParseGraph openBefore = pathBefore[pathBefore.length - 1];
+            final ParseGraph openAfter = pathAfter[pathAfter.length - 1];
+            if (openAfter == openBefore) {
+                return new Result(null, scope, after.offset);
+            }
+            if (openAfter.isEmpty() || openAfter.tail != openBefore) {
+                return null;
+            }
+            return new Result(openAfter.head, scope, after.offset);
+        }
+
+        /**
+         * Returns the result of this parse applied to <code>parseState</code>
+         * in <code>scope</code>, or <code>null</code> if the names of the
+         * values cannot be moved to that scope.
+         */
+        Optional<ParseState> replay(final ParseState parseState, final String scope) {
+            if (this == FAILURE) {
+                return Optional.empty();
+            }
+            if (item == null) {
+                return Optional.of(new ParseState(parseState.order, parseState.source, offset, parseState.iterations));
+            }
+            ParseGraph order = parseState.order;
+            final Deque<ParseItem> backlog = new ArrayDeque<>();
+            backlog.push(item);
+            while (!backlog.isEmpty()) {
+                final ParseItem next = backlog.pop();
+                if (next == CLOSE_BRANCH) {
+                    order = order.closeBranch();
+                }
+                else if (next.isValue()) {
+                    final ParseValue value = rename(next.asValue(), this.scope, scope);
+                    if (value == null) {
+                        return null;
+                    }
+                    order = order.add(value);
+                }
+                else if (next.isReference()) {
+                    order = order.add(next.asReference());
+                }
+                else {
+                    order = order.addBranch(next.getDefinition());
+                    backlog.push(CLOSE_BRANCH);
+                    for (ParseGraph graph = next.asGraph(); !graph.isEmpty(); graph = graph.tail) {
+                        backlog.push(graph.head);
+                    }
+                }
+            }
+            return Optional.of(new ParseState(order, parseState.source, offset, parseState.iterations));
+        }
+
+        private static ParseValue rename(final ParseValue value, final String from, final String to) {
+            if (from.equals(to)) {
+                return value;
+            }
+            final String relativeName;
+            if (from.isEmpty()) {
+                relativeName = value.name;
+            }
+            else if (value.name.equals(from)) {
+                relativeName = "";
+            }
+            else if (value.name.startsWith(from) && value.name.startsWith(SEPARATOR, from.length())) {
+                relativeName = value.name.substring(from.length() + SEPARATOR.length());
+            }
+            else {
+                return null;
+            }
+            final String name = to.isEmpty() || relativeName.isEmpty() ? to + relativeName : to + SEPARATOR + relativeName;
+            return name.isEmpty() ? null : new ParseValue(name, value.definition, value.slice, value.encoding);
+        }
+
+    }
+
+    private static class Key {
+
+        final Token token;
+        final Source source;
+        final BigInteger offset;
+        final Encoding encoding;
+
+        Key(final Token token, final Source source, final BigInteger offset, final Encoding encoding) {
+            this.token = token;
+            this.source = source;
+            this.offset = offset;
+            this.encoding = encoding;
+        }
+
+        @Override
+        @SuppressWarnings("ReferenceEquality")
+        public boolean equals(final Object obj) {
+            // The token and source are compared by identity, since the token is canonical and comparing sources may read their data.
+            return obj instanceof Key
+                && token == ((Key)obj).token
+                && source == ((Key)obj).source
+                && offset.equals(((Key)obj).offset)
+                && encoding.equals(((Key)obj).encoding);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(token), System.identityHashCode(source), offset, encoding);
+        }
+
+    }
+
+    private static class Table extends LinkedHashMap<Key, Result> {
+
+        private final int capacity;
+
+        Table(final int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, Result> eldest) {
+            return size() > capacity;
+        }
+
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.parsingdata.metal.Util;
+
+/**
+ * A bounded cache of fixed-size pages read from {@link ByteStream}s.
+ * <p>
+ * Pages are identified by the {@link ByteStream} they were read from (using
+ * its <code>equals()</code> method) and their index. This means a single
+ * PageCache can be shared between multiple {@link CachingByteStream}s, also
+ * when they are used concurrently from different threads: equal streams will
+ * share their pages.
+ * <p>
+ * To limit contention, the cache is divided into a number of stripes, each
+ * with its own lock and its own least-recently-used eviction order. The
+ * <code>capacity</code> (in pages) is divided evenly over the stripes. Pages
+ * are loaded outside of the locks, so a slow read never blocks lookups of
+ * other pages. The amount of hits and misses is counted, to help size the
+ * cache.
+ *
+ * @see CachingByteStream
+ */
+public class PageCache {
+
+    public static final int DEFAULT_STRIPE_COUNT = 16;
+
+    public final int pageSize;
+    public final int capacity;
+    private final Stripe[] stripes; // Private because array content is mutable.
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PageCache(final int pageSize, final int capacity, final int stripeCount) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Argument pageSize must be positive.");
+        }
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("Argument stripeCount must be positive.");
+        }
+        if (capacity < stripeCount) {
+            throw new IllegalArgumentException("Argument capacity may not be smaller than stripeCount.");
+        }
+        this.pageSize = pageSize;
+        this.capacity = capacity;
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+        }
+    }
+
+    public PageCache(final int pageSize, final int capacity) {
+        this(pageSize, capacity, Math.min(DEFAULT_STRIPE_COUNT, capacity));
+    }
+
+    @FunctionalInterface
+    interface PageLoader {
+        byte[] load() throws IOException;
+    }
+
+    byte[] getPage(final ByteStream input, final long index, final PageLoader loader) throws IOException {
+        final PageKey key = new PageKey(input, index);
+        final Stripe stripe = stripes[Math.floorMod(key.hashCode(), stripes.length)];
+        synchronized (stripe) {
+            final byte[] page = stripe.get(key);
+            if (page != null) {
+                hits.increment();
+                return page;
+            }
+        }
+        misses.increment();
+        final byte[] page = checkNotNull(loader.load(), "page");
+        synchronized (stripe) {
+            stripe.put(key, page);
+        }
+        return page;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (final Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(pageSize:" + pageSize + ";capacity:" + capacity + ";stripes:" + stripes.length + ")";
+    }
+
+    private static class Stripe extends LinkedHashMap<PageKey, byte[]> {
+
+        private final int capacity;
+
+        Stripe(final int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<PageKey, byte[]> eldest) {
+            return size() > capacity;
+        }
+
+    }
+
+    private static class PageKey {
+
+        private final ByteStream input;
+        private final long index;
+
+        PageKey(final ByteStream input, final long index) {
+            this.input = checkNotNull(input, "input");
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return Util.notNullAndSameClass(this, obj)
+                && Objects.equals(input, ((PageKey)obj).input)
+                && index == ((PageKey)obj).index;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(input, index);
+        }
+
+    }
+
+}
@@ -16,14 +16,11 @@
 
 package io.parsingdata.metal.data;
 
-import static io.parsingdata.metal.Trampoline.complete;
-import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
 
 import java.util.Objects;
 import java.util.Optional;
 
-import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.token.Token;
 
@@ -34,87 +31,148 @@ public class ParseGraph implements ParseItem {
     public final boolean branched;
     public final Token definition;
     public final long size;
+    private final Optional<ParseValue> currentValue;
+    // Not final because lookups extend it (see GraphIndex), volatile because they may happen on any thread. Only maintained for graphs built from EMPTY, null for branches.
+    volatile GraphIndex index;
 
     public static final Token NONE = new Token("NONE", null) {
         @Override protected Optional<ParseState> parseImpl(final Environment environment) { throw new IllegalStateException("This placeholder may not be invoked."); }
         @Override public String toString() { return "None"; }
     };
 
-    public static final ParseGraph EMPTY = new ParseGraph(NONE);
+    public static final ParseGraph EMPTY = new ParseGraph(NONE, GraphIndex.EMPTY);
 
-    private ParseGraph(final Token definition) {
+    private ParseGraph(final Token definition, final GraphIndex index) {
+        this(definition, index, Optional.empty());
+    }
+
+    private ParseGraph(final Token definition, final GraphIndex index, final Optional<ParseValue> currentValue) {
         head = null;
         tail = null;
         branched = false;
         this.definition = checkNotNull(definition, "definition");
         size = 0;
+        this.currentValue = currentValue;
+        this.index = index;
     }
 
-    private ParseGraph(final ParseItem head, final ParseGraph tail, final Token definition, final boolean branched) {
+    private ParseGraph(final ParseItem head, final ParseGraph tail, final Token definition, final boolean branched, final GraphIndex index) {
+        this(head, tail, definition, branched, index, getCurrent(head, tail));
+    }
+
+    private ParseGraph(final ParseItem head, final ParseGraph tail, final Token definition, final boolean branched, final GraphIndex index, final Optional<ParseValue> currentValue) {
         this.head = checkNotNull(head, "head");
         this.tail = checkNotNull(tail, "tail");
         this.branched = branched;
         this.definition = checkNotNull(definition, "definition");
         size = tail.size + 1;
+        this.currentValue = checkNotNull(currentValue, "currentValue");
+        this.index = index;
     }
 
-    private ParseGraph(final ParseItem head, final ParseGraph tail, final Token definition) {
-        this(head, tail, definition, false);
+    private static Optional<ParseValue> getCurrent(final ParseItem head, final ParseGraph tail) {
+        return head.isValue() ? Optional.of(head.asValue()) : head.isGraph() && head.asGraph().currentValue.isPresent() ? head.asGraph().currentValue : tail.currentValue;
+    }
+
+    private ParseGraph(final ParseItem head, final ParseGraph tail, final Token definition, final GraphIndex index) {
+        this(head, tail, definition, false, index);
     }
 
     protected ParseGraph add(final ParseValue head) {
+        return add(head, index == null ? null : index.add(head, this));
+    }
+
+    private ParseGraph add(final ParseValue head, final GraphIndex index) {
         if (branched) {
-            return new ParseGraph(this.head.asGraph().add(head), tail, definition, true);
+            return new ParseGraph(this.head.asGraph().add(head, null), tail, definition, true, index);
         }
-        return new ParseGraph(head, this, definition);
+        return new ParseGraph(head, this, definition, index);
     }
 
     protected ParseGraph add(final ParseReference parseReference) {
+        return add(parseReference, index == null ? null : index.add(parseReference, this));
+    }
+
+    private ParseGraph add(final ParseReference parseReference, final GraphIndex index) {
         if (branched) {
-            return new ParseGraph(head.asGraph().add(parseReference), tail, definition, true);
+            return new ParseGraph(head.asGraph().add(parseReference, null), tail, definition, true, index);
         }
-        return new ParseGraph(parseReference, this, definition);
+        return new ParseGraph(parseReference, this, definition, index);
     }
 
     protected ParseGraph addBranch(final Token definition) {
+        return addBranch(definition, index == null ? null : index.addBranch(definition, this));
+    }
+
+    private ParseGraph addBranch(final Token definition, final GraphIndex index) {
         if (branched) {
-            return new ParseGraph(head.asGraph().addBranch(definition), tail, this.definition, true);
+            return new ParseGraph(head.asGraph().addBranch(definition, null), tail, this.definition, true, index);
         }
-        return new ParseGraph(new ParseGraph(definition), this, this.definition, true);
+        return new ParseGraph(new ParseGraph(definition, null), this, this.definition, true, index);
     }
 
     protected ParseGraph closeBranch() {
         if (!branched) {
             throw new IllegalStateException("Cannot close branch that is not open.");
         }
+        return closeBranch(index == null ? null : index.close(this));
+    }
+
+    private ParseGraph closeBranch(final GraphIndex index) {
         if (head.asGraph().branched) {
-            return new ParseGraph(head.asGraph().closeBranch(), tail, definition, true);
+            return new ParseGraph(head.asGraph().closeBranch(null), tail, definition, true, index);
         }
-        return new ParseGraph(head, tail, definition, false);
+        return new ParseGraph(head, tail, definition, false, index);
     }
 
-    public boolean isEmpty() { return size == 0; }
-
     /**
-     * @return The first value (bottom-up) in this graph
+     * Removes the item that was most recently added to the deepest open
+     * branch. The result keeps the {@link #current()} value of this graph,
+     * even if it was in the removed item.
+     *
+     * @param index The index of the result
      */
-    public Optional<ParseValue> current() {
-        return current(ImmutableList.create(this)).computeResult();
+    ParseGraph removeLast(final GraphIndex index) {
+        if (branched) {
+            return new ParseGraph(head.asGraph().removeLast(null), tail, definition, true, index);
+        }
+        if (isEmpty()) {
+            throw new IllegalStateException("Cannot remove item from empty graph.");
+        }
+        return tail.isEmpty() ? new ParseGraph(tail.definition, index, currentValue) : new ParseGraph(tail.head, tail.tail, tail.definition, false, index, currentValue);
     }
 
-    private Trampoline<Optional<ParseValue>> current(final ImmutableList<ParseItem> items) {
-        if (items.isEmpty()) {
-            return complete(Optional::empty);
-        }
-        final ParseItem item = items.head;
-        if (item.isValue()) {
-            return complete(() -> Optional.of(item.asValue()));
+    ParseGraph withIndex(final GraphIndex index) {
+        return isEmpty() ? new ParseGraph(definition, index, currentValue) : new ParseGraph(head, tail, definition, branched, index, currentValue);
+    }
+
+    /**
+     * Returns the path of open branches from this graph down to the graph
+     * that values are added to. The first element is this graph, every next
+     * element is the head of the previous one and only the last element is
+     * not branched.
+     */
+    ParseGraph[] getOpenPath() {
+        int depth = 1;
+        for (ParseGraph graph = this; graph.branched; graph = graph.head.asGraph()) {
+            depth++;
         }
-        if (item.isGraph() && !item.asGraph().isEmpty()) {
-            return intermediate(() -> current(items.tail.add(item.asGraph().tail)
-                                                        .add(item.asGraph().head)));
+        final ParseGraph[] path = new ParseGraph[depth];
+        ParseGraph graph = this;
+        for (int level = 0; level < depth; level++) {
+            path[level] = graph;
+            graph = graph.branched ? graph.head.asGraph() : null;
         }
-        return intermediate(() -> current(items.tail));
+        return path;
+    }
+
+    public boolean isEmpty() { return size == 0; }
+
+    /**
+     * @return The first value (bottom-up) in this graph
+     */
+    public Optional<ParseValue> current() {
+        return currentValue;
     }
 
     @Override public boolean isGraph() { return true; }
@@ -139,7 +197,7 @@ public class ParseGraph implements ParseItem {
             && Objects.equals(tail, ((ParseGraph)obj).tail)
             && Objects.equals(branched, ((ParseGraph)obj).branched)
             && Objects.equals(definition, ((ParseGraph)obj).definition);
-            // The size field is excluded from equals() and hashCode() because it is cached data.
+            // The size, currentValue and index fields are excluded from equals() and hashCode() because they are cached data or, after removeLast(), refer to removed items.
     }
 
     @Override
@@ -17,8 +17,7 @@
 package io.parsingdata.metal.data;
 
 import static io.parsingdata.metal.Util.checkNotNull;
-import static io.parsingdata.metal.data.Selection.findItemAtOffset;
-import static io.parsingdata.metal.data.Selection.getAllRoots;
+import static io.parsingdata.metal.data.Selection.findRootAtOffset;
 
 import java.math.BigInteger;
 import java.util.Objects;
@@ -40,7 +39,7 @@ public class ParseReference implements ParseItem {
     }
 
     public Optional<ParseItem> resolve(final ParseGraph root) {
-        return findItemAtOffset(getAllRoots(root, definition), location, source).computeResult();
+        return findRootAtOffset(root, definition, location, source);
     }
 
     @Override public boolean isReference() { return true; }
@@ -16,7 +16,6 @@
 
 package io.parsingdata.metal.data;
 
-import static java.math.BigInteger.ONE;
 import static java.math.BigInteger.ZERO;
 
 import static io.parsingdata.metal.Util.checkNotNegative;
@@ -25,6 +24,7 @@ import static io.parsingdata.metal.Util.format;
 import static io.parsingdata.metal.data.Slice.createFromSource;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -73,7 +73,7 @@ public class ParseState {
     }
 
     public ParseState iterate() {
-        return new ParseState(order, source, offset, iterations.tail.add(new ImmutablePair<>(iterations.head.left, iterations.head.right.add(ONE))));
+        return new ParseState(order, source, offset, iterations.tail.add(new ImmutablePair<>(iterations.head.left, Util.add(iterations.head.right, 1))));
     }
 
     public Optional<ParseState> seek(final BigInteger newOffset) {
@@ -88,6 +88,29 @@ public class ParseState {
         return createFromSource(source, offset, length);
     }
 
+    /**
+     * Returns whether the bytes at the current offset are equal to
+     * <code>pattern</code>, which may not be empty. The bytes are compared
+     * without creating a {@link Slice}. The first byte is read on its own,
+     * so a mismatch on it does not read the others. Sources that keep their
+     * data in memory or map it, such as a {@link ConstantSource} or a
+     * {@link MappedFileByteStream}, are compared without copying. Returns
+     * <code>false</code> if not enough data is available.
+     */
+    public boolean matches(final byte[] pattern) {
+        final BigInteger length = BigInteger.valueOf(pattern.length);
+        if (!source.isAvailable(offset, length) || source.getByte(offset) != pattern[0]) {
+            return false;
+        }
+        final ByteBuffer buffer = source.asByteBuffer(offset, length);
+        for (int i = 1; i < pattern.length; i++) {
+            if (buffer.get(i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public String toString() {
         final String iterationString = iterations.isEmpty() ? "" : ";iterations:" + iterations.toString();
@@ -37,7 +37,21 @@ public class ParseValue extends Value implements ParseItem {
     }
 
     public boolean matches(final String name) {
-        return this.name.equals(name) || this.name.endsWith(Token.SEPARATOR + name);
+        return matches(this.name, name);
+    }
+
+    /**
+     * Returns whether a value named <code>path</code> {@link #matches(String) matches}
+     * <code>name</code>, without concatenating or splitting either of them.
+     * <p>
+     * Names are compared as Strings and not by the identity of their
+     * {@link Scope}, because a name to match is any suffix of a path and
+     * giving every suffix an id requires a table that grows with all names
+     * that were ever parsed.
+     */
+    static boolean matches(final String path, final String name) {
+        return path.equals(name)
+            || (path.endsWith(name) && path.startsWith(Token.SEPARATOR, path.length() - name.length() - Token.SEPARATOR.length()));
     }
 
     @Override public boolean isValue() { return true; }
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.format;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.parsingdata.metal.Util;
+
+/**
+ * A {@link ByteStream} that wraps another ByteStream and reads ahead of the
+ * parser on a separate {@link Executor}.
+ * <p>
+ * Data is read from the wrapped <code>input</code> in aligned blocks of
+ * <code>blockSize</code> bytes. The offsets of consecutive reads are used to
+ * detect a sequential access pattern (each read starts within or directly
+ * after the previous one) or a strided pattern (each read starts a fixed
+ * distance after the previous one). Once two consecutive reads follow a
+ * pattern, the blocks the pattern predicts are read in the background. At
+ * most <code>window</code> blocks are prefetched but not yet used at any
+ * time. Blocks the access has moved past are dropped.
+ * <p>
+ * The stream counts prefetched blocks, prefetched blocks that were used
+ * (hits) and prefetched blocks that were dropped without being used (wasted
+ * reads). Reads on a single instance are serialized. The executor is not
+ * owned by this stream and is never shut down by it.
+ */
+public class ReadAheadByteStream implements ByteStream {
+
+    public final ByteStream input;
+    public final Executor executor;
+    public final int blockSize;
+    public final int window;
+
+    private final NavigableMap<Long, Block> blocks = new TreeMap<>(); // Guarded by this.
+    private long lastOffset = -1;
+    private long lastEnd = -1;
+    private long stride = 0;
+    private boolean sequential = false;
+    private int confidence = 0;
+
+    private final LongAdder prefetches = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder wasted = new LongAdder();
+
+    public ReadAheadByteStream(final ByteStream input, final Executor executor, final int blockSize, final int window) {
+        this.input = checkNotNull(input, "input");
+        this.executor = checkNotNull(executor, "executor");
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Argument blockSize must be positive.");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("Argument window must be positive.");
+        }
+        this.blockSize = blockSize;
+        this.window = window;
+    }
+
+    @Override
+    public byte[] read(final BigInteger offset, final int length) throws IOException {
+        if (!isAvailable(offset, length)) {
+            throw new IOException(format("Data to read is not available (offset=%d;length=%d;stream=%s).", offset, length, this));
+        }
+        if (length == 0 || offset.bitLength() >= Long.SIZE - 1) {
+            return input.read(offset, length);
+        }
+        final long start = offset.longValue();
+        final long firstBlock = start / blockSize;
+        final long lastBlock = (start + length - 1) / blockSize;
+        synchronized (this) {
+            final byte[] data = isBlockAvailable(lastBlock) ? assemble(start, length, firstBlock, lastBlock) : input.read(offset, length);
+            detectPattern(start, length);
+            dropBlocks(firstBlock, lastBlock);
+            prefetch(start, length, lastBlock);
+            return data;
+        }
+    }
+
+    private byte[] assemble(final long start, final int length, final long firstBlock, final long lastBlock) throws IOException {
+        final byte[] data = new byte[length];
+        int copied = 0;
+        for (long index = firstBlock; index <= lastBlock; index++) {
+            final byte[] block = getBlock(index);
+            final int blockOffset = (int) Math.max(0, start - index * blockSize);
+            final int toCopy = Math.min(length - copied, blockSize - blockOffset);
+            System.arraycopy(block, blockOffset, data, copied, toCopy);
+            copied += toCopy;
+        }
+        return data;
+    }
+
+    private byte[] getBlock(final long index) throws IOException {
+        final Block block = blocks.get(index);
+        if (block != null) {
+            final byte[] data = block.get();
+            if (data != null) {
+                if (block.prefetched && !block.used) {
+                    hits.increment();
+                }
+                block.used = true;
+                return data;
+            }
+        }
+        final byte[] data = input.read(BigInteger.valueOf(index * blockSize), blockSize);
+        blocks.put(index, new Block(CompletableFuture.completedFuture(data), false));
+        return data;
+    }
+
+    private void detectPattern(final long start, final int length) {
+        final long delta = start - lastOffset;
+        final boolean isSequential = lastOffset >= 0 && start >= lastOffset && start <= lastEnd;
+        final boolean isStrided = !isSequential && lastOffset >= 0 && delta > 0 && delta == stride;
+        confidence = (isSequential && sequential) || isStrided ? confidence + 1 : 0;
+        sequential = isSequential;
+        stride = delta;
+        lastOffset = start;
+        lastEnd = start + length;
+    }
+
+    private void dropBlocks(final long firstBlock, final long lastBlock) {
+        final Map<Long, Block> behind = blocks.headMap(firstBlock, false);
+        behind.values().forEach(this::drop);
+        behind.clear();
+        while (blocks.size() > window + (lastBlock - firstBlock + 1) && blocks.lastKey() > lastBlock) {
+            drop(blocks.pollLastEntry().getValue());
+        }
+    }
+
+    private void drop(final Block block) {
+        if (block.prefetched && !block.used) {
+            block.data.cancel(false);
+            wasted.increment();
+        }
+    }
+
+    private void prefetch(final long start, final int length, final long lastBlock) {
+        if (confidence == 0) {
+            return;
+        }
+        for (int step = 1; step <= window && countPending() < window; step++) {
+            if (sequential) {
+                prefetchBlock(lastBlock + step);
+            }
+            else {
+                final long next = start + step * stride;
+                for (long index = next / blockSize; index <= (next + length - 1) / blockSize && countPending() < window; index++) {
+                    prefetchBlock(index);
+                }
+            }
+        }
+    }
+
+    private void prefetchBlock(final long index) {
+        if (blocks.containsKey(index) || !isBlockAvailable(index)) {
+            return;
+        }
+        final BigInteger blockOffset = BigInteger.valueOf(index * blockSize);
+        try {
+            blocks.put(index, new Block(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return input.read(blockOffset, blockSize);
+                } catch (final IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            }, executor), true));
+            prefetches.increment();
+        } catch (final RejectedExecutionException exception) {
+            // Prefetching is an optimization, so the read is done when (and if) it is requested.
+        }
+    }
+
+    private int countPending() {
+        int pending = 0;
+        for (final Block block : blocks.values()) {
+            if (block.prefetched && !block.used) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+
+    private boolean isBlockAvailable(final long index) {
+        return index >= 0 && input.isAvailable(BigInteger.valueOf(index * blockSize), blockSize);
+    }
+
+    @Override
+    public boolean isAvailable(final BigInteger offset, final int length) {
+        return input.isAvailable(offset, length);
+    }
+
+    public long getPrefetchCount() {
+        return prefetches.sum();
+    }
+
+    public long getPrefetchHitCount() {
+        return hits.sum();
+    }
+
+    public long getWastedPrefetchCount() {
+        return wasted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + input + ";blockSize:" + blockSize + ";window:" + window + ")";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return Util.notNullAndSameClass(this, obj)
+            && Objects.equals(input, ((ReadAheadByteStream)obj).input)
+            && Objects.equals(blockSize, ((ReadAheadByteStream)obj).blockSize)
+            && Objects.equals(window, ((ReadAheadByteStream)obj).window);
+            // The executor is excluded from equals() and hashCode() because it does not influence the data that is read.
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), input, blockSize, window);
+    }
+
+    private static class Block {
+
+        final CompletableFuture<byte[]> data;
+        final boolean prefetched;
+        boolean used = false;
+
+        Block(final CompletableFuture<byte[]> data, final boolean prefetched) {
+            this.data = data;
+            this.prefetched = prefetched;
+        }
+
+        /**
+         * Waits for the block to be read and returns its data, or
+         * <code>null</code> if reading it failed.
+         */
+        byte[] get() {
+            try {
+                return data.get();
+            } catch (final ExecutionException exception) {
+                return null;
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import io.parsingdata.metal.expression.value.reference.Last;
+import io.parsingdata.metal.expression.value.reference.Ref;
+import io.parsingdata.metal.expression.value.reference.Ref.DefinitionRef;
+import io.parsingdata.metal.expression.value.reference.Ref.NameRef;
+import io.parsingdata.metal.token.Sub;
+import io.parsingdata.metal.token.Token;
+import io.parsingdata.metal.token.TokenRef;
+
+/**
+ * Determines which parts of the {@link ParseGraph} are kept during a parse.
+ * <p>
+ * By default ({@link #ALL}) the complete graph is kept. A Retention created
+ * with {@link #create(Token, Token, Consumer)} streams the parses of a
+ * <code>record</code> token instead: every time the record is parsed, the
+ * resulting item is passed to the <code>sink</code> and removed from
+ * {@link ParseState#order}, unless it may still be read later in the parse.
+ * The parse of a file that consists of many records then only keeps the
+ * records that are needed, which can bound the memory it uses.
+ * <p>
+ * Which items may still be read is determined from the token tree of the
+ * <code>root</code> token before parsing:
+ * <ul>
+ * <li>A record that contains a value that a {@link Ref} (not directly inside
+ * a {@link Last}) can match is kept.</li>
+ * <li>A record that contains or is contained in an item with the definition
+ * of a {@link Sub} is kept, since these are looked up again.</li>
+ * <li>For a Ref inside a Last only the most recently added matching value
+ * is needed. It is kept in the index of the graph when its record is
+ * removed.</li>
+ * <li>{@link ParseGraph#current()} is not affected by removing records.</li>
+ * </ul>
+ * If the token tree contains tokens or expressions that are not part of this
+ * library (and may read the graph in ways that cannot be analyzed), nothing
+ * is removed.
+ * <p>
+ * The sink receives every successful parse of the record, in the order in
+ * which they occur. If a token that encloses the record fails afterwards,
+ * its parses of the record are not part of the result, but they have
+ * already been passed to the sink. The record should therefore be a token
+ * that is not parsed speculatively, such as the token that a top-level
+ * {@link io.parsingdata.metal.token.Rep} repeats.
+ * <p>
+ * The record is matched with <code>equals()</code> against the tokens found
+ * in the root when the Retention is created. During the parse, the tokens
+ * that are parsed are compared to those instances, since they are taken
+ * from the same tree. The
+ * {@link io.parsingdata.metal.Optimizer} rewrites tokens that contain
+ * expressions it simplifies, and the rewritten tokens are not equal to the
+ * originals. To stream the parse of an optimized token, the root and the
+ * record must therefore be taken from the optimized tree. Otherwise no
+ * record is matched and the complete graph is kept.
+ * <p>
+ * The values of the removed records are not removed from the lookups of the
+ * index of the graph right away: these may return them until the index is
+ * compacted, which happens once the index holds more removed values than
+ * other values.
+ */
+public class Retention {
+
+    public static final Retention ALL = new Retention(null, Collections.emptySet(), item -> {}, Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+
+    public final Token record;
+    private final Set<Token> records; // The tokens in the root that are equal to the record, compared by identity.
+    public final Consumer<ParseItem> sink;
+    private final Set<String> recentNames;
+    private final Set<Token> recentDefinitions;
+    private final Set<String> names;
+    private final Set<Token> definitions; // The tokens in the root that are looked up again, compared by identity.
+
+    private Retention(final Token record, final Set<Token> records, final Consumer<ParseItem> sink, final Set<String> recentNames, final Set<Token> recentDefinitions, final Set<String> names, final Set<Token> definitions) {
+        this.record = record;
+        this.records = records;
+        this.sink = checkNotNull(sink, "sink");
+        this.recentNames = recentNames;
+        this.recentDefinitions = recentDefinitions;
+        this.names = names;
+        this.definitions = definitions;
+    }
+
+    public static Retention create(final Token root, final Token record, final Consumer<ParseItem> sink) {
+        checkNotNull(root, "root");
+        checkNotNull(record, "record");
+        checkNotNull(sink, "sink");
+        final Analysis analysis = new Analysis();
+        if (!analysis.analyze(root)) {
+            return new Retention(null, Collections.emptySet(), sink, Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+        }
+        final Set<Token> records = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<Token> definitions = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final Token token : analysis.tokens) {
+            if (token.equals(record)) {
+                records.add(token);
+            }
+            if (analysis.definitions.contains(token) || analysis.tokenRefNames.contains(token.name)) {
+                definitions.add(token);
+            }
+        }
+        return new Retention(record, records, sink, analysis.recentNames, analysis.recentDefinitions, analysis.names, definitions);
+    }
+
+    /**
+     * Called after <code>token</code> has been parsed successfully. If it is
+     * the record and the resulting item is no longer needed, it is passed to
+     * the sink and removed from the returned ParseState.
+     */
+    public ParseState release(final Token token, final ParseState parseState) {
+        if (!records.contains(token) || parseState.order.index == null) {
+            return parseState;
+        }
+        final ParseGraph[] path = parseState.order.getOpenPath();
+        final ParseGraph open = path[path.length - 1];
+        if (open.isEmpty() || !records.contains(open.head.getDefinition())) {
+            return parseState;
+        }
+        for (final ParseGraph graph : path) {
+            if (definitions.contains(graph.definition)) {
+                return parseState;
+            }
+        }
+        if (mayBeRead(open.head)) {
+            return parseState;
+        }
+        sink.accept(open.head);
+        GraphIndex.track(parseState.order, recentNames, recentDefinitions);
+        final GraphIndex index = parseState.order.index.remove(open.head, open.tail);
+        final ParseGraph order = parseState.order.removeLast(index);
+        return new ParseState(index.removedCount > index.entryCount - index.removedCount ? order.withIndex(index.compact(order, recentNames, recentDefinitions)) : order,
+                              parseState.source, parseState.offset, parseState.iterations);
+    }
+
+    /**
+     * Returns whether <code>item</code> contains an item that may still be
+     * read.
+     */
+    private boolean mayBeRead(final ParseItem item) {
+        final Deque<ParseItem> backlog = new ArrayDeque<>();
+        backlog.push(item);
+        while (!backlog.isEmpty()) {
+            final ParseItem next = backlog.pop();
+            if (definitions.contains(next.getDefinition())) {
+                return true;
+            }
+            if (next.isValue()) {
+                for (final String name : names) {
+                    if (next.asValue().matches(name)) {
+                        return true;
+                    }
+                }
+            }
+            else if (next.isGraph()) {
+                for (ParseGraph graph = next.asGraph(); !graph.isEmpty(); graph = graph.tail) {
+                    backlog.push(graph.head);
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + (record == null ? "all" : record) + ")";
+    }
+
+    /**
+     * Collects the references in a token tree.
+     */
+    private static class Analysis {
+
+        final Set<String> recentNames = new HashSet<>();
+        final Set<Token> recentDefinitions = new HashSet<>();
+        final Set<String> names = new HashSet<>();
+        final Set<Token> definitions = new HashSet<>();
+        final Set<String> tokenRefNames = new HashSet<>();
+        final List<Token> tokens = new ArrayList<>();
+
+        /**
+         * @return Whether the tree could be analyzed
+         */
+        boolean analyze(final Token root) {
+            final TokenTree tree = new TokenTree(root);
+            for (Object object = tree.next(); object != null; object = tree.next()) {
+                if (object instanceof Token) {
+                    tokens.add((Token) object);
+                }
+                if (object instanceof Last && ((Last) object).operand instanceof Ref) {
+                    // The Ref itself is not returned by the walk here, so that it is still analyzed if it is used elsewhere.
+                    addReference((Ref<?>) ((Last) object).operand, recentNames, recentDefinitions);
+                    tree.pushOperands(((Last) object).operand);
+                    continue;
+                }
+                if (object instanceof Ref) {
+                    addReference((Ref<?>) object, names, definitions);
+                }
+                else if (object instanceof Sub) {
+                    if (((Sub) object).token instanceof TokenRef) {
+                        tokenRefNames.add(((TokenRef) ((Sub) object).token).referenceName);
+                    }
+                    definitions.add(((Sub) object).token);
+                }
+                tree.pushOperands(object);
+            }
+            return tree.isComplete();
+        }
+
+        private static void addReference(final Ref<?> ref, final Set<String> names, final Set<Token> definitions) {
+            if (ref instanceof NameRef) {
+                names.add(((NameRef) ref).reference);
+            }
+            else if (ref instanceof DefinitionRef) {
+                definitions.add(((DefinitionRef) ref).reference);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static io.parsingdata.metal.token.Token.SEPARATOR;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A scope path, as constructed by {@link Environment#extendScope(String)}.
+ * <p>
+ * A Scope keeps the Scopes it was extended to, so that all values that are
+ * parsed in the same scope share the same name String, and a scope is only
+ * concatenated with a name the first time that combination occurs. The
+ * Scopes are not shared globally: every Environment that is created with a
+ * scope starts a new tree of Scopes, which can be collected together with
+ * the Environments of that parse.
+ * <p>
+ * Scopes only share the Strings of names, they are not compared by
+ * identity: {@link ParseValue#matches(String)} matches names by suffix, so
+ * lookups still compare Strings.
+ */
+final class Scope {
+
+    final String path;
+    private final ConcurrentMap<String, Scope> children = new ConcurrentHashMap<>();
+
+    Scope(final String path) {
+        this.path = path;
+    }
+
+    Scope extend(final String name) {
+        if (name.isEmpty()) {
+            return this;
+        }
+        final Scope scope = children.get(name);
+        return scope != null ? scope : children.computeIfAbsent(name, key -> new Scope(path.isEmpty() ? key : path + SEPARATOR + key));
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+}
@@ -21,8 +21,14 @@ import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
 
 import java.math.BigInteger;
+import java.util.Iterator;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.token.Token;
@@ -30,11 +36,39 @@ import io.parsingdata.metal.token.Token;
 public final class Selection {
 
     public static final int NO_LIMIT = -1;
+    public static final String ANY_NAME = "*";
+    public static final String ANY_PATH = "**";
+
+    // Compiled once, since matchesPath() splits the name of every value it is applied to.
+    private static final Pattern SEPARATOR_PATTERN = Pattern.compile(Pattern.quote(Token.SEPARATOR));
 
     private Selection() {}
 
     public static boolean hasRootAtOffset(final ParseGraph graph, final Token definition, final BigInteger offset, final Source source) {
-        return findItemAtOffset(getAllRoots(graph, definition), offset, source).computeResult().isPresent();
+        if (checkNotNull(graph, "graph").index == null || graph.definition.equals(definition)) {
+            return findRootAtOffset(graph, definition, offset, source).isPresent();
+        }
+        return !GraphIndex.findRoots(graph, checkNotNull(definition, "definition"), checkNotNull(offset, "offset"), checkNotNull(source, "source")).isEmpty();
+    }
+
+    /**
+     * Returns the same item as <code>findItemAtOffset(getAllRoots(graph, definition), offset, source)</code>.
+     * If the graph has an index, the completed roots are looked up in it (see
+     * {@link GraphIndex#findRoots(ParseGraph, Token, BigInteger, Source)}).
+     * The graph is only traversed if more than one root matches, to determine
+     * which comes first, or if it is a root itself.
+     */
+    public static Optional<ParseItem> findRootAtOffset(final ParseGraph graph, final Token definition, final BigInteger offset, final Source source) {
+        checkNotNull(definition, "definition");
+        checkNotNull(offset, "offset");
+        checkNotNull(source, "source");
+        if (checkNotNull(graph, "graph").index != null && !graph.definition.equals(definition)) {
+            final ImmutableList<ParseItem> roots = GraphIndex.findRoots(graph, definition, offset, source);
+            if (roots.size < 2) {
+                return Optional.ofNullable(roots.head);
+            }
+        }
+        return findItemAtOffset(getAllRoots(graph, definition), offset, source).computeResult();
     }
 
     public static Trampoline<Optional<ParseItem>> findItemAtOffset(final ImmutableList<ParseItem> items, final BigInteger offset, final Source source) {
@@ -48,7 +82,7 @@ public final class Selection {
             return complete(() -> Optional.of(head));
         }
         if (head.isGraph()) {
-            final ParseValue value = getLowestOffsetValue(ImmutableList.create(head.asGraph()), null).computeResult();
+            final ParseValue value = getLowestOffsetValue(head.asGraph());
             if (value != null && matchesLocation(value, offset, source)) {
                 return complete(() -> Optional.of(head));
             }
@@ -60,6 +94,15 @@ public final class Selection {
         return value.slice.offset.compareTo(offset) == 0 && value.slice.source.equals(source);
     }
 
+    /**
+     * @return The value with the lowest offset in <code>graph</code>, or
+     * <code>null</code> if it has none, skipping the branches of which the
+     * definition is not {@link Token#isLocal() local}
+     */
+    static ParseValue getLowestOffsetValue(final ParseGraph graph) {
+        return getLowestOffsetValue(ImmutableList.create(graph), null).computeResult();
+    }
+
     private static Trampoline<ParseValue> getLowestOffsetValue(final ImmutableList<ParseGraph> graphList, final ParseValue lowest) {
         if (graphList.isEmpty()) {
             return complete(() -> lowest);
@@ -92,6 +135,161 @@ public final class Selection {
         return getAllValues(graph, predicate, NO_LIMIT);
     }
 
+    /**
+     * Returns the values of {@link #getAllValues(ParseGraph, Predicate)} as a
+     * lazy stream: the graph is traversed as the stream is consumed, so
+     * short-circuiting operations stop the traversal. The stream may be made
+     * parallel, in which case subgraphs are traversed concurrently.
+     */
+    public static Stream<ParseValue> streamValues(final ParseGraph graph) {
+        return StreamSupport.stream(spliterateValues(graph), false);
+    }
+
+    /**
+     * Returns the values of {@link #streamValues(ParseGraph)} with a name
+     * that {@link #matchesPath(String) matches} <code>path</code>.
+     */
+    public static Stream<ParseValue> streamValues(final ParseGraph graph, final String path) {
+        return streamValues(graph).filter(matchesPath(path));
+    }
+
+    public static Iterator<ParseValue> iterateValues(final ParseGraph graph) {
+        return Spliterators.iterator(spliterateValues(graph));
+    }
+
+    public static Spliterator<ParseValue> spliterateValues(final ParseGraph graph) {
+        return new ValueSpliterator(checkNotNull(graph, "graph"));
+    }
+
+    /**
+     * Returns a predicate that matches values whose full name matches
+     * <code>path</code>. The names in the path are separated by
+     * {@link Token#SEPARATOR}. {@link #ANY_NAME} matches any single name and
+     * {@link #ANY_PATH} matches any number of names, so
+     * <code>"ZIP.files.*.crc32"</code> matches the <code>crc32</code> of every
+     * file and <code>"**.crc32"</code> matches every <code>crc32</code>.
+     */
+    public static Predicate<ParseValue> matchesPath(final String path) {
+        final String[] pattern = split(checkNotNull(path, "path"));
+        return value -> matchesPath(pattern, split(value.name));
+    }
+
+    private static String[] split(final String name) {
+        return SEPARATOR_PATTERN.split(name, -1);
+    }
+
+    private static boolean matchesPath(final String[] pattern, final String[] names) {
+        int patternIndex = 0;
+        int nameIndex = 0;
+        int anyPathIndex = -1;
+        int anyPathNameIndex = 0;
+        while (nameIndex < names.length) {
+            if (patternIndex < pattern.length && pattern[patternIndex].equals(ANY_PATH)) {
+                anyPathIndex = patternIndex++;
+                anyPathNameIndex = nameIndex;
+            }
+            else if (patternIndex < pattern.length && (pattern[patternIndex].equals(ANY_NAME) || pattern[patternIndex].equals(names[nameIndex]))) {
+                patternIndex++;
+                nameIndex++;
+            }
+            else if (anyPathIndex >= 0) {
+                patternIndex = anyPathIndex + 1;
+                nameIndex = ++anyPathNameIndex;
+            }
+            else {
+                return false;
+            }
+        }
+        while (patternIndex < pattern.length && pattern[patternIndex].equals(ANY_PATH)) {
+            patternIndex++;
+        }
+        return patternIndex == pattern.length;
+    }
+
+    /**
+     * Returns the same values as {@link #getAllValues(ParseGraph, Predicate, int)}
+     * with a predicate that {@link ParseValue#matches(String) matches} on
+     * <code>name</code>, but in reverse order: the most recently added value
+     * first. If the graph has an index, it is used (and extended with
+     * <code>name</code> if it was not looked up before), and without a limit
+     * the list from the index is returned without copying it.
+     */
+    public static ImmutableList<ParseValue> getRecentValues(final ParseGraph graph, final String name, final int limit) {
+        checkNotNull(name, "name");
+        if (checkNotNull(graph, "graph").index == null) {
+            return reverse(getAllValues(graph, value -> value.matches(name), limit));
+        }
+        return limit(GraphIndex.getByName(graph, name), limit);
+    }
+
+    /**
+     * Returns the same values as {@link #getAllValues(ParseGraph, Predicate, int)}
+     * with a predicate that matches on <code>definition</code>, but in reverse
+     * order: the most recently added value first. The index is used in the
+     * same way as by {@link #getRecentValues(ParseGraph, String, int)}.
+     */
+    public static ImmutableList<ParseValue> getRecentValues(final ParseGraph graph, final Token definition, final int limit) {
+        checkNotNull(definition, "definition");
+        if (checkNotNull(graph, "graph").index == null) {
+            return reverse(getAllValues(graph, value -> value.definition.equals(definition), limit));
+        }
+        return limit(GraphIndex.getByDefinition(graph, definition), limit);
+    }
+
+    /**
+     * Returns the same values as {@link #getAllValues(ParseGraph, Predicate)}
+     * with a predicate that {@link ParseValue#matches(String) matches} on
+     * <code>name</code>, but at most <code>limit</code> of them, starting at
+     * the first added value. If the graph has an index and the limit is
+     * <code>1</code>, the first value is taken from the index without
+     * walking the list.
+     */
+    public static ImmutableList<ParseValue> getFirstValues(final ParseGraph graph, final String name, final int limit) {
+        checkNotNull(name, "name");
+        if (checkNotNull(graph, "graph").index == null) {
+            return limit(getAllValues(graph, value -> value.matches(name)), limit);
+        }
+        if (limit == 1) {
+            return GraphIndex.getFirstByName(graph, name).map(ImmutableList::create).orElseGet(ImmutableList::new);
+        }
+        return limit(reverse(GraphIndex.getByName(graph, name)), limit);
+    }
+
+    /**
+     * Returns the same values as {@link #getAllValues(ParseGraph, Predicate)}
+     * with a predicate that matches on <code>definition</code>, but at most
+     * <code>limit</code> of them, starting at the first added value. The
+     * index is used in the same way as by {@link #getFirstValues(ParseGraph, String, int)}.
+     */
+    public static ImmutableList<ParseValue> getFirstValues(final ParseGraph graph, final Token definition, final int limit) {
+        checkNotNull(definition, "definition");
+        if (checkNotNull(graph, "graph").index == null) {
+            return limit(getAllValues(graph, value -> value.definition.equals(definition)), limit);
+        }
+        if (limit == 1) {
+            return GraphIndex.getFirstByDefinition(graph, definition).map(ImmutableList::create).orElseGet(ImmutableList::new);
+        }
+        return limit(reverse(GraphIndex.getByDefinition(graph, definition)), limit);
+    }
+
+    /**
+     * Returns the first <code>limit</code> elements of <code>list</code>,
+     * or <code>list</code> itself if it is not longer than that.
+     */
+    private static ImmutableList<ParseValue> limit(final ImmutableList<ParseValue> list, final int limit) {
+        if (limit < 0 || limit >= list.size) {
+            return list;
+        }
+        return reverse(take(list, new ImmutableList<>(), limit).computeResult());
+    }
+
+    private static Trampoline<ImmutableList<ParseValue>> take(final ImmutableList<ParseValue> indexList, final ImmutableList<ParseValue> valueList, final int limit) {
+        if (indexList.isEmpty() || valueList.size == limit) {
+            return complete(() -> valueList);
+        }
+        return intermediate(() -> take(indexList.tail, valueList.add(indexList.head), limit));
+    }
+
     private static Trampoline<ImmutableList<ParseValue>> getAllValues(final ImmutableList<ParseGraph> graphList, final ImmutableList<ParseValue> valueList, final Predicate<ParseValue> predicate, final int limit) {
         if (graphList.isEmpty() || valueList.size == limit) {
             return complete(() -> valueList);
@@ -127,6 +325,37 @@ public final class Selection {
         return intermediate(() -> reverse(oldList.tail, newList.add(oldList.head)));
     }
 
+    /**
+     * @param graph The graph to search
+     * @param name Name of the definition
+     * @return The first definition with the provided name found in a depth-first traversal of the graph, which visits the most recently added items first
+     */
+    public static Optional<Token> findDefinition(final ParseGraph graph, final String name) {
+        checkNotNull(name, "name");
+        if (checkNotNull(graph, "graph").index == null || graph.definition.name.equals(name)) {
+            return findDefinitionByTraversal(graph, name);
+        }
+        return GraphIndex.getDefinition(graph, name);
+    }
+
+    static Optional<Token> findDefinitionByTraversal(final ParseGraph graph, final String name) {
+        return findDefinition(ImmutableList.create(graph), name).computeResult();
+    }
+
+    private static Trampoline<Optional<Token>> findDefinition(final ImmutableList<ParseItem> items, final String name) {
+        if (items.isEmpty()) {
+            return complete(Optional::empty);
+        }
+        final ParseItem item = items.head;
+        if (item.getDefinition().name.equals(name)) {
+            return complete(() -> Optional.of(item.getDefinition()));
+        }
+        if (item.isGraph() && !item.asGraph().isEmpty()) {
+            return intermediate(() -> findDefinition(items.tail.add(item.asGraph().tail).add(item.asGraph().head), name));
+        }
+        return intermediate(() -> findDefinition(items.tail, name));
+    }
+
     public static ImmutableList<ParseItem> getAllRoots(final ParseGraph graph, final Token definition) {
         return getAllRootsRecursive(ImmutableList.create(new Pair(checkNotNull(graph, "graph"), null)), checkNotNull(definition, "definition"), new ImmutableList<>()).computeResult();
     }
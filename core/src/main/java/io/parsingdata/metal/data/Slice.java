@@ -18,10 +18,13 @@ package io.parsingdata.metal.data;
 
 import static java.math.BigInteger.ZERO;
 
+import static io.parsingdata.metal.Util.add;
 import static io.parsingdata.metal.Util.checkNotNegative;
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.format;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -61,6 +64,35 @@ public class Slice {
         return source.getData(offset, calculatedLength);
     }
 
+    /**
+     * Copies the data of this slice into <code>destination</code>, starting
+     * at <code>position</code>. Unlike {@link #getData()}, no intermediate
+     * array is allocated if the source keeps its data in memory.
+     */
+    public void readInto(final byte[] destination, final int position) {
+        checkNotNull(destination, "destination");
+        if (position < 0 || position > destination.length - length.intValueExact()) {
+            throw new IndexOutOfBoundsException(format("Slice of length %d does not fit at position %d in destination of length %d.", length, position, destination.length));
+        }
+        source.readInto(offset, length.intValueExact(), destination, position);
+    }
+
+    /**
+     * Returns a read-only {@link ByteBuffer} with the data of this slice. If
+     * the source keeps its data in memory, the buffer is a view on that data
+     * instead of a copy.
+     */
+    public ByteBuffer asByteBuffer() {
+        return source.asByteBuffer(offset, length);
+    }
+
+    public byte getByte(final BigInteger index) {
+        if (checkNotNegative(index, "index").compareTo(length) >= 0) {
+            throw new IndexOutOfBoundsException(format("Index %d is out of bounds for slice of length %d.", index, length));
+        }
+        return source.getByte(add(offset, index));
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + source + "@" + offset + ":" + length.add(offset) + ")";
@@ -17,11 +17,42 @@
 package io.parsingdata.metal.data;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 
+/**
+ * The origin of the data referenced by a {@link Slice}.
+ * <p>
+ * Implementations must provide {@link #getData(BigInteger, BigInteger)},
+ * which returns a newly allocated copy of the requested data. The other
+ * access methods have default implementations based on it, which
+ * implementations that keep their data in memory override to avoid
+ * allocating and copying.
+ */
 public abstract class Source {
 
     protected abstract byte[] getData(BigInteger offset, BigInteger length);
 
     protected abstract boolean isAvailable(BigInteger offset, BigInteger length);
 
+    /**
+     * Copies <code>length</code> bytes starting at <code>offset</code> into
+     * <code>destination</code>, starting at <code>position</code>.
+     */
+    protected void readInto(final BigInteger offset, final int length, final byte[] destination, final int position) {
+        System.arraycopy(getData(offset, BigInteger.valueOf(length)), 0, destination, position, length);
+    }
+
+    /**
+     * Returns a read-only {@link ByteBuffer} with <code>length</code> bytes
+     * starting at <code>offset</code>. The position of the buffer is zero and
+     * its limit is <code>length</code>.
+     */
+    protected ByteBuffer asByteBuffer(final BigInteger offset, final BigInteger length) {
+        return ByteBuffer.wrap(getData(offset, length)).asReadOnlyBuffer();
+    }
+
+    protected byte getByte(final BigInteger offset) {
+        return getData(offset, BigInteger.ONE)[0];
+    }
+
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Optional;
+import java.util.Set;
+
+import io.parsingdata.metal.expression.Expression;
+import io.parsingdata.metal.expression.value.ValueExpression;
+import io.parsingdata.metal.token.Token;
+
+/**
+ * Walks the tokens and expressions that are reachable from a root token or
+ * expression through their operands (see {@link Token#getOperands()}).
+ * <p>
+ * {@link #next()} returns every token and expression once. Its operands are
+ * only walked if {@link #pushOperands(Object)} is called for it. If the
+ * operands of a token or expression are not known, the walk ends and
+ * {@link #isComplete()} returns false, since what it does during a parse
+ * cannot be determined.
+ */
+final class TokenTree {
+
+    private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Deque<Object> backlog = new ArrayDeque<>();
+    private boolean complete = true;
+
+    TokenTree(final Object root) {
+        push(root);
+    }
+
+    Object next() {
+        while (!backlog.isEmpty()) {
+            final Object object = backlog.pop();
+            if (visited.add(object)) {
+                return object;
+            }
+        }
+        return null;
+    }
+
+    void pushOperands(final Object object) {
+        final Optional<ImmutableList<?>> operands = getOperands(object);
+        if (!operands.isPresent()) {
+            complete = false;
+            backlog.clear();
+            return;
+        }
+        for (ImmutableList<?> operand = operands.get(); !operand.isEmpty(); operand = operand.tail) {
+            push(operand.head);
+        }
+    }
+
+    void push(final Object object) {
+        if (object != null) {
+            backlog.push(object);
+        }
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    private static Optional<ImmutableList<?>> getOperands(final Object object) {
+        if (object instanceof Token) {
+            return ((Token) object).getOperands();
+        }
+        if (object instanceof Expression) {
+            return ((Expression) object).getOperands();
+        }
+        if (object instanceof ValueExpression) {
+            return ((ValueExpression) object).getOperands();
+        }
+        return Optional.empty();
+    }
+
+}
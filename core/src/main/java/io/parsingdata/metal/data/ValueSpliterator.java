@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over the values in a {@link ParseGraph}, in the
+ * order in which they were added (the same order as
+ * {@link Selection#getAllValues(ParseGraph, java.util.function.Predicate)}).
+ * <p>
+ * The graph is traversed depth-first. When a graph is entered, its items are
+ * copied to an array (a ParseGraph links its items from the most recently
+ * added one), so memory use is determined by the size of the graphs on the
+ * current path rather than by the total number of values. A split hands over
+ * the first half of the remaining items of the outermost graph that has more
+ * than one of them left. The size estimate is the number of remaining items
+ * in the entered graphs, not the number of values.
+ */
+class ValueSpliterator implements Spliterator<ParseValue> {
+
+    private final Deque<Frame> frames; // The innermost graph first.
+
+    ValueSpliterator(final ParseGraph graph) {
+        this(new ArrayDeque<>());
+        enter(graph);
+    }
+
+    private ValueSpliterator(final Deque<Frame> frames) {
+        this.frames = frames;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super ParseValue> action) {
+        while (!frames.isEmpty()) {
+            final Frame frame = frames.peek();
+            if (frame.next == frame.end) {
+                frames.pop();
+                continue;
+            }
+            final ParseItem item = frame.items[frame.next++];
+            if (item.isValue()) {
+                action.accept(item.asValue());
+                return true;
+            }
+            if (item.isGraph()) {
+                enter(item.asGraph());
+            }
+        }
+        return false;
+    }
+
+    private void enter(final ParseGraph graph) {
+        if (graph.isEmpty()) {
+            return;
+        }
+        final ParseItem[] items = new ParseItem[(int) graph.size];
+        int position = items.length;
+        for (ParseGraph node = graph; !node.isEmpty() && position > 0; node = node.tail) {
+            items[--position] = node.head;
+        }
+        frames.push(new Frame(items, position, items.length));
+    }
+
+    @Override
+    public Spliterator<ParseValue> trySplit() {
+        Frame split = findSplit();
+        while (split == null && !frames.isEmpty() && frames.peek().next < frames.peek().end && frames.peek().items[frames.peek().next].isGraph()) {
+            enter(frames.peek().items[frames.peek().next++].asGraph());
+            split = findSplit();
+        }
+        if (split == null) {
+            return null;
+        }
+        final int middle = (split.next + split.end) >>> 1;
+        final Deque<Frame> prefix = new ArrayDeque<>();
+        while (frames.peek() != split) {
+            prefix.addLast(frames.pop());
+        }
+        prefix.addLast(new Frame(split.items, split.next, middle));
+        split.next = middle;
+        return new ValueSpliterator(prefix);
+    }
+
+    /**
+     * Returns the outermost graph with more than one item left, or
+     * <code>null</code> if there is none.
+     */
+    private Frame findSplit() {
+        for (final Iterator<Frame> iterator = frames.descendingIterator(); iterator.hasNext();) {
+            final Frame frame = iterator.next();
+            if (frame.end - frame.next > 1) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for (final Frame frame : frames) {
+            size += frame.end - frame.next;
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+
+    private static class Frame {
+
+        final ParseItem[] items;
+        int next;
+        final int end;
+
+        Frame(final ParseItem[] items, final int next, final int end) {
+            this.items = items;
+            this.next = next;
+            this.end = end;
+        }
+
+    }
+
+}
@@ -22,7 +22,7 @@ public enum ByteOrder {
         return bytes.clone();
     } },
     LITTLE_ENDIAN { @Override public byte[] apply(final byte[] bytes) {
-        final byte[] output = bytes.clone();
+        final byte[] output = new byte[bytes.length];
         for (int i = 0; i < bytes.length; i++) {
             output[i] = bytes[(bytes.length-1)-i];
         }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.expression;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import io.parsingdata.metal.Util;
+import io.parsingdata.metal.data.ImmutableList;
+import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.encoding.Encoding;
+
+/**
+ * An {@link Expression} that evaluates to the same result as its
+ * <code>expression</code>, which must not depend on the {@link ParseState}.
+ * <p>
+ * Like {@link io.parsingdata.metal.expression.value.FoldedValueExpression},
+ * the expression is only evaluated again when the {@link Encoding} differs
+ * from the previous evaluation.
+ *
+ * @see io.parsingdata.metal.Optimizer
+ */
+public class FoldedExpression implements Expression {
+
+    public final Expression expression;
+
+    // Not final because it is set on evaluation. Safe to share, since Result is immutable.
+    private volatile Result result = null;
+
+    public FoldedExpression(final Expression expression) {
+        this.expression = checkNotNull(expression, "expression");
+    }
+
+    @Override
+    public boolean eval(final ParseState parseState, final Encoding encoding) {
+        final Result previous = result;
+        if (previous != null && previous.encoding.equals(encoding)) {
+            return previous.value;
+        }
+        final boolean value = expression.eval(parseState, encoding);
+        result = new Result(encoding, value);
+        return value;
+    }
+
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(expression);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + expression + ")";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return Util.notNullAndSameClass(this, obj)
+            && Objects.equals(expression, ((FoldedExpression)obj).expression);
+        // The result is excluded from equals() and hashCode() because it is derived from expression.
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), expression);
+    }
+
+    private static class Result {
+
+        final Encoding encoding;
+        final boolean value;
+
+        Result(final Encoding encoding, final boolean value) {
+            this.encoding = encoding;
+            this.value = value;
+        }
+
+    }
+
+}
@@ -16,7 +16,12 @@
 
 package io.parsingdata.metal.expression;
 
+import static io.parsingdata.metal.Util.operands;
+
+import java.util.Optional;
+
 import io.parsingdata.metal.Util;
+import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
 import io.parsingdata.metal.encoding.Encoding;
 
@@ -31,6 +36,11 @@ public class True implements Expression {
         return true;
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands();
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName();
@@ -21,6 +21,7 @@ import static java.util.function.Function.identity;
 import static io.parsingdata.metal.Trampoline.complete;
 import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -82,6 +83,22 @@ public abstract class ComparisonExpression implements Expression {
 
     public abstract boolean compare(final Value left, final Value right);
 
+    /**
+     * Compares the numeric values of <code>left</code> and <code>right</code>,
+     * as longs if both fit in one.
+     */
+    protected static int compareNumeric(final Value left, final Value right) {
+        if (left.fitsLong() && right.fitsLong()) {
+            return Long.compare(left.asLong(), right.asLong());
+        }
+        return left.asNumeric().compareTo(right.asNumeric());
+    }
+
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(value, predicate);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + (value == null ? "" : value + ",") + predicate + ")";
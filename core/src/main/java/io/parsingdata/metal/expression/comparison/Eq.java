@@ -16,8 +16,6 @@
 
 package io.parsingdata.metal.expression.comparison;
 
-import java.util.Arrays;
-
 import io.parsingdata.metal.expression.value.Value;
 import io.parsingdata.metal.expression.value.ValueExpression;
 
@@ -41,7 +39,7 @@ public class Eq extends ComparisonExpression {
     @Override
     public boolean compare(final Value left, final Value right) {
         return left.slice.length.compareTo(right.slice.length) == 0
-            && Arrays.equals(left.getValue(), right.getValue());
+            && left.slice.asByteBuffer().equals(right.slice.asByteBuffer());
     }
 
 }
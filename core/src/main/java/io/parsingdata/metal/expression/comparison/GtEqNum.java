@@ -38,7 +38,7 @@ public class GtEqNum extends ComparisonExpression {
 
     @Override
     public boolean compare(final Value left, final Value right) {
-        return left.asNumeric().compareTo(right.asNumeric()) >= 0;
+        return compareNumeric(left, right) >= 0;
     }
 
 }
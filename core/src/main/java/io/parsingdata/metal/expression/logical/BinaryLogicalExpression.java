@@ -17,10 +17,13 @@
 package io.parsingdata.metal.expression.logical;
 
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
 
 import java.util.Objects;
+import java.util.Optional;
 
 import io.parsingdata.metal.Util;
+import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.expression.Expression;
 
 /**
@@ -41,6 +44,11 @@ public abstract class BinaryLogicalExpression implements LogicalExpression {
         this.right = checkNotNull(right, "right");
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(left, right);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + left + "," + right + ")";
@@ -17,10 +17,13 @@
 package io.parsingdata.metal.expression.logical;
 
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
 
 import java.util.Objects;
+import java.util.Optional;
 
 import io.parsingdata.metal.Util;
+import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.expression.Expression;
 
 /**
@@ -39,6 +42,11 @@ public abstract class UnaryLogicalExpression implements LogicalExpression {
         this.operand = checkNotNull(operand, "operand");
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(operand);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + operand + ")";
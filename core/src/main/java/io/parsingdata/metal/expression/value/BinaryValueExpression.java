@@ -16,15 +16,12 @@
 
 package io.parsingdata.metal.expression.value;
 
-import static io.parsingdata.metal.Trampoline.complete;
-import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
-import static io.parsingdata.metal.data.Selection.reverse;
+import static io.parsingdata.metal.Util.operands;
 
 import java.util.Objects;
 import java.util.Optional;
 
-import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
@@ -68,22 +65,23 @@ public abstract class BinaryValueExpression implements ValueExpression {
         return evalLists(left.eval(parseState, encoding), right.eval(parseState, encoding), parseState, encoding);
     }
 
-    private ImmutableList<Optional<Value>> evalLists(final ImmutableList<Optional<Value>> leftValues, final ImmutableList<Optional<Value>> rightValues, final ParseState parseState, final Encoding encoding) {
-        return reverse(padList(evalLists(leftValues, rightValues, parseState, encoding, new ImmutableList<>()).computeResult(), Math.abs(leftValues.size - rightValues.size)).computeResult());
-    }
-
-    private Trampoline<ImmutableList<Optional<Value>>> evalLists(final ImmutableList<Optional<Value>> leftValues, final ImmutableList<Optional<Value>> rightValues, final ParseState parseState, final Encoding encoding, final ImmutableList<Optional<Value>> result) {
-        if (leftValues.isEmpty() || rightValues.isEmpty()) {
-            return complete(() -> result);
+    ImmutableList<Optional<Value>> evalLists(final ImmutableList<Optional<Value>> leftValues, final ImmutableList<Optional<Value>> rightValues, final ParseState parseState, final Encoding encoding) {
+        final ValueList.Builder result = new ValueList.Builder(Math.max(leftValues.size, rightValues.size));
+        ImmutableList<Optional<Value>> lefts = leftValues;
+        ImmutableList<Optional<Value>> rights = rightValues;
+        for (; !lefts.isEmpty() && !rights.isEmpty(); lefts = lefts.tail, rights = rights.tail) {
+            final Optional<Value> right = rights.head;
+            result.add(lefts.head.flatMap(leftValue -> right.flatMap(rightValue -> eval(leftValue, rightValue, parseState, encoding))));
+        }
+        for (long i = Math.abs(leftValues.size - rightValues.size); i > 0; i--) {
+            result.add(Optional.empty());
         }
-        return intermediate(() -> evalLists(leftValues.tail, rightValues.tail, parseState, encoding, result.add(leftValues.head.flatMap(leftValue -> rightValues.head.flatMap(rightValue -> eval(leftValue, rightValue, parseState, encoding))))));
+        return result.build().toList();
     }
 
-    private Trampoline<ImmutableList<Optional<Value>>> padList(final ImmutableList<Optional<Value>> list, final long size) {
-        if (size <= 0) {
-            return complete(() -> list);
-        }
-        return intermediate(() -> padList(list.add(Optional.empty()), size - 1));
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(left, right);
     }
 
     @Override
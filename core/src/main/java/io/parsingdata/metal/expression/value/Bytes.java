@@ -20,7 +20,9 @@ import static java.math.BigInteger.ONE;
 
 import static io.parsingdata.metal.Trampoline.complete;
 import static io.parsingdata.metal.Trampoline.intermediate;
+import static io.parsingdata.metal.Util.add;
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.data.Slice.createFromSource;
 
 import java.math.BigInteger;
@@ -75,7 +77,12 @@ public class Bytes implements ValueExpression {
         if (BigInteger.valueOf(i).compareTo(value.getLength()) >= 0) {
             return complete(() -> output);
         }
-        return intermediate(() -> extractByteValues(output.add(Optional.of(new Value(createFromSource(value.slice.source, value.slice.offset.add(BigInteger.valueOf(i)), ONE).get(), encoding))), value, i + 1, encoding));
+        return intermediate(() -> extractByteValues(output.add(Optional.of(new Value(createFromSource(value.slice.source, add(value.slice.offset, i), ONE).get(), encoding))), value, i + 1, encoding));
+    }
+
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(operand);
     }
 
     @Override
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.expression.value;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
+import static io.parsingdata.metal.data.Selection.NO_LIMIT;
+import static io.parsingdata.metal.expression.value.reference.Ref.Direction.OLDEST_FIRST;
+import static io.parsingdata.metal.expression.value.reference.Ref.Direction.RECENT_FIRST;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import io.parsingdata.metal.Util;
+import io.parsingdata.metal.data.ImmutableList;
+import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.data.ParseValue;
+import io.parsingdata.metal.encoding.Encoding;
+import io.parsingdata.metal.encoding.Sign;
+import io.parsingdata.metal.expression.value.arithmetic.Add;
+import io.parsingdata.metal.expression.value.arithmetic.Div;
+import io.parsingdata.metal.expression.value.arithmetic.Mod;
+import io.parsingdata.metal.expression.value.arithmetic.Mul;
+import io.parsingdata.metal.expression.value.arithmetic.Neg;
+import io.parsingdata.metal.expression.value.arithmetic.Sub;
+import io.parsingdata.metal.expression.value.bitwise.And;
+import io.parsingdata.metal.expression.value.bitwise.Not;
+import io.parsingdata.metal.expression.value.bitwise.Or;
+import io.parsingdata.metal.expression.value.bitwise.ShiftLeft;
+import io.parsingdata.metal.expression.value.bitwise.ShiftRight;
+import io.parsingdata.metal.expression.value.reference.Count;
+import io.parsingdata.metal.expression.value.reference.CurrentIteration;
+import io.parsingdata.metal.expression.value.reference.CurrentOffset;
+import io.parsingdata.metal.expression.value.reference.First;
+import io.parsingdata.metal.expression.value.reference.Last;
+import io.parsingdata.metal.expression.value.reference.Len;
+import io.parsingdata.metal.expression.value.reference.Offset;
+import io.parsingdata.metal.expression.value.reference.Ref;
+import io.parsingdata.metal.expression.value.reference.Self;
+
+/**
+ * A {@link ValueExpression} that evaluates to the same list as its
+ * <code>expression</code>, using an evaluator that is derived from the
+ * structure of the expression once, when it is compiled.
+ * <p>
+ * A {@link BinaryValueExpression} or {@link UnaryValueExpression} evaluates
+ * its operands to lists and combines those through trampolines, even if every
+ * operand yields a single value, as in <code>add(last(ref("a")), con(2))</code>.
+ * The compiled evaluator determines which subexpressions yield at most one
+ * value ({@link Const}, {@link Last}, {@link First}, {@link Count},
+ * {@link CurrentOffset}, {@link CurrentIteration}, {@link Self}, and the
+ * unary and binary expressions of this library over those). Such subexpressions are evaluated to a
+ * single {@link Optional} without intermediate lists. A Last, First or
+ * Count of a {@link Ref} takes the values from the index of the parse graph
+ * directly, so that a Last only looks up the most recent value. Only the
+ * subexpressions that may yield more values are evaluated with list
+ * semantics.
+ * <p>
+ * Since the result is the same, two CompiledValueExpressions are equal if
+ * their expressions are equal.
+ */
+public class CompiledValueExpression implements ValueExpression {
+
+    // The unary and binary expressions that are compiled, the same classes that the Optimizer rewrites. Subclasses may override eval(), so they are evaluated as they are.
+    private static final Set<Class<?>> UNARY = new HashSet<>(Arrays.asList(Neg.class, Not.class, Len.class, Offset.class));
+    private static final Set<Class<?>> BINARY = new HashSet<>(Arrays.asList(Add.class, Sub.class, Mul.class, Div.class, Mod.class, Cat.class, And.class, Or.class, ShiftLeft.class, ShiftRight.class));
+
+    public final ValueExpression expression;
+    private final Evaluator evaluator;
+
+    private CompiledValueExpression(final ValueExpression expression, final Evaluator evaluator) {
+        this.expression = checkNotNull(expression, "expression");
+        this.evaluator = checkNotNull(evaluator, "evaluator");
+    }
+
+    public static CompiledValueExpression compile(final ValueExpression expression) {
+        checkNotNull(expression, "expression");
+        if (expression instanceof CompiledValueExpression) {
+            return (CompiledValueExpression) expression;
+        }
+        return new CompiledValueExpression(expression, createEvaluator(expression));
+    }
+
+    /**
+     * Returns <code>true</code> if the compiled expression always yields at
+     * most one value, which is evaluated without intermediate lists.
+     */
+    public boolean isScalar() {
+        return evaluator instanceof ScalarEvaluator;
+    }
+
+    @Override
+    public ImmutableList<Optional<Value>> eval(final ParseState parseState, final Encoding encoding) {
+        return evaluator.evalList(parseState, encoding);
+    }
+
+    private static Evaluator createEvaluator(final ValueExpression expression) {
+        final Class<?> type = expression.getClass();
+        if (type == Const.class) {
+            return new ConstEvaluator((Const) expression);
+        }
+        if (type == Last.class && ((Last) expression).operand instanceof Ref) {
+            return new LastRefEvaluator((Ref<?>) ((Last) expression).operand);
+        }
+        if (type == First.class && ((First) expression).operand instanceof Ref) {
+            return new FirstRefEvaluator((Ref<?>) ((First) expression).operand);
+        }
+        if (type == Count.class && ((Count) expression).operand instanceof Ref) {
+            return new CountRefEvaluator((Ref<?>) ((Count) expression).operand);
+        }
+        if (type == Last.class || type == First.class || type == Count.class || type == CurrentOffset.class || type == CurrentIteration.class || type == Self.class) {
+            return new SingleEvaluator(expression);
+        }
+        if (UNARY.contains(type)) {
+            final Evaluator operand = createEvaluator(((UnaryValueExpression) expression).operand);
+            return operand instanceof ScalarEvaluator
+                ? new ScalarUnaryEvaluator((UnaryValueExpression) expression, (ScalarEvaluator) operand)
+                : new UnaryEvaluator((UnaryValueExpression) expression, operand);
+        }
+        if (BINARY.contains(type)) {
+            final Evaluator left = createEvaluator(((BinaryValueExpression) expression).left);
+            final Evaluator right = createEvaluator(((BinaryValueExpression) expression).right);
+            return left instanceof ScalarEvaluator && right instanceof ScalarEvaluator
+                ? new ScalarBinaryEvaluator((BinaryValueExpression) expression, (ScalarEvaluator) left, (ScalarEvaluator) right)
+                : new BinaryEvaluator((BinaryValueExpression) expression, left, right);
+        }
+        return new ListEvaluator(expression);
+    }
+
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(expression);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + expression + ")";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return Util.notNullAndSameClass(this, obj)
+            && Objects.equals(expression, ((CompiledValueExpression)obj).expression);
+        // The evaluator is excluded from equals() and hashCode() because it is derived from expression.
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), expression);
+    }
+
+    private interface Evaluator {
+
+        ImmutableList<Optional<Value>> evalList(ParseState parseState, Encoding encoding);
+
+    }
+
+    private abstract static class ScalarEvaluator implements Evaluator {
+
+        /**
+         * Returns the single value of the expression, which may be
+         * {@link Optional#empty()}, or <code>null</code> if the expression
+         * yields no values at all.
+         */
+        abstract Optional<Value> evalScalar(ParseState parseState, Encoding encoding);
+
+        @Override
+        public ImmutableList<Optional<Value>> evalList(final ParseState parseState, final Encoding encoding) {
+            final Optional<Value> value = evalScalar(parseState, encoding);
+            return value == null ? new ImmutableList<>() : ImmutableList.create(value);
+        }
+
+    }
+
+    private static class ConstEvaluator extends ScalarEvaluator {
+
+        private final Optional<Value> value;
+
+        ConstEvaluator(final Const expression) {
+            value = Optional.of(expression.value);
+        }
+
+        @Override
+        Optional<Value> evalScalar(final ParseState parseState, final Encoding encoding) {
+            return value;
+        }
+
+    }
+
+    private static class SingleEvaluator extends ScalarEvaluator {
+
+        private final ValueExpression expression;
+
+        SingleEvaluator(final ValueExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        Optional<Value> evalScalar(final ParseState parseState, final Encoding encoding) {
+            final ImmutableList<Optional<Value>> values = expression.eval(parseState, encoding);
+            return values.isEmpty() ? null : values.head;
+        }
+
+    }
+
+    /*
+     * The evaluators of a Ref take the values from the index of the parse
+     * graph without wrapping them in lists (see Ref#evalValues).
+     */
+
+    private static class LastRefEvaluator extends ScalarEvaluator {
+
+        private final Ref<?> ref;
+
+        LastRefEvaluator(final Ref<?> ref) {
+            this.ref = ref;
+        }
+
+        @Override
+        Optional<Value> evalScalar(final ParseState parseState, final Encoding encoding) {
+            final ImmutableList<ParseValue> values = ref.evalValues(parseState, encoding, RECENT_FIRST, 1);
+            return values.isEmpty() ? null : Optional.of(values.head);
+        }
+
+    }
+
+    private static class FirstRefEvaluator extends ScalarEvaluator {
+
+        private final Ref<?> ref;
+
+        FirstRefEvaluator(final Ref<?> ref) {
+            this.ref = ref;
+        }
+
+        @Override
+        Optional<Value> evalScalar(final ParseState parseState, final Encoding encoding) {
+            final ImmutableList<ParseValue> values = ref.evalValues(parseState, encoding, OLDEST_FIRST, 1);
+            return values.isEmpty() ? null : Optional.of(values.head);
+        }
+
+    }
+
+    private static class CountRefEvaluator extends ScalarEvaluator {
+
+        private static final Encoding COUNT_ENCODING = new Encoding(Sign.SIGNED);
+
+        private final Ref<?> ref;
+
+        CountRefEvaluator(final Ref<?> ref) {
+            this.ref = ref;
+        }
+
+        @Override
+        Optional<Value> evalScalar(final ParseState parseState, final Encoding encoding) {
+            // The same value as Count evaluates to.
+            return Optional.of(ConstantFactory.createFromNumeric(ref.evalValues(parseState, encoding, RECENT_FIRST, NO_LIMIT).size, COUNT_ENCODING));
+        }
+
+    }
+
+    private static class ScalarUnaryEvaluator extends ScalarEvaluator {
+
+        private final UnaryValueExpression expression;
+        private final ScalarEvaluator operand;
+
+        ScalarUnaryEvaluator(final UnaryValueExpression expression, final ScalarEvaluator operand) {
+            this.expression = expression;
+            this.operand = operand;
+        }
+
+        @Override
+        Optional<Value> evalScalar(final ParseState parseState, final Encoding encoding) {
+            final Optional<Value> value = operand.evalScalar(parseState, encoding);
+            if (value == null || !value.isPresent()) {
+                return value;
+            }
+            return expression.eval(value.get(), parseState, encoding);
+        }
+
+    }
+
+    private static class ScalarBinaryEvaluator extends ScalarEvaluator {
+
+        private final BinaryValueExpression expression;
+        private final ScalarEvaluator left;
+        private final ScalarEvaluator right;
+
+        ScalarBinaryEvaluator(final BinaryValueExpression expression, final ScalarEvaluator left, final ScalarEvaluator right) {
+            this.expression = expression;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Optional<Value> evalScalar(final ParseState parseState, final Encoding encoding) {
+            final Optional<Value> leftValue = left.evalScalar(parseState, encoding);
+            final Optional<Value> rightValue = right.evalScalar(parseState, encoding);
+            if (leftValue == null && rightValue == null) {
+                return null;
+            }
+            // As with lists, a missing operand pads the result with an empty value.
+            if (leftValue == null || rightValue == null || !leftValue.isPresent() || !rightValue.isPresent()) {
+                return Optional.empty();
+            }
+            return expression.eval(leftValue.get(), rightValue.get(), parseState, encoding);
+        }
+
+    }
+
+    private static class UnaryEvaluator implements Evaluator {
+
+        private final UnaryValueExpression expression;
+        private final Evaluator operand;
+
+        UnaryEvaluator(final UnaryValueExpression expression, final Evaluator operand) {
+            this.expression = expression;
+            this.operand = operand;
+        }
+
+        @Override
+        public ImmutableList<Optional<Value>> evalList(final ParseState parseState, final Encoding encoding) {
+            return expression.evalList(operand.evalList(parseState, encoding), parseState, encoding);
+        }
+
+    }
+
+    private static class BinaryEvaluator implements Evaluator {
+
+        private final BinaryValueExpression expression;
+        private final Evaluator left;
+        private final Evaluator right;
+
+        BinaryEvaluator(final BinaryValueExpression expression, final Evaluator left, final Evaluator right) {
+            this.expression = expression;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public ImmutableList<Optional<Value>> evalList(final ParseState parseState, final Encoding encoding) {
+            return expression.evalLists(left.evalList(parseState, encoding), right.evalList(parseState, encoding), parseState, encoding);
+        }
+
+    }
+
+    private static class ListEvaluator implements Evaluator {
+
+        private final ValueExpression expression;
+
+        ListEvaluator(final ValueExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        public ImmutableList<Optional<Value>> evalList(final ParseState parseState, final Encoding encoding) {
+            return expression.eval(parseState, encoding);
+        }
+
+    }
+
+}
@@ -16,6 +16,9 @@
 
 package io.parsingdata.metal.expression.value;
 
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
+
 import java.util.Objects;
 import java.util.Optional;
 
@@ -28,19 +31,27 @@ import io.parsingdata.metal.encoding.Encoding;
  * A {@link ValueExpression} representing a constant value.
  * <p>
  * Const has a single operand <code>value</code> (a {@link Value}). When
- * evaluated, this value is returned.
+ * evaluated, this value is returned. The returned list is created once,
+ * since it is immutable.
  */
 public class Const implements ValueExpression {
 
     public final Value value;
+    private final ImmutableList<Optional<Value>> values;
 
     public Const(final Value value) {
-        this.value = value;
+        this.value = checkNotNull(value, "value");
+        values = ImmutableList.create(Optional.of(value));
     }
 
     @Override
     public ImmutableList<Optional<Value>> eval(final ParseState parseState, final Encoding encoding) {
-        return ImmutableList.create(Optional.of(value));
+        return values;
+    }
+
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands();
     }
 
     @Override
@@ -52,6 +63,7 @@ public class Const implements ValueExpression {
     public boolean equals(final Object obj) {
         return Util.notNullAndSameClass(this, obj)
             && Objects.equals(value, ((Const)obj).value);
+        // The values field is excluded from equals() and hashCode() because it is derived from value.
     }
 
     @Override
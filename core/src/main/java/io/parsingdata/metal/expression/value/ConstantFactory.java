@@ -33,11 +33,37 @@ public final class ConstantFactory {
     }
 
     public static Value createFromNumeric(final BigInteger value, final Encoding encoding) {
+        if (value.bitLength() < Long.SIZE) {
+            return createFromNumeric(value.longValue(), encoding);
+        }
         return createFromBytes(compact(value.toByteArray(), encoding.sign == Sign.SIGNED), setToBigEndian(encoding));
     }
 
+    /**
+     * Returns the same value as <code>createFromNumeric(BigInteger.valueOf(value), encoding)</code>,
+     * without creating a {@link BigInteger}. Unless the value is negative and
+     * the encoding unsigned (in which case its bytes represent a different
+     * number), the value keeps <code>value</code> as its numeric value.
+     */
     public static Value createFromNumeric(final long value, final Encoding encoding) {
-        return createFromNumeric(BigInteger.valueOf(value), encoding);
+        final boolean signed = encoding.sign == Sign.SIGNED;
+        final byte[] bytes = compact(toByteArray(value), signed);
+        if (signed || value >= 0) {
+            return Value.createFromLong(Slice.createFromBytes(bytes), setToBigEndian(encoding), value);
+        }
+        return createFromBytes(bytes, setToBigEndian(encoding));
+    }
+
+    /**
+     * Returns the same bytes as <code>BigInteger.valueOf(value).toByteArray()</code>.
+     */
+    private static byte[] toByteArray(final long value) {
+        final int length = (Long.SIZE - Long.numberOfLeadingZeros(value < 0 ? ~value : value)) / Byte.SIZE + 1;
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[length - 1 - i] = (byte) (value >>> (i * Byte.SIZE));
+        }
+        return bytes;
     }
 
     public static Value createFromString(final String value, final Encoding encoding) {
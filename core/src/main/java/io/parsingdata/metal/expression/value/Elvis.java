@@ -16,15 +16,12 @@
 
 package io.parsingdata.metal.expression.value;
 
-import static io.parsingdata.metal.Trampoline.complete;
-import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
-import static io.parsingdata.metal.data.Selection.reverse;
+import static io.parsingdata.metal.Util.operands;
 
 import java.util.Objects;
 import java.util.Optional;
 
-import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
@@ -54,17 +51,18 @@ public class Elvis implements ValueExpression {
 
     @Override
     public ImmutableList<Optional<Value>> eval(final ParseState parseState, final Encoding encoding) {
-        return reverse(eval(new ImmutableList<>(), left.eval(parseState, encoding), right.eval(parseState, encoding)).computeResult());
+        ImmutableList<Optional<Value>> leftValues = left.eval(parseState, encoding);
+        ImmutableList<Optional<Value>> rightValues = right.eval(parseState, encoding);
+        final ValueList.Builder result = new ValueList.Builder(Math.max(leftValues.size, rightValues.size));
+        for (; !leftValues.isEmpty() && !rightValues.isEmpty(); leftValues = leftValues.tail, rightValues = rightValues.tail) {
+            result.add(leftValues.head.isPresent() ? leftValues.head : rightValues.head);
+        }
+        return result.add(leftValues).add(rightValues).build().toList();
     }
 
-    private Trampoline<ImmutableList<Optional<Value>>> eval(final ImmutableList<Optional<Value>> result, final ImmutableList<Optional<Value>> leftValues, final ImmutableList<Optional<Value>> rightValues) {
-        if (leftValues.isEmpty()) {
-            return complete(() -> result.add(reverse(rightValues)));
-        }
-        if (rightValues.isEmpty()) {
-            return complete(() -> result.add(reverse(leftValues)));
-        }
-        return intermediate(() -> eval(result.add(leftValues.head.isPresent() ? leftValues.head : rightValues.head), leftValues.tail, rightValues.tail));
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(left, right);
     }
 
     @Override
@@ -16,14 +16,12 @@
 
 package io.parsingdata.metal.expression.value;
 
-import static io.parsingdata.metal.Trampoline.complete;
-import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
 
 import java.util.Objects;
 import java.util.Optional;
 
-import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
@@ -60,14 +58,21 @@ public class Expand implements ValueExpression {
         if (countList.size != 1 || !countList.head.isPresent()) {
             throw new IllegalArgumentException("Count must evaluate to a single non-empty value.");
         }
-        return expand(baseList, countList.head.get().asNumeric().intValueExact(), new ImmutableList<>()).computeResult();
-    }
-
-    private Trampoline<ImmutableList<Optional<Value>>> expand(final ImmutableList<Optional<Value>> baseList, final int countValue, final ImmutableList<Optional<Value>> aggregate) {
+        final int countValue = countList.head.get().asInt();
         if (countValue < 1) {
-            return complete(() -> aggregate);
+            return new ImmutableList<>();
+        }
+        final ValueList base = ValueList.create(baseList);
+        final ValueList.Builder result = new ValueList.Builder(base.size * countValue);
+        for (int i = 0; i < countValue; i++) {
+            result.add(base);
         }
-        return intermediate(() -> expand(baseList, countValue - 1, aggregate.add(baseList)));
+        return result.build().toList();
+    }
+
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(bases, count);
     }
 
     @Override
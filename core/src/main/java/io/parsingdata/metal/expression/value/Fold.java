@@ -19,6 +19,7 @@ package io.parsingdata.metal.expression.value;
 import static io.parsingdata.metal.Trampoline.complete;
 import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -96,6 +97,12 @@ public abstract class Fold implements ValueExpression {
 
     protected abstract ValueExpression reduce(BinaryOperator<ValueExpression> reducer, Value head, Value tail);
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        // The reducer only combines the values it is given, so it is not an operand.
+        return operands(values, initial);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + values + "," + reducer + (initial == null ? "" : "," + initial) + ")";
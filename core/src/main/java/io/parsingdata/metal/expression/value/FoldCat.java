@@ -18,6 +18,7 @@ package io.parsingdata.metal.expression.value;
 
 import static java.math.BigInteger.ZERO;
 
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.data.Slice.createFromSource;
 
 import java.util.Objects;
@@ -52,6 +53,11 @@ public class FoldCat implements ValueExpression {
             .orElseGet(() -> ImmutableList.create(Optional.empty()));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(operand);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + operand + ")";
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.expression.value;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import io.parsingdata.metal.Util;
+import io.parsingdata.metal.data.ImmutableList;
+import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.encoding.Encoding;
+
+/**
+ * A {@link ValueExpression} that evaluates to the same list as its
+ * <code>expression</code>, which must not depend on the {@link ParseState}
+ * (such as an expression of which all operands are {@link Const}s).
+ * <p>
+ * The result may still depend on the {@link Encoding}, so the expression is
+ * evaluated again when the encoding differs from the previous evaluation.
+ * Otherwise the previous result is returned.
+ *
+ * @see io.parsingdata.metal.Optimizer
+ */
+public class FoldedValueExpression implements ValueExpression {
+
+    public final ValueExpression expression;
+
+    // Not final because it is set on evaluation. Safe to share, since Result is immutable.
+    private volatile Result result = null;
+
+    public FoldedValueExpression(final ValueExpression expression) {
+        this.expression = checkNotNull(expression, "expression");
+    }
+
+    @Override
+    public ImmutableList<Optional<Value>> eval(final ParseState parseState, final Encoding encoding) {
+        final Result previous = result;
+        if (previous != null && previous.encoding.equals(encoding)) {
+            return previous.values;
+        }
+        final ImmutableList<Optional<Value>> values = expression.eval(parseState, encoding);
+        result = new Result(encoding, values);
+        return values;
+    }
+
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(expression);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + expression + ")";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return Util.notNullAndSameClass(this, obj)
+            && Objects.equals(expression, ((FoldedValueExpression)obj).expression);
+        // The result is excluded from equals() and hashCode() because it is derived from expression.
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), expression);
+    }
+
+    private static class Result {
+
+        final Encoding encoding;
+        final ImmutableList<Optional<Value>> values;
+
+        Result(final Encoding encoding, final ImmutableList<Optional<Value>> values) {
+            this.encoding = encoding;
+            this.values = values;
+        }
+
+    }
+
+}
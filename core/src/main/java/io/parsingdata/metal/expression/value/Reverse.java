@@ -16,6 +16,7 @@
 
 package io.parsingdata.metal.expression.value;
 
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.data.Selection.reverse;
 
 import java.util.Objects;
@@ -46,6 +47,11 @@ public class Reverse implements ValueExpression {
         return reverse(values.eval(parseState, encoding));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(values);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + values + ")";
@@ -16,15 +16,12 @@
 
 package io.parsingdata.metal.expression.value;
 
-import static io.parsingdata.metal.Trampoline.complete;
-import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
-import static io.parsingdata.metal.data.Selection.reverse;
+import static io.parsingdata.metal.Util.operands;
 
 import java.util.Objects;
 import java.util.Optional;
 
-import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
@@ -55,18 +52,24 @@ public abstract class UnaryValueExpression implements ValueExpression {
 
     @Override
     public ImmutableList<Optional<Value>> eval(final ParseState parseState, final Encoding encoding) {
-        return reverse(eval(operand.eval(parseState, encoding), parseState, encoding, new ImmutableList<>()).computeResult());
+        return evalList(operand.eval(parseState, encoding), parseState, encoding);
     }
 
-    private Trampoline<ImmutableList<Optional<Value>>> eval(final ImmutableList<Optional<Value>> values, final ParseState parseState, final Encoding encoding, final ImmutableList<Optional<Value>> result) {
-        if (values.isEmpty()) {
-            return complete(() -> result);
+    ImmutableList<Optional<Value>> evalList(final ImmutableList<Optional<Value>> values, final ParseState parseState, final Encoding encoding) {
+        final ValueList.Builder result = new ValueList.Builder(values.size);
+        for (ImmutableList<Optional<Value>> current = values; !current.isEmpty(); current = current.tail) {
+            result.add(current.head.flatMap(value -> eval(value, parseState, encoding)));
         }
-        return intermediate(() -> eval(values.tail, parseState, encoding, result.add(values.head.flatMap(value -> eval(value, parseState, encoding)))));
+        return result.build().toList();
     }
 
     public abstract Optional<Value> eval(final Value value, final ParseState parseState, final Encoding encoding);
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(operand);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + operand + ")";
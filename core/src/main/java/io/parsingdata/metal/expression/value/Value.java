@@ -20,6 +20,7 @@ import static io.parsingdata.metal.Util.bytesToHexString;
 import static io.parsingdata.metal.Util.checkNotNull;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.BitSet;
 import java.util.Objects;
 
@@ -36,9 +37,29 @@ public class Value {
     public final Slice slice;
     public final Encoding encoding;
 
+    // Not final because it is lazily initialized. Safe to share, since BigInteger is immutable.
+    private BigInteger numeric = null;
+    private final long longValue; // The numeric value if hasLongValue, so that it does not have to be decoded from the slice.
+    private final boolean hasLongValue;
+
     public Value(final Slice slice, final Encoding encoding) {
+        this(slice, encoding, 0, false);
+    }
+
+    private Value(final Slice slice, final Encoding encoding, final long longValue, final boolean hasLongValue) {
         this.slice = checkNotNull(slice, "slice");
         this.encoding = checkNotNull(encoding, "encoding");
+        this.longValue = longValue;
+        this.hasLongValue = hasLongValue;
+    }
+
+    /**
+     * Returns a Value of which the numeric value is <code>longValue</code>.
+     * Only used for values that were just created from
+     * <code>longValue</code>, which the slice must represent.
+     */
+    static Value createFromLong(final Slice slice, final Encoding encoding, final long longValue) {
+        return new Value(slice, encoding, longValue, true);
     }
 
     public byte[] getValue() {
@@ -49,9 +70,97 @@ public class Value {
         return slice.length;
     }
 
+    /**
+     * Returns the numeric value of this value's bytes, interpreted according
+     * to the sign and byte order of its {@link Encoding}. The result is
+     * computed once and then cached.
+     */
     public BigInteger asNumeric() {
-        return encoding.sign == Sign.SIGNED ? new BigInteger(encoding.byteOrder.apply(getValue()))
-                                            : new BigInteger(1, encoding.byteOrder.apply(getValue()));
+        if (numeric == null) {
+            numeric = decodeNumeric();
+        }
+        return numeric;
+    }
+
+    private BigInteger decodeNumeric() {
+        if (hasLongValue) {
+            return BigInteger.valueOf(longValue);
+        }
+        final int length = slice.length.intValueExact();
+        if (length > 0 && (length < Long.BYTES || (length == Long.BYTES && encoding.sign == Sign.SIGNED))) {
+            return BigInteger.valueOf(decodeLong(length));
+        }
+        // getValue() already returns a copy, so it only needs to be reordered for little endian.
+        final byte[] value = encoding.byteOrder == ByteOrder.BIG_ENDIAN ? getValue() : encoding.byteOrder.apply(getValue());
+        return encoding.sign == Sign.SIGNED ? new BigInteger(value)
+                                            : new BigInteger(1, value);
+    }
+
+    /**
+     * Returns the numeric value as a <code>long</code>. For values of at most
+     * eight bytes, this is decoded directly from the source bytes, without
+     * creating a {@link BigInteger}.
+     *
+     * @throws ArithmeticException if the numeric value does not fit in a <code>long</code>
+     */
+    public long asLong() {
+        if (hasLongValue) {
+            return longValue;
+        }
+        if (numeric != null) {
+            return numeric.longValueExact();
+        }
+        final int length = slice.length.intValueExact();
+        if (length > 0 && length <= Long.BYTES) {
+            final long value = decodeLong(length);
+            if (length == Long.BYTES && encoding.sign == Sign.UNSIGNED && value < 0) {
+                throw new ArithmeticException("BigInteger out of long range");
+            }
+            return value;
+        }
+        return asNumeric().longValueExact();
+    }
+
+    /**
+     * Returns <code>true</code> if the numeric value fits in a
+     * <code>long</code>, which means {@link #asLong()} does not throw. For
+     * values of less than eight bytes, no data is read.
+     */
+    public boolean fitsLong() {
+        if (hasLongValue) {
+            return true;
+        }
+        if (numeric != null) {
+            return numeric.bitLength() < Long.SIZE;
+        }
+        final int length = slice.length.intValueExact();
+        if (length > 0 && length < Long.BYTES) {
+            return true;
+        }
+        return asNumeric().bitLength() < Long.SIZE;
+    }
+
+    /**
+     * Returns the numeric value as an <code>int</code>.
+     *
+     * @throws ArithmeticException if the numeric value does not fit in an <code>int</code>
+     */
+    public int asInt() {
+        final long value = asLong();
+        if ((int) value != value) {
+            throw new ArithmeticException("BigInteger out of int range");
+        }
+        return (int) value;
+    }
+
+    private long decodeLong(final int length) {
+        final ByteBuffer bytes = slice.asByteBuffer();
+        final boolean bigEndian = encoding.byteOrder == ByteOrder.BIG_ENDIAN;
+        long value = encoding.sign == Sign.SIGNED && bytes.get(bigEndian ? 0 : length - 1) < 0 ? -1 : 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (bytes.get(bigEndian ? i : length - 1 - i) & 0xff);
+        }
+        return value;
     }
 
     public String asString() {
@@ -38,4 +38,16 @@ public interface ValueExpression {
 
     ImmutableList<Optional<Value>> eval(ParseState parseState, Encoding encoding);
 
+    /**
+     * Returns the tokens and expressions that this expression evaluates
+     * directly, so that a tree of tokens can be analyzed without parsing it
+     * (see {@link io.parsingdata.metal.data.Memo} and {@link io.parsingdata.metal.data.Retention}).
+     * Returns an empty Optional if they are not known, which is the default.
+     * Implementations that evaluate anything else, or read the parse state
+     * in another way, must override this method.
+     */
+    default Optional<ImmutableList<?>> getOperands() {
+        return Optional.empty();
+    }
+
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.expression.value;
+
+import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.format;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+
+import io.parsingdata.metal.Util;
+import io.parsingdata.metal.data.ImmutableList;
+
+/**
+ * An immutable, array-backed list of optional {@link Value}s.
+ * <p>
+ * A ValueList holds the same elements as the
+ * <code>ImmutableList&lt;Optional&lt;Value&gt;&gt;</code> returned by
+ * {@link ValueExpression#eval(io.parsingdata.metal.data.ParseState, io.parsingdata.metal.encoding.Encoding)},
+ * but offers random access in constant time. Index zero is the head of the
+ * list it was created from. A ValueList is built front to back using a
+ * {@link Builder}, so converting it with {@link #toList()} does not require a
+ * reversal pass.
+ */
+public class ValueList {
+
+    public static final ValueList EMPTY = new ValueList(new Value[0]);
+
+    public final long size;
+    private final Value[] values; // Private because array content is mutable. Empty values are stored as null.
+
+    private ValueList(final Value[] values) {
+        this.values = values;
+        size = values.length;
+    }
+
+    public static ValueList create(final ImmutableList<Optional<Value>> list) {
+        return new Builder(checkNotNull(list, "list").size).add(list).build();
+    }
+
+    public static ValueList createFromValues(final ImmutableList<? extends Value> list) {
+        final Builder builder = new Builder(checkNotNull(list, "list").size);
+        for (ImmutableList<? extends Value> current = list; !current.isEmpty(); current = current.tail) {
+            builder.add(Optional.of(current.head));
+        }
+        return builder.build();
+    }
+
+    public Optional<Value> get(final long index) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException(format("Argument index must be smaller than %d and may not be negative.", size));
+        }
+        return Optional.ofNullable(values[(int) index]);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public ImmutableList<Optional<Value>> toList() {
+        ImmutableList<Optional<Value>> list = new ImmutableList<>();
+        for (int i = values.length - 1; i >= 0; i--) {
+            list = list.add(Optional.ofNullable(values[i]));
+        }
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + Arrays.toString(values);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return Util.notNullAndSameClass(this, obj)
+            && Arrays.equals(values, ((ValueList)obj).values);
+        // The size field is excluded from equals() and hashCode() because it is derived from values.
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClass(), Arrays.hashCode(values));
+    }
+
+    /**
+     * Collects values in order and creates a {@link ValueList} from them.
+     * Calling {@link #build()} resets the builder.
+     */
+    public static class Builder {
+
+        private Value[] values;
+        private int size = 0;
+
+        public Builder(final long capacity) {
+            if (capacity < 0 || capacity > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Argument capacity may not be negative or exceed the maximum array size.");
+            }
+            values = new Value[(int) capacity];
+        }
+
+        public Builder add(final Optional<Value> value) {
+            ensureCapacity(1);
+            values[size++] = checkNotNull(value, "value").orElse(null);
+            return this;
+        }
+
+        public Builder add(final ImmutableList<Optional<Value>> list) {
+            ensureCapacity(checkNotNull(list, "list").size);
+            for (ImmutableList<Optional<Value>> current = list; !current.isEmpty(); current = current.tail) {
+                values[size++] = current.head.orElse(null);
+            }
+            return this;
+        }
+
+        public Builder add(final ValueList list) {
+            ensureCapacity(checkNotNull(list, "list").size);
+            System.arraycopy(list.values, 0, values, size, list.values.length);
+            size += list.values.length;
+            return this;
+        }
+
+        private void ensureCapacity(final long additional) {
+            final long required = size + additional;
+            if (required > values.length) {
+                values = Arrays.copyOf(values, (int) Math.min(Integer.MAX_VALUE, Math.max(required, values.length * 2L)));
+            }
+        }
+
+        public ValueList build() {
+            final ValueList result = size == 0 ? EMPTY : new ValueList(size == values.length ? values : Arrays.copyOf(values, size));
+            values = new Value[0];
+            size = 0;
+            return result;
+        }
+
+    }
+
+}
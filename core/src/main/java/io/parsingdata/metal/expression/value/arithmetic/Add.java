@@ -36,6 +36,13 @@ public class Add extends BinaryValueExpression {
 
     @Override
     public Optional<Value> eval(final Value leftValue, final Value rightValue, final ParseState parseState, final Encoding encoding) {
+        if (leftValue.fitsLong() && rightValue.fitsLong()) {
+            try {
+                return Optional.of(ConstantFactory.createFromNumeric(Math.addExact(leftValue.asLong(), rightValue.asLong()), encoding));
+            } catch (final ArithmeticException exception) {
+                // The result does not fit in a long, so it is computed with BigInteger below.
+            }
+        }
         return Optional.of(ConstantFactory.createFromNumeric(leftValue.asNumeric().add(rightValue.asNumeric()), encoding));
     }
 
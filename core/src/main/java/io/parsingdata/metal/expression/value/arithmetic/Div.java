@@ -41,6 +41,17 @@ public class Div extends BinaryValueExpression {
 
     @Override
     public Optional<Value> eval(final Value leftValue, final Value rightValue, final ParseState parseState, final Encoding encoding) {
+        if (leftValue.fitsLong() && rightValue.fitsLong()) {
+            final long left = leftValue.asLong();
+            final long right = rightValue.asLong();
+            if (right == 0) {
+                return Optional.empty();
+            }
+            // Long.MIN_VALUE / -1 is the only quotient that does not fit in a long.
+            if (left != Long.MIN_VALUE || right != -1) {
+                return Optional.of(ConstantFactory.createFromNumeric(left / right, encoding));
+            }
+        }
         if (rightValue.asNumeric().equals(ZERO)) {
             return Optional.empty();
         }
@@ -41,6 +41,13 @@ public class Mod extends BinaryValueExpression {
 
     @Override
     public Optional<Value> eval(final Value leftValue, final Value rightValue, final ParseState parseState, final Encoding encoding) {
+        if (leftValue.fitsLong() && rightValue.fitsLong()) {
+            final long right = rightValue.asLong();
+            if (right <= 0) {
+                return Optional.empty();
+            }
+            return Optional.of(ConstantFactory.createFromNumeric(Math.floorMod(leftValue.asLong(), right), encoding));
+        }
         if (rightValue.asNumeric().compareTo(ZERO) <= 0) {
             return Optional.empty();
         }
@@ -36,6 +36,9 @@ public class Neg extends UnaryValueExpression {
 
     @Override
     public Optional<Value> eval(final Value value, final ParseState parseState, final Encoding encoding) {
+        if (value.fitsLong() && value.asLong() != Long.MIN_VALUE) {
+            return Optional.of(ConstantFactory.createFromNumeric(-value.asLong(), encoding));
+        }
         return Optional.of(ConstantFactory.createFromNumeric(value.asNumeric().negate(), encoding));
     }
 
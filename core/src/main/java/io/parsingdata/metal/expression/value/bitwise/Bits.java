@@ -0,0 +1,67 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.expression.value.bitwise;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import io.parsingdata.metal.encoding.ByteOrder;
+import io.parsingdata.metal.encoding.Encoding;
+import io.parsingdata.metal.expression.value.ConstantFactory;
+import io.parsingdata.metal.expression.value.Value;
+
+/**
+ * Shifts on the bits of values of at most eight bytes, represented as a
+ * <code>long</code>. The results have the same bytes as the shifts that
+ * use a {@link java.util.BitSet}.
+ */
+final class Bits {
+
+    private Bits() {}
+
+    /**
+     * Returns <code>true</code> if the bits of <code>value</code> fit in a
+     * <code>long</code>.
+     */
+    static boolean fits(final Value value) {
+        return value.slice.length.compareTo(BigInteger.valueOf(Long.BYTES)) <= 0;
+    }
+
+    /**
+     * Returns the bytes of <code>value</code> in its byte order as an
+     * unsigned number, regardless of its sign.
+     */
+    static long get(final Value value) {
+        final ByteBuffer bytes = value.slice.asByteBuffer();
+        final int length = bytes.remaining();
+        final boolean bigEndian = value.encoding.byteOrder == ByteOrder.BIG_ENDIAN;
+        long bits = 0;
+        for (int i = 0; i < length; i++) {
+            bits = (bits << 8) | (bytes.get(bigEndian ? i : length - 1 - i) & 0xff);
+        }
+        return bits;
+    }
+
+    static Value create(final long bits, final int length, final Encoding encoding) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[length - 1 - i] = (byte) (bits >>> (i * Byte.SIZE));
+        }
+        return ConstantFactory.createFromBytes(bytes, new Encoding(encoding.sign, encoding.charset, ByteOrder.BIG_ENDIAN));
+    }
+
+}
@@ -38,8 +38,15 @@ public class ShiftLeft extends BinaryValueExpression {
 
     @Override
     public Optional<Value> eval(final Value leftValue, final Value rightValue, final ParseState parseState, final Encoding encoding) {
+        final int shiftLeft = rightValue.asInt();
+        if (shiftLeft >= 0 && Bits.fits(leftValue)) {
+            final long bits = Bits.get(leftValue);
+            final int bitCount = Long.SIZE - Long.numberOfLeadingZeros(bits) + shiftLeft;
+            if (bitCount <= Long.SIZE) {
+                return Optional.of(Bits.create(bits << shiftLeft, (bitCount + 7) / 8, encoding));
+            }
+        }
         final BitSet leftBits = leftValue.asBitSet();
-        final int shiftLeft = rightValue.asNumeric().intValueExact();
         final int bitCount = leftBits.length() + shiftLeft;
         final BitSet out = new BitSet(bitCount);
         for (int i = leftBits.nextSetBit(0); i >= 0; i = leftBits.nextSetBit(i+1)) {
@@ -38,9 +38,12 @@ public class ShiftRight extends BinaryValueExpression {
 
     @Override
     public Optional<Value> eval(final Value leftValue, final Value rightValue, final ParseState parseState, final Encoding encoding) {
+        final int shift = rightValue.asInt();
+        if (shift >= 0 && Bits.fits(leftValue)) {
+            return Optional.of(Bits.create(shift < Long.SIZE ? Bits.get(leftValue) >>> shift : 0, leftValue.slice.length.intValueExact(), encoding));
+        }
         final BitSet leftBits = leftValue.asBitSet();
-        final int shift = rightValue.asNumeric().intValueExact();
-        return Optional.of(ConstantFactory.createFromBitSet(leftBits.get(shift, Math.max(shift, leftBits.length())), leftValue.getValue().length, encoding));
+        return Optional.of(ConstantFactory.createFromBitSet(leftBits.get(shift, Math.max(shift, leftBits.length())), leftValue.slice.length.intValueExact(), encoding));
     }
 
 }
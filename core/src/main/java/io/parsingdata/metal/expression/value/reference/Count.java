@@ -17,6 +17,9 @@
 package io.parsingdata.metal.expression.value.reference;
 
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
+import static io.parsingdata.metal.data.Selection.NO_LIMIT;
+import static io.parsingdata.metal.expression.value.reference.Ref.Direction.RECENT_FIRST;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -44,14 +47,19 @@ public class Count implements ValueExpression {
 
     @Override
     public ImmutableList<Optional<Value>> eval(final ParseState parseState, final Encoding encoding) {
-        final ImmutableList<Optional<Value>> values = operand.eval(parseState, encoding);
-        return ImmutableList.create(Optional.of(fromNumeric(values.size)));
+        final long size = operand instanceof Ref ? ((Ref<?>) operand).evalValues(parseState, encoding, RECENT_FIRST, NO_LIMIT).size : operand.eval(parseState, encoding).size;
+        return ImmutableList.create(Optional.of(fromNumeric(size)));
     }
 
     private static Value fromNumeric(final long length) {
         return ConstantFactory.createFromNumeric(length, new Encoding(Sign.SIGNED));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(operand);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + operand + ")";
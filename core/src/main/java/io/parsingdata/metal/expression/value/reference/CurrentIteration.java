@@ -22,6 +22,7 @@ import static java.math.BigInteger.ZERO;
 import static io.parsingdata.metal.Trampoline.complete;
 import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.encoding.Encoding.DEFAULT_ENCODING;
 import static io.parsingdata.metal.expression.value.ConstantFactory.createFromNumeric;
 
@@ -83,6 +84,11 @@ public class CurrentIteration implements ValueExpression {
         return intermediate(() -> getIterationRecursive(iterations.tail, levelValue.subtract(ONE)));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(level);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName();
@@ -16,6 +16,7 @@
 
 package io.parsingdata.metal.expression.value.reference;
 
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.encoding.Encoding.DEFAULT_ENCODING;
 import static io.parsingdata.metal.expression.value.ConstantFactory.createFromNumeric;
 
@@ -39,6 +40,11 @@ public class CurrentOffset implements ValueExpression {
         return ImmutableList.create(Optional.of(createFromNumeric(parseState.offset, DEFAULT_ENCODING)));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands();
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName();
@@ -19,6 +19,8 @@ package io.parsingdata.metal.expression.value.reference;
 import static io.parsingdata.metal.Trampoline.complete;
 import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
+import static io.parsingdata.metal.expression.value.reference.Ref.Direction.OLDEST_FIRST;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -27,6 +29,7 @@ import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.data.ParseValue;
 import io.parsingdata.metal.encoding.Encoding;
 import io.parsingdata.metal.expression.value.Value;
 import io.parsingdata.metal.expression.value.ValueExpression;
@@ -45,6 +48,10 @@ public class First implements ValueExpression {
 
     @Override
     public ImmutableList<Optional<Value>> eval(final ParseState parseState, final Encoding encoding) {
+        if (operand instanceof Ref) {
+            final ImmutableList<ParseValue> values = ((Ref<?>) operand).evalValues(parseState, encoding, OLDEST_FIRST, 1);
+            return values.isEmpty() ? new ImmutableList<>() : ImmutableList.create(Optional.of(values.head));
+        }
         final ImmutableList<Optional<Value>> list = operand.eval(parseState, encoding);
         return list.isEmpty() ? list : ImmutableList.create(getFirst(list).computeResult());
     }
@@ -53,6 +60,11 @@ public class First implements ValueExpression {
         return values.tail.isEmpty() ? complete(() -> values.head) : intermediate(() -> getFirst(values.tail));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(operand);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + operand + ")";
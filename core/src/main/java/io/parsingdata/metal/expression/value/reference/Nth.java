@@ -16,24 +16,23 @@
 
 package io.parsingdata.metal.expression.value.reference;
 
-import static java.math.BigInteger.ONE;
 import static java.math.BigInteger.ZERO;
 
-import static io.parsingdata.metal.Trampoline.complete;
-import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
-import static io.parsingdata.metal.data.Selection.reverse;
+import static io.parsingdata.metal.Util.operands;
+import static io.parsingdata.metal.data.Selection.NO_LIMIT;
+import static io.parsingdata.metal.expression.value.reference.Ref.Direction.RECENT_FIRST;
 
 import java.math.BigInteger;
 import java.util.Objects;
 import java.util.Optional;
 
-import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
 import io.parsingdata.metal.encoding.Encoding;
 import io.parsingdata.metal.expression.value.Value;
+import io.parsingdata.metal.expression.value.ValueList;
 import io.parsingdata.metal.expression.value.ValueExpression;
 
 /**
@@ -59,25 +58,26 @@ public class Nth implements ValueExpression {
 
     @Override
     public ImmutableList<Optional<Value>> eval(final ParseState parseState, final Encoding encoding) {
-        return reverse(eval(values.eval(parseState, encoding), indices.eval(parseState, encoding), new ImmutableList<>()).computeResult());
+        if (values instanceof Ref) {
+            return eval(ValueList.createFromValues(((Ref<?>) values).evalValues(parseState, encoding, RECENT_FIRST, NO_LIMIT)), indices.eval(parseState, encoding));
+        }
+        return eval(ValueList.create(values.eval(parseState, encoding)), indices.eval(parseState, encoding));
     }
 
-    private Trampoline<ImmutableList<Optional<Value>>> eval(final ImmutableList<Optional<Value>> values, final ImmutableList<Optional<Value>> indices, final ImmutableList<Optional<Value>> result) {
-        if (indices.isEmpty()) {
-            return complete(() -> result);
-        }
+    private ImmutableList<Optional<Value>> eval(final ValueList values, final ImmutableList<Optional<Value>> indices) {
         final BigInteger valueCount = BigInteger.valueOf(values.size);
-        final Optional<Value> nextResult = indices.head
-            .filter(index -> index.asNumeric().compareTo(valueCount) < 0 && index.asNumeric().compareTo(ZERO) >= 0)
-            .flatMap(index -> nth(values, valueCount.subtract(index.asNumeric()).subtract(ONE)).computeResult());
-        return intermediate(() -> eval(values, indices.tail, result.add(nextResult)));
+        final ValueList.Builder result = new ValueList.Builder(indices.size);
+        for (ImmutableList<Optional<Value>> current = indices; !current.isEmpty(); current = current.tail) {
+            result.add(current.head
+                .filter(index -> index.asNumeric().compareTo(valueCount) < 0 && index.asNumeric().compareTo(ZERO) >= 0)
+                .flatMap(index -> values.get(values.size - 1 - index.asNumeric().longValue())));
+        }
+        return result.build().toList();
     }
 
-    private Trampoline<Optional<Value>> nth(final ImmutableList<Optional<Value>> values, final BigInteger index) {
-        if (index.equals(ZERO)) {
-            return complete(() -> values.head);
-        }
-        return intermediate(() -> nth(values.tail, index.subtract(ONE)));
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(values, indices);
     }
 
     @Override
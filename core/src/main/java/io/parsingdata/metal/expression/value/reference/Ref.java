@@ -19,8 +19,10 @@ package io.parsingdata.metal.expression.value.reference;
 import static io.parsingdata.metal.Trampoline.complete;
 import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.data.Selection.NO_LIMIT;
 import static io.parsingdata.metal.data.Selection.getAllValues;
+import static io.parsingdata.metal.data.Selection.reverse;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -29,8 +31,10 @@ import java.util.function.Predicate;
 import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.data.ImmutableList;
+import io.parsingdata.metal.data.ParseGraph;
 import io.parsingdata.metal.data.ParseState;
 import io.parsingdata.metal.data.ParseValue;
+import io.parsingdata.metal.data.Selection;
 import io.parsingdata.metal.encoding.Encoding;
 import io.parsingdata.metal.expression.value.Value;
 import io.parsingdata.metal.expression.value.ValueExpression;
@@ -60,27 +64,78 @@ public class Ref<T> implements ValueExpression {
     public static class NameRef extends Ref<String> {
         public NameRef(final String reference) { this(reference, null); }
         public NameRef(final String reference, final ValueExpression limit) { super(reference, value -> value.matches(reference), limit); }
+        @Override protected ImmutableList<ParseValue> getRecentValues(final ParseGraph graph, final int limit) { return Selection.getRecentValues(graph, reference, limit); }
+        @Override protected ImmutableList<ParseValue> getFirstValues(final ParseGraph graph, final int limit) { return Selection.getFirstValues(graph, reference, limit); }
     }
 
     public static class DefinitionRef extends Ref<Token> {
         public DefinitionRef(final Token reference) { this(reference, null); }
         public DefinitionRef(final Token reference, final ValueExpression limit) { super(reference, value -> value.definition.equals(reference), limit); }
+        @Override protected ImmutableList<ParseValue> getRecentValues(final ParseGraph graph, final int limit) { return Selection.getRecentValues(graph, reference, limit); }
+        @Override protected ImmutableList<ParseValue> getFirstValues(final ParseGraph graph, final int limit) { return Selection.getFirstValues(graph, reference, limit); }
     }
 
+    /**
+     * The end of the list of values at which {@link #evalValues(ParseState, Encoding, Direction, int)}
+     * starts.
+     */
+    public enum Direction { RECENT_FIRST, OLDEST_FIRST }
+
     @Override
     public ImmutableList<Optional<Value>> eval(final ParseState parseState, final Encoding encoding) {
+        return wrap(reverse(getRecentValues(parseState.order, evalLimit(parseState, encoding))), new ImmutableList<Optional<Value>>()).computeResult();
+    }
+
+    /**
+     * Evaluates this reference for an operator that uses at most
+     * <code>maxCount</code> values from one end of the list, such as
+     * {@link Last} and {@link First}, so that only those values are looked
+     * up. The values are returned without wrapping, starting at the end
+     * given by <code>direction</code>, so that {@link Nth} and {@link Count}
+     * can use the list from the index of the parse graph without copying it.
+     */
+    public ImmutableList<ParseValue> evalValues(final ParseState parseState, final Encoding encoding, final Direction direction, final int maxCount) {
+        final int limit = evalLimit(parseState, encoding);
+        if (direction == Direction.RECENT_FIRST) {
+            return getRecentValues(parseState.order, limit < 0 || (maxCount >= 0 && maxCount < limit) ? maxCount : limit);
+        }
+        if (limit < 0) {
+            return getFirstValues(parseState.order, maxCount);
+        }
+        // The limit selects the most recent values, of which the oldest are used.
+        return getOldest(getRecentValues(parseState.order, limit), maxCount);
+    }
+
+    private int evalLimit(final ParseState parseState, final Encoding encoding) {
         if (limit == null) {
-            return evalImpl(parseState, NO_LIMIT);
+            return NO_LIMIT;
         }
         ImmutableList<Optional<Value>> evaluatedLimit = limit.eval(parseState, encoding);
         if (evaluatedLimit.size != 1 || !evaluatedLimit.head.isPresent()) {
             throw new IllegalArgumentException("Limit must evaluate to a single non-empty value.");
         }
-        return evalImpl(parseState, evaluatedLimit.head.get().asNumeric().intValueExact());
+        return evaluatedLimit.head.get().asInt();
     }
 
-    private ImmutableList<Optional<Value>> evalImpl(final ParseState parseState, final int limit) {
-        return wrap(getAllValues(parseState.order, predicate, limit), new ImmutableList<Optional<Value>>()).computeResult();
+    protected ImmutableList<ParseValue> getRecentValues(final ParseGraph graph, final int limit) {
+        return reverse(getAllValues(graph, predicate, limit));
+    }
+
+    protected ImmutableList<ParseValue> getFirstValues(final ParseGraph graph, final int limit) {
+        return getOldest(getRecentValues(graph, NO_LIMIT), limit);
+    }
+
+    /**
+     * Returns at most <code>maxCount</code> of the oldest values in
+     * <code>recentValues</code>, which is ordered most recent first, with
+     * the oldest value first.
+     */
+    private static ImmutableList<ParseValue> getOldest(final ImmutableList<ParseValue> recentValues, final int maxCount) {
+        ImmutableList<ParseValue> values = recentValues;
+        while (maxCount >= 0 && values.size > maxCount) {
+            values = values.tail;
+        }
+        return reverse(values);
     }
 
     private static <T, U extends T> Trampoline<ImmutableList<Optional<T>>> wrap(final ImmutableList<U> input, final ImmutableList<Optional<T>> output) {
@@ -90,6 +145,11 @@ public class Ref<T> implements ValueExpression {
         return intermediate(() -> wrap(input.tail, output.add(Optional.of(input.head))));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(limit);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + reference + (limit == null ? "" : "," + limit) + ")";
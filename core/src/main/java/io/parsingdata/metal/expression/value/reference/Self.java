@@ -18,6 +18,8 @@ package io.parsingdata.metal.expression.value.reference;
 
 import static java.util.function.Function.identity;
 
+import static io.parsingdata.metal.Util.operands;
+
 import java.util.Optional;
 
 import io.parsingdata.metal.Util;
@@ -39,6 +41,11 @@ public class Self implements ValueExpression {
         return ImmutableList.create(parseState.order.current().map(identity()));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands();
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName();
@@ -66,6 +66,11 @@ public class Cho extends Token {
             .orElseGet(() -> intermediate(() -> iterate(environment, list.tail)));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return Optional.of(tokens);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + makeNameFragment() + tokens + ")";
@@ -18,9 +18,11 @@ package io.parsingdata.metal.token;
 
 import static java.math.BigInteger.ZERO;
 
+import static io.parsingdata.metal.Util.add;
 import static io.parsingdata.metal.Util.checkNotEmpty;
 import static io.parsingdata.metal.Util.checkNotNull;
 import static io.parsingdata.metal.Util.failure;
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.Util.success;
 
 import java.math.BigInteger;
@@ -62,19 +64,25 @@ public class Def extends Token {
         if (sizes.size != 1 || !sizes.head.isPresent()) {
             return failure();
         }
-        return sizes.head
-            .filter(dataSize -> dataSize.asNumeric().compareTo(ZERO) != 0)
-            .map(dataSize -> slice(environment, dataSize.asNumeric()))
-            .orElseGet(() -> success(environment.parseState));
+        final BigInteger dataSize = sizes.head.get().asNumeric();
+        if (dataSize.compareTo(ZERO) == 0) {
+            return success(environment.parseState);
+        }
+        return slice(environment, dataSize);
     }
 
     private Optional<ParseState> slice(final Environment environment, final BigInteger dataSize) {
         return environment.parseState
             .slice(dataSize)
-            .map(slice -> environment.parseState.add(new ParseValue(environment.scope, this, slice, environment.encoding)).seek(dataSize.add(environment.parseState.offset)))
+            .map(slice -> environment.parseState.add(new ParseValue(environment.scope, this, slice, environment.encoding)).seek(add(environment.parseState.offset, dataSize)))
             .orElseGet(Util::failure);
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(size);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + makeNameFragment() + size + ")";
@@ -19,6 +19,7 @@ package io.parsingdata.metal.token;
 import static io.parsingdata.metal.Trampoline.complete;
 import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.Util.success;
 
 import java.util.Objects;
@@ -28,6 +29,7 @@ import java.util.function.Predicate;
 
 import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.data.Environment;
+import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
 import io.parsingdata.metal.encoding.Encoding;
 
@@ -67,6 +69,11 @@ public abstract class IterableToken extends Token {
         return true;
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(token);
+    }
+
     @Override
     public boolean equals(final Object obj) {
         return super.equals(obj)
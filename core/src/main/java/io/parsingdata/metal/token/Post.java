@@ -18,16 +18,23 @@ package io.parsingdata.metal.token;
 
 import static io.parsingdata.metal.Util.checkNotNull;
 import static io.parsingdata.metal.Util.failure;
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.Util.success;
 
+import java.math.BigInteger;
 import java.util.Objects;
 import java.util.Optional;
 
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.data.Environment;
+import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.data.callback.Callbacks;
 import io.parsingdata.metal.encoding.Encoding;
 import io.parsingdata.metal.expression.Expression;
+import io.parsingdata.metal.expression.comparison.Eq;
+import io.parsingdata.metal.expression.value.Const;
+import io.parsingdata.metal.expression.value.ValueExpression;
 
 /**
  * A {@link Token} that specifies a postcondition for parsing a nested token.
@@ -37,6 +44,15 @@ import io.parsingdata.metal.expression.Expression;
  * succeeds, then <code>predicate</code> is evaluated. If it evaluates to
  * <code>true</code>, this token will succeed. In all other situations, parsing
  * this token fails.
+ * <p>
+ * If <code>token</code> is a {@link Def} and <code>predicate</code> compares
+ * the parsed value to a {@link Const} using {@link Eq} (as in
+ * <code>def("magic", 4, eq(con(0x50, 0x4b, 0x03, 0x04)))</code>) and the
+ * size of the Def is a Const equal to the length of that constant, the bytes
+ * at the current offset are first compared to the constant (see
+ * {@link ParseState#matches(byte[])}). A mismatch then fails without parsing
+ * the Def. This is skipped when callbacks are registered, since they would
+ * otherwise miss the result of the Def.
  *
  * @see Expression
  */
@@ -44,21 +60,57 @@ public class Post extends Token {
 
     public final Token token;
     public final Expression predicate;
+    private final byte[] pattern; // Private because array content is mutable.
 
     public Post(final String name, final Token token, final Expression predicate, final Encoding encoding) {
         super(name, encoding);
         this.token = checkNotNull(token, "token");
         this.predicate = checkNotNull(predicate, "predicate");
+        this.pattern = getPattern(token, predicate);
+    }
+
+    private static byte[] getPattern(final Token token, final Expression predicate) {
+        if (token.getClass() != Def.class || predicate.getClass() != Eq.class) {
+            return null;
+        }
+        final Eq eq = (Eq) predicate;
+        if (eq.value != null || eq.predicate.getClass() != Const.class) {
+            return null;
+        }
+        final byte[] pattern = ((Const) eq.predicate).value.getValue();
+        final ValueExpression size = ((Def) token).size;
+        if (pattern.length == 0 || size.getClass() != Const.class || ((Const) size).value.asNumeric().compareTo(BigInteger.valueOf(pattern.length)) != 0) {
+            return null;
+        }
+        return pattern;
     }
 
     @Override
     protected Optional<ParseState> parseImpl(final Environment environment) {
+        if (pattern != null && hasNoCallbacks(environment.callbacks)) {
+            if (!environment.parseState.matches(pattern)) {
+                return failure();
+            }
+            return token
+                .parse(environment.addBranch(this))
+                .map(nextParseState -> success(nextParseState.closeBranch(this)))
+                .orElseGet(Util::failure);
+        }
         return token
             .parse(environment.addBranch(this))
             .map(nextParseState -> predicate.eval(nextParseState, environment.encoding) ? success(nextParseState.closeBranch(this)) : failure())
             .orElseGet(Util::failure);
     }
 
+    private static boolean hasNoCallbacks(final Callbacks callbacks) {
+        return callbacks.genericCallback == null && callbacks.tokenCallbacks.isEmpty();
+    }
+
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(token, predicate);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + makeNameFragment() + token + "," + predicate + ")";
@@ -69,6 +121,7 @@ public class Post extends Token {
         return super.equals(obj)
             && Objects.equals(token, ((Post)obj).token)
             && Objects.equals(predicate, ((Post)obj).predicate);
+        // The pattern field is excluded from equals() and hashCode() because it is derived from token and predicate.
     }
 
     @Override
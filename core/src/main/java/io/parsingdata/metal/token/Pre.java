@@ -18,6 +18,7 @@ package io.parsingdata.metal.token;
 
 import static io.parsingdata.metal.Util.checkNotNull;
 import static io.parsingdata.metal.Util.failure;
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.Util.success;
 
 import java.util.Objects;
@@ -25,6 +26,7 @@ import java.util.Optional;
 
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.data.Environment;
+import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
 import io.parsingdata.metal.encoding.Encoding;
 import io.parsingdata.metal.expression.Expression;
@@ -63,6 +65,11 @@ public class Pre extends Token {
             .orElseGet(Util::failure);
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(token, predicate);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + makeNameFragment() + token + "," + predicate + ")";
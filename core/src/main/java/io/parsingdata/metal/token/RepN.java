@@ -18,6 +18,7 @@ package io.parsingdata.metal.token;
 
 import static io.parsingdata.metal.Util.checkNotNull;
 import static io.parsingdata.metal.Util.failure;
+import static io.parsingdata.metal.Util.operands;
 
 import java.math.BigInteger;
 import java.util.Objects;
@@ -61,6 +62,11 @@ public class RepN extends IterableToken {
         return parse(environment, env -> env.parseState.iterations.head.right.compareTo(count) >= 0, env -> failure());
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(token, n);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + makeNameFragment() + token + "," + n + ")";
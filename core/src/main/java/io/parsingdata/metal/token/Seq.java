@@ -66,6 +66,11 @@ public class Seq extends Token {
             .orElseGet(() -> complete(Util::failure));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return Optional.of(tokens);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + makeNameFragment() + tokens + ")";
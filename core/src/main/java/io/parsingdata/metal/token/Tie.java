@@ -20,6 +20,7 @@ import static io.parsingdata.metal.Trampoline.complete;
 import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
 import static io.parsingdata.metal.Util.failure;
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.Util.success;
 
 import java.util.Objects;
@@ -81,6 +82,11 @@ public class Tie extends Token {
             .orElseGet(() -> complete(Util::failure));
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(token, dataExpression);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + makeNameFragment() + token + "," + dataExpression + ")";
@@ -25,6 +25,7 @@ import java.util.Optional;
 
 import io.parsingdata.metal.Util;
 import io.parsingdata.metal.data.Environment;
+import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
 import io.parsingdata.metal.encoding.Encoding;
 
@@ -66,15 +67,27 @@ public abstract class Token {
 
     public Optional<ParseState> parse(final Environment environment) {
         final Environment activeEnvironment = this.encoding != null ? environment.withEncoding(this.encoding) : environment;
-        final Optional<ParseState> result = parseImpl(activeEnvironment.extendScope(name));
+        final Optional<ParseState> result = environment.memo.parse(this, environment, () -> parseImpl(activeEnvironment.extendScope(name)));
         environment.callbacks.handle(this, result
             .map(after -> success(this, environment.parseState, after))
             .orElseGet(() -> failure(this, environment.parseState)));
-        return result;
+        return result.map(after -> environment.retention.release(this, after));
     }
 
     protected abstract Optional<ParseState> parseImpl(final Environment environment);
 
+    /**
+     * Returns the tokens and expressions that this token parses or evaluates
+     * directly, so that a tree of tokens can be analyzed without parsing it
+     * (see {@link io.parsingdata.metal.data.Memo} and {@link io.parsingdata.metal.data.Retention}).
+     * Returns an empty Optional if they are not known, which is the default.
+     * Subclasses that parse or evaluate anything else, or read the parse
+     * state in another way, must override this method.
+     */
+    public Optional<ImmutableList<?>> getOperands() {
+        return Optional.empty();
+    }
+
     public boolean isLocal() {
         return true;
     }
@@ -16,18 +16,16 @@
 
 package io.parsingdata.metal.token;
 
-import static io.parsingdata.metal.Trampoline.complete;
-import static io.parsingdata.metal.Trampoline.intermediate;
 import static io.parsingdata.metal.Util.checkNotNull;
 import static io.parsingdata.metal.Util.failure;
+import static io.parsingdata.metal.Util.operands;
+import static io.parsingdata.metal.data.Selection.findDefinition;
 
 import java.util.Objects;
 import java.util.Optional;
 
-import io.parsingdata.metal.Trampoline;
 import io.parsingdata.metal.data.Environment;
 import io.parsingdata.metal.data.ImmutableList;
-import io.parsingdata.metal.data.ParseItem;
 import io.parsingdata.metal.data.ParseState;
 import io.parsingdata.metal.encoding.Encoding;
 
@@ -63,26 +61,17 @@ public class TokenRef extends Token {
 
     @Override
     protected Optional<ParseState> parseImpl(final Environment environment) {
-        return lookup(ImmutableList.create(environment.parseState.order), referenceName).computeResult().parse(environment);
+        return getCanonical(environment.parseState).parse(environment);
     }
 
-    private Trampoline<Token> lookup(final ImmutableList<ParseItem> items, final String referenceName) {
-        if (items.isEmpty()) {
-            return complete(() -> LOOKUP_FAILED);
-        }
-        final ParseItem item = items.head;
-        if (item.getDefinition().name.equals(referenceName)) {
-            return complete(item::getDefinition);
-        }
-        if (item.isGraph() && !item.asGraph().isEmpty()) {
-            return intermediate(() -> lookup(items.tail.add(item.asGraph().tail).add(item.asGraph().head), referenceName));
-        }
-        return intermediate(() -> lookup(items.tail, referenceName));
+    @Override
+    public Token getCanonical(final ParseState parseState) {
+        return findDefinition(parseState.order, referenceName).orElse(LOOKUP_FAILED);
     }
 
     @Override
-    public Token getCanonical(final ParseState parseState) {
-        return lookup(ImmutableList.create(parseState.order), referenceName).computeResult();
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands();
     }
 
     @Override
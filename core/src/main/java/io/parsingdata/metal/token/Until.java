@@ -21,8 +21,10 @@ import static java.math.BigInteger.ZERO;
 import static io.parsingdata.metal.Shorthand.con;
 import static io.parsingdata.metal.Trampoline.complete;
 import static io.parsingdata.metal.Trampoline.intermediate;
+import static io.parsingdata.metal.Util.add;
 import static io.parsingdata.metal.Util.checkNotEmpty;
 import static io.parsingdata.metal.Util.checkNotNull;
+import static io.parsingdata.metal.Util.operands;
 import static io.parsingdata.metal.Util.success;
 
 import java.math.BigInteger;
@@ -112,11 +114,11 @@ public class Until extends Token {
     }
 
     private Trampoline<Optional<ParseState>> parseSlice(final Environment environment, final BigInteger currentSize, final BigInteger stepSize, final BigInteger maxSize, final Slice slice) {
-        return (currentSize.compareTo(ZERO) == 0 ? Optional.of(environment.parseState) : environment.parseState.add(new ParseValue(name, this, slice, environment.encoding)).seek(environment.parseState.offset.add(currentSize)))
+        return (currentSize.compareTo(ZERO) == 0 ? Optional.of(environment.parseState) : environment.parseState.add(new ParseValue(name, this, slice, environment.encoding)).seek(add(environment.parseState.offset, currentSize)))
             .map(preparedParseState -> terminator.parse(environment.withParseState(preparedParseState)))
             .orElseGet(Util::failure)
             .map(parsedParseState -> complete(() -> success(parsedParseState)))
-            .orElseGet(() -> intermediate(() -> iterate(environment, currentSize.add(stepSize), stepSize, maxSize)));
+            .orElseGet(() -> intermediate(() -> iterate(environment, add(currentSize, stepSize), stepSize, maxSize)));
     }
 
     private boolean checkNotValidList(final ImmutableList<Optional<Value>> list) {
@@ -127,6 +129,11 @@ public class Until extends Token {
         return list.head.get().asNumeric();
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(initialSize, stepSize, maxSize, terminator);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + makeNameFragment() + initialSize + "," + stepSize + "," + maxSize + "," + terminator + ")";
@@ -18,11 +18,13 @@ package io.parsingdata.metal.token;
 
 import static io.parsingdata.metal.Shorthand.TRUE;
 import static io.parsingdata.metal.Util.failure;
+import static io.parsingdata.metal.Util.operands;
 
 import java.util.Objects;
 import java.util.Optional;
 
 import io.parsingdata.metal.data.Environment;
+import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
 import io.parsingdata.metal.encoding.Encoding;
 import io.parsingdata.metal.expression.Expression;
@@ -54,6 +56,11 @@ public class While extends IterableToken {
         return super.parse(environment, env -> !predicate.eval(env.parseState, env.encoding), env -> failure());
     }
 
+    @Override
+    public Optional<ImmutableList<?>> getOperands() {
+        return operands(token, predicate);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + makeNameFragment() + token + "," + predicate + ")";
@@ -218,7 +218,9 @@ public class AutoEqualityTest {
     }
 
     private static Object[] generateObjectArrays(Class c) throws IllegalAccessException, InvocationTargetException, InstantiationException {
-        Constructor cons = c.getDeclaredConstructors()[0];
+        // Classes with a public constructor may have private ones for internal use.
+        final Constructor[] publicConstructors = c.getConstructors();
+        Constructor cons = publicConstructors.length > 0 ? publicConstructors[0] : c.getDeclaredConstructors()[0];
         cons.setAccessible(true);
         List<List<Supplier<Object>>> args = new ArrayList<>();
         for (Class cl : cons.getParameterTypes()) {
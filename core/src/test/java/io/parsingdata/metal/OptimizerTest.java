@@ -0,0 +1,170 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.TRUE;
+import static io.parsingdata.metal.Shorthand.add;
+import static io.parsingdata.metal.Shorthand.and;
+import static io.parsingdata.metal.Shorthand.cat;
+import static io.parsingdata.metal.Shorthand.cho;
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.def;
+import static io.parsingdata.metal.Shorthand.eq;
+import static io.parsingdata.metal.Shorthand.eqNum;
+import static io.parsingdata.metal.Shorthand.last;
+import static io.parsingdata.metal.Shorthand.mul;
+import static io.parsingdata.metal.Shorthand.neg;
+import static io.parsingdata.metal.Shorthand.not;
+import static io.parsingdata.metal.Shorthand.optimize;
+import static io.parsingdata.metal.Shorthand.or;
+import static io.parsingdata.metal.Shorthand.post;
+import static io.parsingdata.metal.Shorthand.ref;
+import static io.parsingdata.metal.Shorthand.rep;
+import static io.parsingdata.metal.Shorthand.repn;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.Shorthand.sub;
+import static io.parsingdata.metal.data.Selection.getAllValues;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EncodingFactory.signed;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+import static io.parsingdata.metal.util.ParseStateFactory.stream;
+
+import java.util.Optional;
+
+import org.junit.Test;
+
+import io.parsingdata.metal.data.ImmutableList;
+import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.data.ParseValue;
+import io.parsingdata.metal.expression.Expression;
+import io.parsingdata.metal.expression.FoldedExpression;
+import io.parsingdata.metal.expression.comparison.Eq;
+import io.parsingdata.metal.expression.value.CompiledValueExpression;
+import io.parsingdata.metal.expression.value.FoldedValueExpression;
+import io.parsingdata.metal.expression.value.arithmetic.Add;
+import io.parsingdata.metal.expression.value.ValueExpression;
+import io.parsingdata.metal.token.Def;
+import io.parsingdata.metal.token.Post;
+import io.parsingdata.metal.token.RepN;
+import io.parsingdata.metal.token.Seq;
+import io.parsingdata.metal.token.Token;
+
+public class OptimizerTest {
+
+    private static final ParseState PARSE_STATE = stream(1, 2, 3);
+
+    @Test
+    public void foldConstants() {
+        final ValueExpression folded = Optimizer.optimize(sub(con(4), con(2)));
+        assertTrue(folded instanceof FoldedValueExpression);
+        assertSame(folded.eval(PARSE_STATE, enc()), folded.eval(PARSE_STATE, enc()));
+        assertEquals(sub(con(4), con(2)).eval(PARSE_STATE, enc()), folded.eval(PARSE_STATE, enc()));
+        final ValueExpression negative = Optimizer.optimize(neg(con(1)));
+        assertEquals(neg(con(1)).eval(PARSE_STATE, signed()), negative.eval(PARSE_STATE, signed()));
+        assertEquals(neg(con(1)).eval(PARSE_STATE, enc()), negative.eval(PARSE_STATE, enc()));
+        final ValueExpression mixed = Optimizer.optimize(add(last(ref("a")), mul(con(2), con(3))));
+        assertEquals(add(last(ref("a")), new FoldedValueExpression(mul(con(2), con(3)))), mixed);
+        final ValueExpression variable = last(ref("a"));
+        assertSame(variable, Optimizer.optimize(variable));
+        assertTrue(Optimizer.optimize(eqNum(con(1), con(1))) instanceof FoldedExpression);
+    }
+
+    @Test
+    public void keepUnlistedSubclasses() {
+        final ValueExpression custom = new Add(add(con(1), con(0)), con(2)) {};
+        assertSame(custom, Optimizer.optimize(custom));
+        final Expression comparison = new Eq(add(con(1), con(0)), con(1)) {};
+        assertSame(comparison, Optimizer.optimize(comparison));
+    }
+
+    @Test
+    public void simplifyLogic() {
+        final Expression x = eq(con(1));
+        assertSame(x, Optimizer.optimize(and(TRUE, x)));
+        assertSame(x, Optimizer.optimize(and(x, TRUE)));
+        assertSame(TRUE, Optimizer.optimize(or(TRUE, x)));
+        assertSame(x, Optimizer.optimize(or(not(TRUE), x)));
+        assertSame(x, Optimizer.optimize(or(x, not(TRUE))));
+        assertSame(x, Optimizer.optimize(not(not(x))));
+        assertEquals(not(TRUE), Optimizer.optimize(and(not(TRUE), x)));
+        assertEquals(or(x, TRUE), Optimizer.optimize(or(x, TRUE)));
+        assertSame(x, Optimizer.optimize(and(TRUE, and(x, or(not(TRUE), TRUE)))));
+    }
+
+    @Test
+    public void rewriteTokens() {
+        final Token size = def("size", add(con(1), con(0)));
+        final Token format = seq("format",
+            size,
+            rep(cho(def("small", con(1), eq(con(2))), def("large", mul(con(1), con(2))))),
+            post(def("data", last(ref(size))), and(TRUE, eq(cat(con(3), con(3))))));
+        final Token optimized = optimize(format);
+        assertNotSame(format, optimized);
+        final Token optimizedSize = ((Seq) optimized).tokens.head;
+        assertTrue(((Def) optimizedSize).size instanceof FoldedValueExpression);
+        final Token unchanged = seq(def("a", last(ref("b"))), def("b", con(1)));
+        assertSame(unchanged, optimize(unchanged));
+        assertSameValues(format, optimized, 1, 2, 2, 3, 3);
+        assertSameValues(format, optimized, 1, 2, 5, 6, 3, 3);
+        assertSameValues(format, optimized, 1, 2, 3, 3, 3);
+    }
+
+    @Test
+    public void compileExpressions() {
+        final Seq format = (Seq) seq(def("size", con(1)),
+                                     post(def("data", add(last(ref("size")), con(0))), eq(mul(last(ref("size")), con(2)))),
+                                     def("rest", last(ref("size"))));
+        final Seq optimized = (Seq) optimize(format);
+        final Token data = ((Post) optimized.tokens.tail.head).token;
+        assertTrue(((Def) data).size instanceof CompiledValueExpression);
+        assertTrue(((Eq) ((Post) optimized.tokens.tail.head).predicate).predicate instanceof CompiledValueExpression);
+        assertSame(format.tokens.tail.tail.head, optimized.tokens.tail.tail.head);
+        assertSameValues(format, optimized, 1, 2, 3);
+        assertSameValues(format, optimized, 1, 3, 3);
+    }
+
+    @Test
+    public void shareTokens() {
+        final Token shared = def("a", add(con(1), con(0)));
+        final Seq optimized = (Seq) optimize(seq(shared, repn(shared, sub(con(3), con(1)))));
+        assertSame(optimized.tokens.head, ((RepN) optimized.tokens.tail.head).token);
+        assertSameValues(seq(shared, repn(shared, sub(con(3), con(1)))), optimized, 1, 2, 3);
+    }
+
+    private static void assertSameValues(final Token original, final Token optimized, final int... data) {
+        final Optional<ParseState> expected = original.parse(env(stream(data)));
+        final Optional<ParseState> actual = optimized.parse(env(stream(data)));
+        assertEquals(expected.isPresent(), actual.isPresent());
+        if (expected.isPresent()) {
+            assertEquals(expected.get().offset, actual.get().offset);
+            ImmutableList<ParseValue> expectedValues = getAllValues(expected.get().order, value -> true);
+            ImmutableList<ParseValue> actualValues = getAllValues(actual.get().order, value -> true);
+            assertEquals(expectedValues.size, actualValues.size);
+            for (; !expectedValues.isEmpty(); expectedValues = expectedValues.tail, actualValues = actualValues.tail) {
+                assertEquals(expectedValues.head.name, actualValues.head.name);
+                assertEquals(expectedValues.head.slice, actualValues.head.slice);
+                assertEquals(Optimizer.optimize(expectedValues.head.definition), actualValues.head.definition);
+            }
+        }
+    }
+
+}
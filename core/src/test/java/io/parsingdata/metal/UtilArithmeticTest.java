@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal;
+
+import static java.math.BigInteger.ONE;
+import static java.math.BigInteger.TEN;
+import static java.math.BigInteger.ZERO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Util.add;
+import static io.parsingdata.metal.Util.isWithin;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class UtilArithmeticTest {
+
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    @Test
+    public void addSmall() {
+        assertEquals(BigInteger.valueOf(11), add(TEN, ONE));
+        assertEquals(BigInteger.valueOf(9), add(TEN, -1));
+        assertEquals(BigInteger.valueOf(-5), add(ZERO, -5));
+        assertSame(add(TEN, TEN), add(TEN, TEN));
+    }
+
+    @Test
+    public void addOverflow() {
+        assertEquals(LONG_MAX.add(ONE), add(LONG_MAX, ONE));
+        assertEquals(LONG_MAX.add(ONE), add(LONG_MAX, 1));
+        assertEquals(LONG_MIN.subtract(ONE), add(LONG_MIN, -1));
+        assertEquals(LONG_MAX.add(LONG_MAX), add(LONG_MAX, LONG_MAX));
+        assertEquals(ONE.shiftLeft(100).add(TEN), add(ONE.shiftLeft(100), TEN));
+        assertEquals(ONE.shiftLeft(100).add(TEN), add(TEN, ONE.shiftLeft(100)));
+    }
+
+    @Test
+    public void within() {
+        assertTrue(isWithin(ZERO, TEN, 10));
+        assertTrue(isWithin(TEN, ZERO, 10));
+        assertFalse(isWithin(ONE, TEN, 10));
+        assertFalse(isWithin(LONG_MAX, ONE, Long.MAX_VALUE));
+        assertTrue(isWithin(LONG_MAX.subtract(ONE), ONE, Long.MAX_VALUE));
+        assertFalse(isWithin(ONE.shiftLeft(100), ZERO, Long.MAX_VALUE));
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static java.math.BigInteger.ZERO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.def;
+import static io.parsingdata.metal.Shorthand.eq;
+import static io.parsingdata.metal.Shorthand.last;
+import static io.parsingdata.metal.Shorthand.ref;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.Shorthand.toByteArray;
+import static io.parsingdata.metal.data.ParseState.createFromByteStream;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import io.parsingdata.metal.util.InMemoryByteStream;
+
+public class CachingByteStreamTest {
+
+    private static final byte[] DATA = toByteArray(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+    @Rule public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void readWithinPage() throws IOException {
+        final CountingByteStream input = new CountingByteStream(DATA);
+        final CachingByteStream stream = new CachingByteStream(input, new PageCache(4, 4));
+        assertArrayEquals(toByteArray(1, 2), stream.read(BigInteger.ONE, 2));
+        assertArrayEquals(toByteArray(2, 3), stream.read(BigInteger.valueOf(2), 2));
+        assertEquals(1, input.reads.get());
+        assertEquals(1, stream.cache.getMissCount());
+        assertEquals(1, stream.cache.getHitCount());
+    }
+
+    @Test
+    public void readAcrossPages() throws IOException {
+        final CountingByteStream input = new CountingByteStream(DATA);
+        final CachingByteStream stream = new CachingByteStream(input, new PageCache(3, 4));
+        assertArrayEquals(toByteArray(2, 3, 4, 5, 6), stream.read(BigInteger.valueOf(2), 5));
+        assertEquals(3, input.reads.get());
+        assertArrayEquals(toByteArray(0, 1, 2, 3, 4, 5, 6, 7, 8), stream.read(ZERO, 9));
+        assertEquals(3, input.reads.get());
+        assertEquals(3, stream.cache.getHitCount());
+    }
+
+    @Test
+    public void readPartialLastPage() throws IOException {
+        final CountingByteStream input = new CountingByteStream(DATA);
+        final CachingByteStream stream = new CachingByteStream(input, new PageCache(4, 4));
+        assertArrayEquals(toByteArray(7, 8, 9), stream.read(BigInteger.valueOf(7), 3));
+        assertArrayEquals(DATA, stream.read(ZERO, DATA.length));
+        assertEquals(0, stream.cache.size());
+        assertEquals(2, input.reads.get());
+        assertArrayEquals(new byte[0], stream.read(BigInteger.valueOf(10), 0));
+    }
+
+    @Test
+    public void bufferWithinPage() throws IOException {
+        final CountingByteStream input = new CountingByteStream(DATA);
+        final CachingByteStream stream = new CachingByteStream(input, new PageCache(4, 4));
+        final ByteBuffer withinPage = stream.asByteBuffer(BigInteger.valueOf(5), 3);
+        assertTrue(withinPage.isReadOnly());
+        assertEquals(ByteBuffer.wrap(toByteArray(5, 6, 7)), withinPage);
+        assertEquals(ByteBuffer.wrap(toByteArray(4, 5, 6, 7)), stream.asByteBuffer(BigInteger.valueOf(4), 4));
+        for (int offset = 4; offset < 8; offset++) {
+            assertEquals(DATA[offset], stream.getByte(BigInteger.valueOf(offset)));
+        }
+        assertEquals(1, input.reads.get());
+        assertEquals(ByteBuffer.wrap(toByteArray(3, 4)), stream.asByteBuffer(BigInteger.valueOf(3), 2));
+        assertEquals(ByteBuffer.wrap(toByteArray(8, 9)), stream.asByteBuffer(BigInteger.valueOf(8), 2));
+        assertEquals(9, stream.getByte(BigInteger.valueOf(9)));
+        assertEquals(0, stream.asByteBuffer(BigInteger.valueOf(10), 0).remaining());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws IOException {
+        final CountingByteStream input = new CountingByteStream(DATA);
+        final CachingByteStream stream = new CachingByteStream(input, new PageCache(2, 2, 1));
+        stream.read(ZERO, 1);
+        stream.read(BigInteger.valueOf(2), 1);
+        stream.read(ZERO, 1);
+        stream.read(BigInteger.valueOf(4), 1); // evicts page 1
+        assertEquals(2, stream.cache.size());
+        stream.read(ZERO, 1);
+        assertEquals(3, input.reads.get());
+        stream.read(BigInteger.valueOf(2), 1);
+        assertEquals(4, input.reads.get());
+        stream.cache.clear();
+        assertEquals(0, stream.cache.size());
+    }
+
+    @Test
+    public void sharePagesBetweenStreams() throws IOException {
+        final PageCache cache = new PageCache(4, 8);
+        final CachingByteStream first = new CachingByteStream(new InMemoryByteStream(DATA), cache);
+        final CachingByteStream second = new CachingByteStream(new InMemoryByteStream(DATA), cache);
+        final CachingByteStream other = new CachingByteStream(new InMemoryByteStream(toByteArray(9, 8, 7, 6)), cache);
+        assertArrayEquals(toByteArray(0, 1, 2, 3), first.read(ZERO, 4));
+        assertArrayEquals(toByteArray(0, 1, 2, 3), second.read(ZERO, 4));
+        assertArrayEquals(toByteArray(9, 8, 7, 6), other.read(ZERO, 4));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void concurrentReads() throws Exception {
+        final byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        final CachingByteStream stream = new CachingByteStream(new InMemoryByteStream(data), new PageCache(64, 16, 4));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                final int seed = thread;
+                results.add(executor.submit((Callable<Boolean>) () -> {
+                    for (int i = 0; i < 500; i++) {
+                        final int offset = (seed * 997 + i * 131) % (data.length - 100);
+                        final byte[] read = stream.read(BigInteger.valueOf(offset), 100);
+                        for (int j = 0; j < read.length; j++) {
+                            if (read[j] != data[offset + j]) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertTrue(stream.cache.size() <= 16);
+    }
+
+    @Test
+    public void parse() {
+        final Optional<ParseState> result =
+            seq(def("size", con(1)),
+                def("data", last(ref("size")), eq(con(4, 5, 6))))
+                .parse(env(createFromByteStream(new CachingByteStream(new InMemoryByteStream(DATA), new PageCache(2, 4)), BigInteger.valueOf(3)), enc()));
+        assertTrue(result.isPresent());
+        assertEquals(7, result.get().offset.intValueExact());
+    }
+
+    @Test
+    public void readUnavailable() throws IOException {
+        final CachingByteStream stream = new CachingByteStream(new InMemoryByteStream(DATA), new PageCache(4, 4));
+        assertFalse(stream.isAvailable(BigInteger.valueOf(8), 3));
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Data to read is not available (offset=8;length=3;stream=CachingByteStream(InMemoryByteStream(10),PageCache(pageSize:4;capacity:4;stripes:4))).");
+        stream.read(BigInteger.valueOf(8), 3);
+    }
+
+    @Test
+    public void invalidPageSize() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument pageSize must be positive.");
+        new PageCache(0, 4);
+    }
+
+    @Test
+    public void invalidCapacity() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument capacity may not be smaller than stripeCount.");
+        new PageCache(4, 2, 4);
+    }
+
+    private static class CountingByteStream extends InMemoryByteStream {
+
+        final AtomicInteger reads = new AtomicInteger();
+
+        CountingByteStream(final byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public byte[] read(final BigInteger offset, final int length) throws IOException {
+            reads.incrementAndGet();
+            return super.read(offset, length);
+        }
+
+    }
+
+}
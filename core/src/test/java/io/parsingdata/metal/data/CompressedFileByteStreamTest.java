@@ -0,0 +1,293 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static java.math.BigInteger.ZERO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.def;
+import static io.parsingdata.metal.Shorthand.eq;
+import static io.parsingdata.metal.Shorthand.last;
+import static io.parsingdata.metal.Shorthand.ref;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.Shorthand.toByteArray;
+import static io.parsingdata.metal.data.InflateSourceTest.createData;
+import static io.parsingdata.metal.data.InflateSourceTest.deflate;
+import static io.parsingdata.metal.data.ParseState.createFromByteStream;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import io.parsingdata.metal.data.CompressedFileByteStream.Format;
+
+public class CompressedFileByteStreamTest {
+
+    @Rule public final ExpectedException thrown = ExpectedException.none();
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(final byte[] data) throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, data);
+        return path;
+    }
+
+    private static byte[] gzip(final byte[] data) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(data);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] gzipWithName(final byte[] data, final String name) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(toByteArray(0x1f, 0x8b, 8, 0x08, 0, 0, 0, 0, 0, 0xff));
+        output.write(name.getBytes(StandardCharsets.US_ASCII));
+        output.write(0);
+        output.write(deflate(data, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY));
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        writeInt(output, crc.getValue());
+        writeInt(output, data.length);
+        return output.toByteArray();
+    }
+
+    private static void writeInt(final ByteArrayOutputStream output, final long value) {
+        for (int i = 0; i < 4; i++) {
+            output.write((int) (value >>> (i * 8)));
+        }
+    }
+
+    private static byte[] concat(final byte[]... parts) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (final byte[] part : parts) {
+            output.write(part);
+        }
+        return output.toByteArray();
+    }
+
+    private static void checkRandomReads(final byte[] data, final CompressedFileByteStream stream) throws IOException {
+        assertEquals(data.length, stream.size);
+        final Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            final int offset = random.nextInt(data.length);
+            final int length = random.nextInt(Math.min(3000, data.length - offset) + 1);
+            assertArrayEquals(Arrays.copyOfRange(data, offset, offset + length), stream.read(BigInteger.valueOf(offset), length));
+        }
+        assertArrayEquals(data, stream.read(ZERO, data.length));
+    }
+
+    @Test
+    public void rawDeflate() throws IOException {
+        final byte[] data = createData(300000);
+        checkRandomReads(data, CompressedFileByteStream.create(write(deflate(data, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY)), Format.RAW, 20000));
+    }
+
+    @Test
+    public void singleMemberGzip() throws IOException {
+        final byte[] data = createData(300000);
+        checkRandomReads(data, CompressedFileByteStream.create(write(gzip(data)), Format.GZIP, 20000));
+    }
+
+    @Test
+    public void multiMemberGzip() throws IOException {
+        final byte[] first = createData(100000);
+        final byte[] second = createData(150000);
+        final byte[] third = createData(50000);
+        final byte[] data = concat(first, new byte[0], second, third);
+        final Path path = write(concat(gzip(first), gzip(new byte[0]), gzipWithName(second, "second.bin"), gzip(third)));
+        checkRandomReads(data, CompressedFileByteStream.create(path, Format.GZIP, 20000));
+    }
+
+    @Test
+    public void readAcrossMembers() throws IOException {
+        final Path path = write(concat(gzip(toByteArray(1, 2, 3)), gzip(toByteArray(4, 5)), gzip(toByteArray(6, 7, 8))));
+        final CompressedFileByteStream stream = CompressedFileByteStream.create(path, Format.GZIP);
+        assertEquals(8, stream.size);
+        assertArrayEquals(toByteArray(3, 4, 5, 6), stream.read(BigInteger.valueOf(2), 4));
+        assertArrayEquals(toByteArray(1, 2, 3, 4, 5, 6, 7, 8), stream.read(ZERO, 8));
+        assertArrayEquals(new byte[0], stream.read(BigInteger.valueOf(8), 0));
+    }
+
+    @Test
+    public void boundedAccessPoints() throws IOException {
+        final byte[] first = createData(300000);
+        final byte[] second = createData(200000);
+        final byte[] data = concat(first, second);
+        final Path path = write(concat(gzip(first), gzip(second)));
+        final CompressedFileByteStream stream = CompressedFileByteStream.create(path, Format.GZIP, 1000, 4);
+        assertTrue(stream.getCheckpointCount() > 0);
+        assertTrue(stream.getCheckpointCount() <= 4);
+        checkRandomReads(data, stream);
+        final Path indexPath = folder.getRoot().toPath().resolve("index");
+        CompressedFileByteStream.create(path, Format.GZIP, indexPath, 1000, 4);
+        final CompressedFileByteStream loaded = CompressedFileByteStream.create(path, Format.GZIP, indexPath, 1000, 4);
+        assertEquals(stream.getCheckpointCount(), loaded.getCheckpointCount());
+        checkRandomReads(data, loaded);
+    }
+
+    @Test
+    public void readBackWithinWindow() throws IOException {
+        final byte[] data = createData(300000);
+        final CompressedFileByteStream stream = CompressedFileByteStream.create(write(gzip(data)), Format.GZIP, 20000);
+        for (int offset = 1000; offset < data.length - 5000; offset += 7919) {
+            assertEquals(data[offset], stream.getByte(BigInteger.valueOf(offset)));
+            assertEquals(ByteBuffer.wrap(data, offset, 3000), stream.asByteBuffer(BigInteger.valueOf(offset), 3000));
+            assertArrayEquals(Arrays.copyOfRange(data, offset - 1000, offset + 5000), stream.read(BigInteger.valueOf(offset - 1000), 6000));
+        }
+    }
+
+    @Test
+    public void persistIndex() throws IOException {
+        final byte[] data = createData(200000);
+        final Path path = write(concat(gzip(data), gzip(data)));
+        final Path indexPath = folder.getRoot().toPath().resolve("index");
+        final CompressedFileByteStream built = CompressedFileByteStream.create(path, Format.GZIP, indexPath, 10000);
+        assertTrue(Files.exists(indexPath));
+        final long lastModified = Files.getLastModifiedTime(indexPath).toMillis();
+        final CompressedFileByteStream loaded = CompressedFileByteStream.create(path, Format.GZIP, indexPath, 10000);
+        assertEquals(lastModified, Files.getLastModifiedTime(indexPath).toMillis());
+        assertEquals(built, loaded);
+        checkRandomReads(concat(data, data), loaded);
+    }
+
+    @Test
+    public void rebuildStaleIndex() throws IOException {
+        final Path path = write(gzip(createData(100000)));
+        final Path indexPath = folder.getRoot().toPath().resolve("index");
+        CompressedFileByteStream.create(path, Format.GZIP, indexPath, 10000);
+        final byte[] data = createData(50000);
+        Files.write(path, gzip(data));
+        checkRandomReads(data, CompressedFileByteStream.create(path, Format.GZIP, indexPath, 10000));
+        checkRandomReads(data, CompressedFileByteStream.create(path, Format.GZIP, indexPath, 10000));
+    }
+
+    @Test
+    public void rebuildCorruptIndex() throws IOException {
+        final byte[] data = createData(100000);
+        final Path path = write(gzip(data));
+        final Path indexPath = folder.getRoot().toPath().resolve("index");
+        CompressedFileByteStream.create(path, Format.GZIP, indexPath, 10000);
+        final byte[] index = Files.readAllBytes(indexPath);
+        Files.write(indexPath, Arrays.copyOf(index, index.length / 2));
+        checkRandomReads(data, CompressedFileByteStream.create(path, Format.GZIP, indexPath, 10000));
+        for (final int count : new int[] { -1, 0, Integer.MAX_VALUE }) {
+            // The member count follows the magic, version, format, size and modification time.
+            final byte[] corrupt = index.clone();
+            for (int i = 0; i < 4; i++) {
+                corrupt[28 + i] = (byte) (count >>> (24 - i * 8));
+            }
+            Files.write(indexPath, corrupt);
+            checkRandomReads(data, CompressedFileByteStream.create(path, Format.GZIP, indexPath, 10000));
+        }
+    }
+
+    @Test
+    public void invalidGzipHeader() throws IOException {
+        thrown.expect(IOException.class);
+        thrown.expectMessage("No gzip header at offset 0.");
+        CompressedFileByteStream.create(write(deflate(createData(1000), Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY)), Format.GZIP);
+    }
+
+    @Test
+    public void invalidGzipTrailer() throws IOException {
+        final byte[] gzip = gzip(createData(1000));
+        gzip[gzip.length - 5]++;
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Invalid gzip trailer at offset " + (gzip.length - 8) + ".");
+        CompressedFileByteStream.create(write(gzip), Format.GZIP);
+    }
+
+    @Test
+    public void invalidCompressedData() throws IOException {
+        final Path path = write(toByteArray(0xff, 0xff, 0xff, 0xff));
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Invalid compressed data in member at offset 0 of " + path + ".");
+        CompressedFileByteStream.create(path, Format.RAW);
+    }
+
+    @Test
+    public void readUnavailable() throws IOException {
+        final Path path = write(gzip(toByteArray(1, 2, 3)));
+        final CompressedFileByteStream stream = CompressedFileByteStream.create(path, Format.GZIP);
+        assertFalse(stream.isAvailable(BigInteger.valueOf(2), 2));
+        assertFalse(stream.isAvailable(BigInteger.valueOf(-1), 1));
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Data to read is not available (offset=2;length=2;stream=CompressedFileByteStream(" + path + ":GZIP:3)).");
+        stream.read(BigInteger.valueOf(2), 2);
+    }
+
+    @Test
+    public void invalidAccessPointSpan() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument accessPointSpan must be positive.");
+        CompressedFileByteStream.create(write(gzip(new byte[0])), Format.GZIP, 0);
+    }
+
+    @Test
+    public void invalidMaxAccessPoints() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument maxAccessPoints must be positive.");
+        CompressedFileByteStream.create(write(gzip(new byte[0])), Format.GZIP, 1000, 0);
+    }
+
+    @Test
+    public void equality() throws IOException {
+        final Path path = write(gzip(toByteArray(1, 2, 3)));
+        final CompressedFileByteStream stream = CompressedFileByteStream.create(path, Format.GZIP);
+        assertEquals(stream, CompressedFileByteStream.create(path, Format.GZIP));
+        assertEquals(stream.hashCode(), CompressedFileByteStream.create(path, Format.GZIP).hashCode());
+        assertNotEquals(stream, CompressedFileByteStream.create(write(gzip(toByteArray(1, 2, 3))), Format.GZIP));
+        assertNotEquals(stream, null);
+    }
+
+    @Test
+    public void parse() throws IOException {
+        final Path path = write(concat(gzip(toByteArray(0, 1, 2, 3)), gzip(toByteArray(4, 5, 6, 7, 8, 9))));
+        final Optional<ParseState> result =
+            seq(def("size", con(1)),
+                def("data", last(ref("size")), eq(con(4, 5, 6))))
+                .parse(env(createFromByteStream(CompressedFileByteStream.create(path, Format.GZIP), BigInteger.valueOf(3)), enc()));
+        assertTrue(result.isPresent());
+        assertEquals(7, result.get().offset.intValueExact());
+    }
+
+}
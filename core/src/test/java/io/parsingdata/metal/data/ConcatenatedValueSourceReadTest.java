@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.toByteArray;
+import static io.parsingdata.metal.data.Slice.createFromSource;
+import static io.parsingdata.metal.expression.value.ConstantFactory.createFromBytes;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+
+import java.math.BigInteger;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import io.parsingdata.metal.expression.value.Value;
+import io.parsingdata.metal.util.InMemoryByteStream;
+import io.parsingdata.metal.util.ReadTrackingByteStream;
+
+public class ConcatenatedValueSourceReadTest {
+
+    private static final int PART_COUNT = 1000;
+    private static final int PART_SIZE = 4;
+
+    private final ReadTrackingByteStream stream = new ReadTrackingByteStream(new InMemoryByteStream(createData()));
+    private final ConcatenatedValueSource source = ConcatenatedValueSource.create(createValues(new ByteStreamSource(stream))).get();
+
+    private static byte[] createData() {
+        final byte[] data = new byte[PART_COUNT * PART_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static ImmutableList<Optional<Value>> createValues(final Source input) {
+        ImmutableList<Optional<Value>> values = new ImmutableList<>();
+        for (int i = 0; i < PART_COUNT; i++) {
+            values = values.add(Optional.of(new Value(createFromSource(input, BigInteger.valueOf(i * PART_SIZE), BigInteger.valueOf(PART_SIZE)).get(), enc())));
+        }
+        return values;
+    }
+
+    @Test
+    public void length() {
+        assertEquals(BigInteger.valueOf(PART_COUNT * PART_SIZE), source.length);
+    }
+
+    @Test
+    public void readOnlyRequiredRange() {
+        assertArrayEquals(toByteArray(0xd1, 0xd2, 0xd3), source.getData(BigInteger.valueOf(2001), BigInteger.valueOf(3)));
+        assertTrue(stream.containsAll(2001, 2002, 2003));
+        assertTrue(stream.containsNone(1999, 2000, 2004, 2005));
+    }
+
+    @Test
+    public void readAcrossParts() {
+        assertArrayEquals(toByteArray(0xfe, 0xff, 0x00, 0x01, 0x02, 0x03), source.getData(BigInteger.valueOf(3838), BigInteger.valueOf(6)));
+        assertTrue(stream.containsNone(3837, 3844));
+    }
+
+    @Test
+    public void readIntoThroughSlice() {
+        final byte[] destination = new byte[5];
+        createFromSource(source, BigInteger.valueOf(3996), BigInteger.valueOf(4)).get().readInto(destination, 1);
+        assertArrayEquals(toByteArray(0x00, 0x9c, 0x9d, 0x9e, 0x9f), destination);
+        assertTrue(stream.containsNone(3995));
+    }
+
+    @Test
+    public void readAcrossEmptyParts() {
+        final ConcatenatedValueSource withEmptyParts = ConcatenatedValueSource.create(ImmutableList
+            .create(Optional.of(createFromBytes(toByteArray(0, 1), enc())))
+            .add(Optional.of(createFromBytes(new byte[0], enc())))
+            .add(Optional.of(createFromBytes(new byte[0], enc())))
+            .add(Optional.of(createFromBytes(toByteArray(2, 3), enc())))
+            .add(Optional.of(createFromBytes(new byte[0], enc())))
+            .add(Optional.of(createFromBytes(toByteArray(4, 5), enc())))
+            .add(Optional.of(createFromBytes(new byte[0], enc())))).get();
+        assertEquals(BigInteger.valueOf(6), withEmptyParts.length);
+        assertArrayEquals(toByteArray(0, 1, 2, 3, 4, 5), withEmptyParts.getData(BigInteger.ZERO, BigInteger.valueOf(6)));
+        assertArrayEquals(toByteArray(1, 2, 3, 4), withEmptyParts.getData(BigInteger.ONE, BigInteger.valueOf(4)));
+        assertArrayEquals(toByteArray(2, 3), withEmptyParts.getData(BigInteger.valueOf(2), BigInteger.valueOf(2)));
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static java.math.BigInteger.ONE;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.rep;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.Shorthand.sub;
+import static io.parsingdata.metal.data.ParseGraph.EMPTY;
+import static io.parsingdata.metal.data.Selection.NO_LIMIT;
+import static io.parsingdata.metal.data.Selection.findDefinition;
+import static io.parsingdata.metal.data.Selection.findRootAtOffset;
+import static io.parsingdata.metal.data.Selection.getRecentValues;
+import static io.parsingdata.metal.data.Selection.hasRootAtOffset;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+import static io.parsingdata.metal.util.ParseStateFactory.stream;
+import static io.parsingdata.metal.util.TokenDefinitions.any;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import io.parsingdata.metal.token.Token;
+
+public class FrozenParseGraphTest {
+
+    private static final Token B = any("b");
+    private static final Token TOKEN = rep("r", seq("s", any("a"), seq("t", any("a"), B), rep("u", seq(any("a"), B, sub(any("s"), con(0))))));
+
+    @Rule public final ExpectedException thrown = ExpectedException.none();
+
+    private static ParseGraph parse() {
+        final Optional<ParseState> parseState = TOKEN.parse(env(stream(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16)));
+        assertTrue(parseState.isPresent());
+        return parseState.get().order;
+    }
+
+    @Test
+    public void thaw() {
+        final ParseGraph graph = parse();
+        final FrozenParseGraph frozen = FrozenParseGraph.freeze(graph);
+        final ParseGraph thawed = frozen.thaw();
+        assertEquals(graph, thawed);
+        assertNotNull(thawed.index);
+        assertEquals(frozen, FrozenParseGraph.freeze(thawed));
+        assertEquals(frozen.hashCode(), FrozenParseGraph.freeze(thawed).hashCode());
+    }
+
+    @Test
+    public void thawBranch() {
+        final ParseGraph branch = parse().head.asGraph();
+        final FrozenParseGraph frozen = FrozenParseGraph.freeze(branch);
+        assertEquals(branch.definition, frozen.definition);
+        assertEquals(branch, frozen.thaw());
+    }
+
+    @Test
+    public void thawEmpty() {
+        final FrozenParseGraph frozen = FrozenParseGraph.freeze(EMPTY);
+        assertEquals(0, frozen.size);
+        assertEquals(EMPTY, frozen.thaw());
+    }
+
+    @Test
+    public void recentValues() {
+        final ParseGraph graph = parse();
+        final FrozenParseGraph frozen = FrozenParseGraph.freeze(graph);
+        for (final String name : new String[] { "a", "b", "s", "t.a", "s.a", "r.s.t.a", "r.s.a", "u.b", "r", "x", "s.s" }) {
+            for (int limit = -1; limit < 6; limit++) {
+                assertEquals(getRecentValues(graph, name, limit), frozen.getRecentValues(name, limit));
+            }
+        }
+        for (int limit = -1; limit < 6; limit++) {
+            assertEquals(getRecentValues(graph, B, limit), frozen.getRecentValues(any("b"), limit));
+        }
+        assertEquals(0, frozen.getRecentValues(any("c"), NO_LIMIT).size);
+    }
+
+    @Test
+    public void definitions() {
+        final ParseGraph graph = parse();
+        final FrozenParseGraph frozen = FrozenParseGraph.freeze(graph);
+        for (final String name : new String[] { "r", "s", "t", "u", "a", "b", "x", "NONE" }) {
+            assertEquals(findDefinition(graph, name), frozen.findDefinition(name));
+        }
+        final ParseGraph branch = graph.head.asGraph();
+        assertEquals(findDefinition(branch, "r"), FrozenParseGraph.freeze(branch).findDefinition("r"));
+    }
+
+    @Test
+    public void roots() {
+        final ParseGraph graph = parse();
+        final Source source = graph.current().get().slice.source;
+        for (final ParseGraph root : new ParseGraph[] { graph, graph.head.asGraph() }) {
+            final FrozenParseGraph frozen = FrozenParseGraph.freeze(root);
+            for (final Token definition : getDefinitions(root, new HashSet<>())) {
+                for (int offset = -1; offset < 18; offset++) {
+                    final BigInteger location = BigInteger.valueOf(offset);
+                    assertEquals(findRootAtOffset(root, definition, location, source), frozen.findRootAtOffset(definition, location, source));
+                    assertEquals(hasRootAtOffset(root, definition, location, source), frozen.hasRootAtOffset(definition, location, source));
+                }
+                assertFalse(frozen.hasRootAtOffset(definition, ONE, new ConstantSource(new byte[4])));
+                assertFalse(frozen.hasRootAtOffset(definition, ONE.shiftLeft(64), source));
+            }
+        }
+    }
+
+    private static Set<Token> getDefinitions(final ParseItem item, final Set<Token> definitions) {
+        definitions.add(item.getDefinition());
+        if (item.isGraph() && !item.asGraph().isEmpty()) {
+            getDefinitions(item.asGraph().head, definitions);
+            getDefinitions(item.asGraph().tail, definitions);
+        }
+        return definitions;
+    }
+
+    @Test
+    public void references() {
+        final Source source = new ConstantSource(new byte[4]);
+        final ParseValue value = new ParseValue("a", B, Slice.createFromSource(source, ONE, ONE).get(), enc());
+        final ParseGraph graph = EMPTY.addBranch(TOKEN).add(value).closeBranch().add(new ParseReference(ONE, source, TOKEN));
+        final FrozenParseGraph frozen = FrozenParseGraph.freeze(graph);
+        assertEquals(3, frozen.size);
+        assertEquals(graph, frozen.thaw());
+        assertNotEquals(frozen, FrozenParseGraph.freeze(graph.add(new ParseReference(BigInteger.valueOf(2), source, TOKEN))));
+    }
+
+    @Test
+    public void openBranch() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument graph may not have open branches.");
+        FrozenParseGraph.freeze(EMPTY.addBranch(TOKEN));
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ImmutableMapTest {
+
+    @Test
+    public void putAndGet() {
+        final Map<Integer, Integer> expected = new HashMap<>();
+        ImmutableMap<Integer, Integer> map = ImmutableMap.empty();
+        final Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            final int key = random.nextInt();
+            expected.put(key, i);
+            map = map.put(key, i);
+        }
+        for (final Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertNull(map.get(42));
+    }
+
+    @Test
+    public void persistent() {
+        final ImmutableMap<String, Integer> first = ImmutableMap.<String, Integer>empty().put("a", 1);
+        final ImmutableMap<String, Integer> second = first.put("a", 2).put("b", 3);
+        assertEquals(Integer.valueOf(1), first.get("a"));
+        assertNull(first.get("b"));
+        assertEquals(Integer.valueOf(2), second.get("a"));
+        assertEquals(Integer.valueOf(3), second.get("b"));
+        assertNull(ImmutableMap.<String, Integer>empty().get("a"));
+    }
+
+    @Test
+    public void hashCollisions() {
+        ImmutableMap<Key, Integer> map = ImmutableMap.empty();
+        for (int i = 0; i < 100; i++) {
+            map = map.put(new Key(i, i % 3 == 0 ? 7 : -i), i);
+        }
+        map = map.put(new Key(33, 7), 1000);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i == 33 ? 1000 : i), map.get(new Key(i, i % 3 == 0 ? 7 : -i)));
+        }
+        assertNull(map.get(new Key(100, 7)));
+        assertNull(map.get(new Key(1, 7)));
+    }
+
+    private static class Key {
+
+        final int id;
+        final int hash;
+
+        Key(final int id, final int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Key && ((Key) obj).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static java.math.BigInteger.ZERO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.def;
+import static io.parsingdata.metal.Shorthand.eq;
+import static io.parsingdata.metal.Shorthand.last;
+import static io.parsingdata.metal.Shorthand.ref;
+import static io.parsingdata.metal.Shorthand.rep;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.Shorthand.tie;
+import static io.parsingdata.metal.Util.inflate;
+import static io.parsingdata.metal.data.Slice.createFromBytes;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import io.parsingdata.metal.expression.value.Value;
+import io.parsingdata.metal.util.InMemoryByteStream;
+
+public class InflateSourceTest {
+
+    @Rule public final ExpectedException thrown = ExpectedException.none();
+
+    static byte[] createData(final int size) {
+        final Random random = new Random(size);
+        final byte[] words = "metal parses data structures in binary formats ".getBytes(StandardCharsets.US_ASCII);
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            // Mix repetitive text (back-references) with random bytes (literals).
+            data[i] = (i / 1000) % 3 == 0 ? (byte) random.nextInt() : words[(i * 7 + i / 500) % words.length];
+        }
+        return data;
+    }
+
+    static byte[] deflate(final byte[] data, final int level, final int strategy) {
+        final Deflater deflater = new Deflater(level, true);
+        deflater.setStrategy(strategy);
+        deflater.setInput(data);
+        deflater.finish();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            output.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return output.toByteArray();
+    }
+
+    private static void checkRandomReads(final byte[] data, final InflateSource source) {
+        assertEquals(BigInteger.valueOf(data.length), source.length);
+        final Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            final int offset = random.nextInt(data.length);
+            final int length = random.nextInt(Math.min(3000, data.length - offset) + 1);
+            assertArrayEquals(Arrays.copyOfRange(data, offset, offset + length), source.getData(BigInteger.valueOf(offset), BigInteger.valueOf(length)));
+        }
+        assertArrayEquals(data, source.getData(ZERO, source.length));
+    }
+
+    @Test
+    public void dynamicHuffman() {
+        final byte[] data = createData(300000);
+        checkRandomReads(data, InflateSource.create(createFromBytes(deflate(data, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY)), 20000).get());
+    }
+
+    @Test
+    public void stored() {
+        final byte[] data = createData(200000);
+        checkRandomReads(data, InflateSource.create(createFromBytes(deflate(data, Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY)), 10000).get());
+    }
+
+    @Test
+    public void huffmanOnly() {
+        final byte[] data = createData(100000);
+        checkRandomReads(data, InflateSource.create(createFromBytes(deflate(data, Deflater.DEFAULT_COMPRESSION, Deflater.HUFFMAN_ONLY)), 5000).get());
+    }
+
+    @Test
+    public void fixedHuffman() {
+        final byte[] data = "abcabcabcabc".getBytes(StandardCharsets.US_ASCII);
+        final InflateSource source = InflateSource.create(createFromBytes(deflate(data, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY))).get();
+        assertArrayEquals(data, source.getData(ZERO, source.length));
+        assertArrayEquals("cabc".getBytes(StandardCharsets.US_ASCII), source.getData(BigInteger.valueOf(8), BigInteger.valueOf(4)));
+    }
+
+    @Test
+    public void empty() {
+        final InflateSource source = InflateSource.create(createFromBytes(deflate(new byte[0], Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY))).get();
+        assertEquals(ZERO, source.length);
+        assertTrue(source.isAvailable(ZERO, ZERO));
+        assertFalse(source.isAvailable(ZERO, BigInteger.ONE));
+    }
+
+    @Test
+    public void compressedDataInByteStream() {
+        final byte[] data = createData(100000);
+        final byte[] compressed = deflate(data, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        final byte[] padded = new byte[compressed.length + 10];
+        System.arraycopy(compressed, 0, padded, 5, compressed.length);
+        final Slice slice = Slice.createFromSource(new ByteStreamSource(new InMemoryByteStream(padded)), BigInteger.valueOf(5), BigInteger.valueOf(compressed.length)).get();
+        checkRandomReads(data, InflateSource.create(slice, 4096).get());
+    }
+
+    @Test
+    public void invalidData() {
+        assertFalse(InflateSource.create(createFromBytes(new byte[] { -1, -1, -1, -1 })).isPresent());
+    }
+
+    @Test
+    public void truncatedData() {
+        final byte[] compressed = deflate(createData(10000), Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        assertFalse(InflateSource.create(createFromBytes(Arrays.copyOf(compressed, compressed.length / 2))).isPresent());
+    }
+
+    @Test
+    public void invalidCheckpointSpan() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument checkpointSpan must be positive.");
+        InflateSource.create(createFromBytes(new byte[] { 3, 0 }), 0);
+    }
+
+    @Test
+    public void invalidMaxCheckpoints() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument maxCheckpoints must be positive.");
+        InflateSource.create(createFromBytes(new byte[] { 3, 0 }), 1, 0);
+    }
+
+    @Test
+    public void limitCheckpoints() {
+        final byte[] data = createData(300000);
+        final InflateSource source = InflateSource.create(createFromBytes(deflate(data, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY)), 1000, 4).get();
+        assertTrue(source.getCheckpointCount() > 0);
+        assertTrue(source.getCheckpointCount() <= 4);
+        checkRandomReads(data, source);
+    }
+
+    @Test
+    public void keepSmallDataInMemory() {
+        final byte[] data = createData(100000);
+        final CountingByteStream input = new CountingByteStream(deflate(data, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY));
+        final Slice slice = Slice.createFromSource(new ByteStreamSource(input), ZERO, BigInteger.valueOf(input.length)).get();
+        final InflateSource source = InflateSource.create(slice).get();
+        final int reads = input.reads;
+        checkRandomReads(data, source);
+        assertEquals(0, source.getCheckpointCount());
+        assertEquals(reads, input.reads);
+    }
+
+    @Test
+    public void readUnavailable() {
+        final InflateSource source = InflateSource.create(createFromBytes(deflate(new byte[] { 1, 2, 3 }, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY))).get();
+        thrown.expect(IllegalStateException.class);
+        thrown.expectMessage("Data to read is not available ([offset=2;length=2;source=InflateSource(");
+        source.getData(BigInteger.valueOf(2), BigInteger.valueOf(2));
+    }
+
+    @Test
+    public void inflateIsBackedByInflateSource() {
+        final byte[] compressed = deflate(createData(1000), Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        final Value value = inflate(con(compressed)).eval(ParseState.createFromByteStream(new InMemoryByteStream(new byte[0])), enc()).head.get();
+        assertTrue(value.slice.source instanceof InflateSource);
+        assertArrayEquals(createData(1000), value.getValue());
+    }
+
+    @Test
+    public void tieOverCompressedData() {
+        final byte[] data = createData(50000);
+        final byte[] compressed = deflate(data, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+        final Optional<ParseState> result =
+            seq(def("compressed", con(compressed.length)),
+                tie(rep(def("block", con(100))), inflate(last(ref("compressed")))),
+                def("footer", con(1), eq(con(42))))
+            .parse(env(ParseState.createFromByteStream(new InMemoryByteStream(concat(compressed, new byte[] { 42 }))), enc()));
+        assertTrue(result.isPresent());
+        assertArrayEquals(Arrays.copyOfRange(data, 49900, 50000), last(ref("block")).eval(result.get(), enc()).head.get().getValue());
+    }
+
+    private static class CountingByteStream extends InMemoryByteStream {
+
+        final int length;
+        int reads = 0;
+
+        CountingByteStream(final byte[] data) {
+            super(data);
+            length = data.length;
+        }
+
+        @Override
+        public byte[] read(final BigInteger offset, final int length) throws IOException {
+            reads++;
+            return super.read(offset, length);
+        }
+
+    }
+
+    private static byte[] concat(final byte[] left, final byte[] right) {
+        final byte[] result = Arrays.copyOf(left, left.length + right.length);
+        System.arraycopy(right, 0, result, left.length, right.length);
+        return result;
+    }
+
+}
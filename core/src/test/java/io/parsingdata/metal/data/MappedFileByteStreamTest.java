@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static java.math.BigInteger.ONE;
+import static java.math.BigInteger.ZERO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.def;
+import static io.parsingdata.metal.Shorthand.eq;
+import static io.parsingdata.metal.Shorthand.last;
+import static io.parsingdata.metal.Shorthand.ref;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.Shorthand.toByteArray;
+import static io.parsingdata.metal.data.ParseState.createFromByteStream;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedFileByteStreamTest {
+
+    private static final byte[] DATA = toByteArray(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+    @Rule public final ExpectedException thrown = ExpectedException.none();
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(final byte[] data) throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, data);
+        return path;
+    }
+
+    @Test
+    public void readWithinSegment() throws IOException {
+        final MappedFileByteStream stream = MappedFileByteStream.create(write(DATA));
+        assertEquals(DATA.length, stream.size);
+        assertArrayEquals(toByteArray(2, 3, 4), stream.read(BigInteger.valueOf(2), 3));
+        assertArrayEquals(DATA, stream.read(ZERO, DATA.length));
+    }
+
+    @Test
+    public void readAcrossSegments() throws IOException {
+        final MappedFileByteStream stream = MappedFileByteStream.create(write(DATA), 3);
+        assertArrayEquals(toByteArray(2, 3, 4, 5, 6, 7), stream.read(BigInteger.valueOf(2), 6));
+        assertArrayEquals(toByteArray(9), stream.read(BigInteger.valueOf(9), 1));
+        assertArrayEquals(DATA, stream.read(ZERO, DATA.length));
+        assertArrayEquals(new byte[0], stream.read(BigInteger.valueOf(10), 0));
+    }
+
+    @Test
+    public void sourceWithoutCopying() throws IOException {
+        final Source source = new ByteStreamSource(MappedFileByteStream.create(write(DATA), 4));
+        final ByteBuffer withinSegment = source.asByteBuffer(BigInteger.valueOf(5), BigInteger.valueOf(3));
+        assertTrue(withinSegment.isDirect());
+        assertTrue(withinSegment.isReadOnly());
+        assertEquals(ByteBuffer.wrap(toByteArray(5, 6, 7)), withinSegment);
+        final ByteBuffer acrossSegments = source.asByteBuffer(BigInteger.valueOf(2), BigInteger.valueOf(4));
+        assertTrue(acrossSegments.isReadOnly());
+        assertEquals(ByteBuffer.wrap(toByteArray(2, 3, 4, 5)), acrossSegments);
+        assertEquals(0, source.asByteBuffer(BigInteger.valueOf(10), ZERO).remaining());
+        for (int offset = 0; offset < DATA.length; offset++) {
+            assertEquals(DATA[offset], source.getByte(BigInteger.valueOf(offset)));
+        }
+    }
+
+    @Test
+    public void streamUnavailable() throws IOException {
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Data to read is not available (offset=10;length=1;stream=MappedFileByteStream(");
+        MappedFileByteStream.create(write(DATA)).getByte(BigInteger.valueOf(10));
+    }
+
+    @Test
+    public void sourceUnavailable() throws IOException {
+        thrown.expect(IllegalStateException.class);
+        thrown.expectMessage("Data to read is not available ([offset=9;length=2;source=ByteStreamSource(MappedFileByteStream(");
+        new ByteStreamSource(MappedFileByteStream.create(write(DATA))).asByteBuffer(BigInteger.valueOf(9), BigInteger.valueOf(2));
+    }
+
+    @Test
+    public void isAvailable() throws IOException {
+        final MappedFileByteStream stream = MappedFileByteStream.create(write(DATA), 4);
+        assertTrue(stream.isAvailable(ZERO, 10));
+        assertTrue(stream.isAvailable(BigInteger.valueOf(10), 0));
+        assertFalse(stream.isAvailable(ONE, 10));
+        assertFalse(stream.isAvailable(BigInteger.valueOf(11), 0));
+        assertFalse(stream.isAvailable(BigInteger.valueOf(-1), 1));
+        assertFalse(stream.isAvailable(ZERO, -1));
+        assertFalse(stream.isAvailable(ONE.shiftLeft(64), 0));
+    }
+
+    @Test
+    public void emptyFile() throws IOException {
+        final MappedFileByteStream stream = MappedFileByteStream.create(write(new byte[0]));
+        assertTrue(stream.isAvailable(ZERO, 0));
+        assertFalse(stream.isAvailable(ZERO, 1));
+    }
+
+    @Test
+    public void readUnavailable() throws IOException {
+        final MappedFileByteStream stream = MappedFileByteStream.create(write(DATA));
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Data to read is not available (offset=8;length=3;stream=MappedFileByteStream(");
+        stream.read(BigInteger.valueOf(8), 3);
+    }
+
+    @Test
+    public void invalidSegmentSize() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument segmentSize must be positive.");
+        MappedFileByteStream.create(write(DATA), 0);
+    }
+
+    @Test
+    public void readBeyondTwoGigabytes() throws IOException {
+        final File file = folder.newFile();
+        final long position = (1L << 31) + 5;
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(3L << 30);
+            output.seek(position);
+            output.write(toByteArray(0x50, 0x4b, 0x03, 0x04));
+        }
+        final MappedFileByteStream stream = MappedFileByteStream.create(file.toPath());
+        assertArrayEquals(toByteArray(0, 0x50, 0x4b, 0x03, 0x04, 0), stream.read(BigInteger.valueOf(position - 1), 6));
+        assertTrue(stream.isAvailable(BigInteger.valueOf(3L << 30), 0));
+        assertFalse(stream.isAvailable(BigInteger.valueOf(3L << 30), 1));
+    }
+
+    @Test
+    public void parse() throws IOException {
+        final Optional<ParseState> result =
+            seq(def("size", con(1)),
+                def("data", last(ref("size")), eq(con(4, 5, 6))))
+                .parse(env(createFromByteStream(MappedFileByteStream.create(write(DATA), 2), BigInteger.valueOf(3)), enc()));
+        assertTrue(result.isPresent());
+        assertEquals(7, result.get().offset.intValueExact());
+    }
+
+    @Test
+    public void equality() throws IOException {
+        final Path path = write(DATA);
+        assertEquals(MappedFileByteStream.create(path), MappedFileByteStream.create(path));
+        assertEquals(MappedFileByteStream.create(path).hashCode(), MappedFileByteStream.create(path).hashCode());
+        assertNotEquals(MappedFileByteStream.create(path), MappedFileByteStream.create(path, 2));
+        assertNotEquals(MappedFileByteStream.create(path), MappedFileByteStream.create(write(DATA)));
+    }
+
+}
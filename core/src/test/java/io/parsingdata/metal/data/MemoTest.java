@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.cho;
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.def;
+import static io.parsingdata.metal.Shorthand.eq;
+import static io.parsingdata.metal.Shorthand.eqNum;
+import static io.parsingdata.metal.Shorthand.last;
+import static io.parsingdata.metal.Shorthand.post;
+import static io.parsingdata.metal.Shorthand.ref;
+import static io.parsingdata.metal.Shorthand.rep;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+import static io.parsingdata.metal.util.ParseStateFactory.stream;
+
+import java.util.Optional;
+
+import io.parsingdata.metal.expression.value.ValueExpression;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import io.parsingdata.metal.token.Token;
+
+public class MemoTest {
+
+    @Rule public final ExpectedException thrown = ExpectedException.none();
+
+    private static Token header() {
+        return seq("header", def("magic", con(1), eq(con(0x50))), def("version", con(1)));
+    }
+
+    private static final Token CHOICE =
+        rep(cho(seq("local", header(), def("type", con(1), eq(con(1)))),
+                seq("central", header(), def("type", con(1), eq(con(2)))),
+                seq("end", header(), def("type", con(1), eq(con(3))))));
+
+    private static final int[] DATA = { 0x50, 1, 1, 0x50, 1, 2, 0x50, 2, 2, 0x50, 1, 3 };
+
+    private static void assertSameResult(final Token token, final Memo memo, final int... data) {
+        final Optional<ParseState> expected = token.parse(env(stream(data)));
+        final Optional<ParseState> actual = token.parse(env(stream(data)).withMemo(memo));
+        assertEquals(expected.isPresent(), actual.isPresent());
+        if (expected.isPresent()) {
+            assertEquals(expected.get().offset, actual.get().offset);
+            assertEquals(expected.get().order, actual.get().order);
+            assertEquals(expected.get().order.current(), actual.get().order.current());
+        }
+    }
+
+    @Test
+    public void reuseEqualTokens() {
+        final Memo memo = new Memo(64);
+        assertSameResult(CHOICE, memo, DATA);
+        // Each record after the first alternative reuses the header parsed by the first alternative.
+        assertTrue(memo.getHitCount() >= 5);
+        final long misses = memo.getMissCount();
+        assertSameResult(CHOICE, memo, DATA);
+        assertEquals(misses * 2, memo.getMissCount()); // A new stream is a different source.
+    }
+
+    @Test
+    public void reuseFailures() {
+        final Memo memo = new Memo(64);
+        final Token failing = seq(def("a", con(1)), def("b", con(1), eq(con(9))));
+        assertSameResult(cho(seq(failing, def("c", con(1))), seq(failing, def("d", con(1))), def("e", con(1))), memo, 1, 2, 3);
+        assertTrue(memo.getHitCount() > 0);
+    }
+
+    @Test
+    public void skipContextDependentTokens() {
+        final Memo memo = new Memo(64);
+        final Token dependent = seq(def("size", con(1)), def("data", last(ref("size"))));
+        assertSameResult(cho(seq(dependent, def("x", con(1), eq(con(9)))), dependent), memo, 1, 2, 3);
+        // Only the size is reused, the sequence and the data depend on the graph.
+        assertEquals(1, memo.getHitCount());
+    }
+
+    @Test
+    public void memoizeOwnValuePredicate() {
+        final Memo memo = new Memo(64);
+        final Token value = post(def("value", con(1)), eqNum(con(1)));
+        assertSameResult(cho(seq(value, def("x", con(1), eq(con(9)))), seq(value, def("y", con(1)))), memo, 1, 2);
+        assertTrue(memo.getHitCount() > 0);
+    }
+
+    @Test
+    public void skipUnknownExpressions() {
+        final Memo memo = new Memo(64);
+        final ValueExpression size = (parseState, encoding) -> con(1).eval(parseState, encoding);
+        final Token value = def("value", size);
+        assertSameResult(cho(seq(value, def("x", con(1), eq(con(9)))), seq(value, def("y", con(1)))), memo, 1, 2);
+        // The operands of the size are not known, so it may read the graph.
+        assertEquals(0, memo.getHitCount());
+    }
+
+    @Test
+    public void boundedSize() {
+        final Memo memo = new Memo(4);
+        assertSameResult(CHOICE, memo, DATA);
+        assertEquals(4, memo.size());
+        memo.clear();
+        assertEquals(0, memo.size());
+    }
+
+    @Test
+    public void disabled() {
+        assertSameResult(CHOICE, Memo.NONE, DATA);
+        assertEquals(0, Memo.NONE.getMissCount());
+        assertEquals(0, Memo.NONE.size());
+        assertFalse(Memo.NONE.getHitCount() > 0);
+    }
+
+    @Test
+    public void invalidCapacity() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument capacity must be positive.");
+        new Memo(0);
+    }
+
+}
@@ -21,6 +21,7 @@ import static java.math.BigInteger.ZERO;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -243,4 +244,39 @@ public class ParseGraphTest {
         assertFalse(EMPTY.addBranch(NONE).current().isPresent());
     }
 
+    @Test
+    public void testCurrentInBranches() {
+        final ParseGraph graph = EMPTY.add(a).addBranch(t).add(b).addBranch(t).add(c).closeBranch();
+        assertSame(c, graph.current().get());
+        assertSame(c, graph.add(new ParseReference(ZERO, EMPTY_SOURCE, NONE)).current().get());
+        assertSame(c, graph.addBranch(t).current().get());
+        assertSame(c, graph.closeBranch().addBranch(t).addBranch(t).closeBranch().current().get());
+        assertSame(d, graph.addBranch(t).add(d).closeBranch().closeBranch().current().get());
+        assertSame(a, EMPTY.add(a).addBranch(t).addBranch(t).closeBranch().current().get());
+    }
+
+    @Test
+    public void testOpenPath() {
+        final ParseGraph graph = EMPTY.add(a).addBranch(t).add(b).addBranch(t).add(c);
+        final ParseGraph[] path = graph.getOpenPath();
+        assertEquals(3, path.length);
+        assertSame(graph, path[0]);
+        assertSame(graph.head, path[1]);
+        assertSame(c, path[2].head);
+        assertFalse(path[2].branched);
+        assertEquals(1, EMPTY.getOpenPath().length);
+        final ParseGraph closed = graph.closeBranch().closeBranch();
+        assertEquals(1, closed.getOpenPath().length);
+        assertSame(c, closed.head.asGraph().head.asGraph().head);
+    }
+
+    @Test
+    public void indexUnchangedWithoutLookups() {
+        final ParseGraph graph = EMPTY.add(a).addBranch(t).add(b).addBranch(t).add(c).closeBranch();
+        assertSame(EMPTY.index, graph.index);
+        Selection.getRecentValues(graph, "b", Selection.NO_LIMIT);
+        assertSame(graph.index, graph.add(c).index);
+        assertFalse(graph.index == graph.add(b).index);
+    }
+
 }
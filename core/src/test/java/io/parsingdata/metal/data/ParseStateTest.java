@@ -16,10 +16,16 @@
 
 package io.parsingdata.metal.data;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import static io.parsingdata.metal.Shorthand.rep;
+import static io.parsingdata.metal.Shorthand.toByteArray;
 import static io.parsingdata.metal.util.ParseStateFactory.stream;
 import static io.parsingdata.metal.util.TokenDefinitions.any;
 
+import java.math.BigInteger;
+
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -40,4 +46,12 @@ public class ParseStateTest {
         stream().addBranch(open).closeBranch(close);
     }
 
+    @Test
+    public void matches() {
+        final ParseState parseState = stream(1, 2, 3).seek(BigInteger.ONE).get();
+        assertTrue(parseState.matches(toByteArray(2, 3)));
+        assertFalse(parseState.matches(toByteArray(2, 4)));
+        assertFalse(parseState.matches(toByteArray(2, 3, 4)));
+    }
+
 }
\ No newline at end of file
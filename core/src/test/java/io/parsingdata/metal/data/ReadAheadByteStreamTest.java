@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.def;
+import static io.parsingdata.metal.Shorthand.rep;
+import static io.parsingdata.metal.data.ParseState.createFromByteStream;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import io.parsingdata.metal.util.InMemoryByteStream;
+
+public class ReadAheadByteStreamTest {
+
+    @Rule public final ExpectedException thrown = ExpectedException.none();
+
+    private static byte[] data(final int size) {
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static void assertRead(final byte[] data, final ByteStream stream, final int offset, final int length) throws IOException {
+        assertArrayEquals(Arrays.copyOfRange(data, offset, offset + length), stream.read(BigInteger.valueOf(offset), length));
+    }
+
+    @Test
+    public void sequential() throws IOException {
+        final byte[] data = data(64);
+        final ReadAheadByteStream stream = new ReadAheadByteStream(new InMemoryByteStream(data), Runnable::run, 8, 2);
+        for (int offset = 0; offset < data.length; offset += 4) {
+            assertRead(data, stream, offset, 4);
+        }
+        assertEquals(6, stream.getPrefetchCount());
+        assertEquals(6, stream.getPrefetchHitCount());
+        assertEquals(0, stream.getWastedPrefetchCount());
+    }
+
+    @Test
+    public void strided() throws IOException {
+        final byte[] data = data(128);
+        final ReadAheadByteStream stream = new ReadAheadByteStream(new InMemoryByteStream(data), Runnable::run, 8, 2);
+        for (int offset = 0; offset < data.length; offset += 16) {
+            assertRead(data, stream, offset, 2);
+        }
+        assertEquals(5, stream.getPrefetchCount());
+        assertEquals(5, stream.getPrefetchHitCount());
+        assertEquals(0, stream.getWastedPrefetchCount());
+    }
+
+    @Test
+    public void wasted() throws IOException {
+        final byte[] data = data(64);
+        final ReadAheadByteStream stream = new ReadAheadByteStream(new InMemoryByteStream(data), Runnable::run, 8, 2);
+        assertRead(data, stream, 0, 4);
+        assertRead(data, stream, 4, 4);
+        assertRead(data, stream, 8, 4);
+        assertEquals(2, stream.getPrefetchCount());
+        assertRead(data, stream, 48, 4);
+        assertEquals(0, stream.getPrefetchHitCount());
+        assertEquals(2, stream.getWastedPrefetchCount());
+    }
+
+    @Test
+    public void randomAccessDoesNotPrefetch() throws IOException {
+        final byte[] data = data(256);
+        final ReadAheadByteStream stream = new ReadAheadByteStream(new InMemoryByteStream(data), Runnable::run, 8, 4);
+        for (final int offset : new int[] { 100, 3, 250, 17, 64, 200, 9 }) {
+            assertRead(data, stream, offset, 5);
+        }
+        assertEquals(0, stream.getPrefetchCount());
+    }
+
+    @Test
+    public void partialLastBlock() throws IOException {
+        final byte[] data = data(60);
+        final ReadAheadByteStream stream = new ReadAheadByteStream(new InMemoryByteStream(data), Runnable::run, 8, 2);
+        for (int offset = 0; offset < data.length; offset += 6) {
+            assertRead(data, stream, offset, 6);
+        }
+        assertRead(data, stream, 0, 60);
+        assertArrayEquals(new byte[0], stream.read(BigInteger.valueOf(60), 0));
+    }
+
+    @Test
+    public void concurrentPrefetch() throws Exception {
+        final byte[] data = data(1 << 16);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final ReadAheadByteStream stream = new ReadAheadByteStream(new InMemoryByteStream(data), executor, 512, 4);
+            int offset = 0;
+            for (int length = 1; offset + length <= data.length; length = length % 97 + 1) {
+                assertRead(data, stream, offset, length);
+                offset += length;
+            }
+            assertTrue(stream.getPrefetchHitCount() > 0);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void parse() {
+        final byte[] data = data(1024);
+        final Optional<ParseState> result = rep(def("value", con(3)))
+            .parse(env(createFromByteStream(new ReadAheadByteStream(new InMemoryByteStream(data), Runnable::run, 16, 4)), enc()));
+        assertTrue(result.isPresent());
+        assertEquals(1023, result.get().offset.intValueExact());
+    }
+
+    @Test
+    public void readUnavailable() throws IOException {
+        final ReadAheadByteStream stream = new ReadAheadByteStream(new InMemoryByteStream(data(10)), Runnable::run, 4, 2);
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Data to read is not available (offset=8;length=3;stream=ReadAheadByteStream(InMemoryByteStream(10);blockSize:4;window:2)).");
+        stream.read(BigInteger.valueOf(8), 3);
+    }
+
+    @Test
+    public void invalidWindow() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument window must be positive.");
+        new ReadAheadByteStream(new InMemoryByteStream(data(10)), Runnable::run, 4, 0);
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.add;
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.count;
+import static io.parsingdata.metal.Shorthand.def;
+import static io.parsingdata.metal.Shorthand.eq;
+import static io.parsingdata.metal.Shorthand.eqNum;
+import static io.parsingdata.metal.Shorthand.last;
+import static io.parsingdata.metal.Shorthand.post;
+import static io.parsingdata.metal.Shorthand.ref;
+import static io.parsingdata.metal.Shorthand.rep;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.Shorthand.sub;
+import static io.parsingdata.metal.data.Selection.NO_LIMIT;
+import static io.parsingdata.metal.data.Selection.getRecentValues;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+import static io.parsingdata.metal.util.ParseStateFactory.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import io.parsingdata.metal.Optimizer;
+import io.parsingdata.metal.expression.value.CompiledValueExpression;
+import io.parsingdata.metal.token.Rep;
+import io.parsingdata.metal.token.Token;
+
+public class RetentionTest {
+
+    private static final Token RECORD = seq("record", def("size", con(1)), def("data", last(ref("size"))));
+
+    private static final int[] RECORDS = { 1, 10, 2, 20, 21, 0, 3, 30, 31, 32 };
+
+    private static ParseState parse(final Token root, final Token record, final List<ParseItem> sink, final int... data) {
+        final Optional<ParseState> result = root.parse(env(stream(data)).withRetention(Retention.create(root, record, sink::add)));
+        assertTrue(result.isPresent());
+        return result.get();
+    }
+
+    private static List<ParseItem> getItems(final ParseGraph graph) {
+        final List<ParseItem> items = new ArrayList<>();
+        for (ParseGraph node = graph; !node.isEmpty(); node = node.tail) {
+            items.add(0, node.head);
+        }
+        return items;
+    }
+
+    @Test
+    public void releaseRecords() {
+        final Token root = rep(RECORD);
+        final ParseState full = root.parse(env(stream(RECORDS))).get();
+        final List<ParseItem> sink = new ArrayList<>();
+        final ParseState streamed = parse(root, RECORD, sink, RECORDS);
+        assertEquals(full.offset, streamed.offset);
+        assertEquals(getItems(full.order.head.asGraph()), sink);
+        assertTrue(streamed.order.head.asGraph().isEmpty());
+        assertEquals(full.order.current(), streamed.order.current());
+    }
+
+    @Test
+    public void matchEqualRecord() {
+        final List<ParseItem> sink = new ArrayList<>();
+        parse(rep(RECORD), seq("record", def("size", con(1)), def("data", last(ref("size")))), sink, RECORDS);
+        assertEquals(4, sink.size());
+    }
+
+    @Test
+    public void optimizedRecord() {
+        final Token root = Optimizer.optimize(rep(seq("record", def("size", add(con(0), con(1))), def("data", last(ref("size"))))));
+        final List<ParseItem> sink = new ArrayList<>();
+        parse(root, RECORD, sink, RECORDS);
+        assertTrue(sink.isEmpty());
+        parse(root, ((Rep) root).token, sink, RECORDS);
+        assertEquals(4, sink.size());
+    }
+
+    @Test
+    public void compiledSizeRecord() {
+        final Token root = Optimizer.optimize(rep(seq("record", def("size", con(1)), def("data", add(last(ref("size")), con(0))))));
+        final Token record = ((Rep) root).token;
+        assertTrue(record.toString().contains(CompiledValueExpression.class.getSimpleName()));
+        final List<ParseItem> sink = new ArrayList<>();
+        final ParseState streamed = parse(root, record, sink, RECORDS);
+        assertEquals(4, sink.size());
+        assertTrue(streamed.order.head.asGraph().isEmpty());
+        assertEquals(root.parse(env(stream(RECORDS))).get().offset, streamed.offset);
+    }
+
+    @Test
+    public void keepReferencedRecords() {
+        final Token root = seq(rep(RECORD), def("footer", con(1), eqNum(count(ref("size")))));
+        final List<ParseItem> sink = new ArrayList<>();
+        final ParseState streamed = parse(root, RECORD, sink, 1, 10, 2, 20, 21, 2);
+        assertTrue(sink.isEmpty());
+        assertEquals(root.parse(env(stream(1, 10, 2, 20, 21, 2))).get().order, streamed.order);
+    }
+
+    @Test
+    public void keepSubRoots() {
+        final Token root = seq(RECORD, sub(RECORD, con(0)));
+        final List<ParseItem> sink = new ArrayList<>();
+        final ParseState streamed = parse(root, RECORD, sink, 1, 10);
+        assertTrue(sink.isEmpty());
+        assertEquals(root.parse(env(stream(1, 10))).get().order, streamed.order);
+    }
+
+    @Test
+    public void currentAfterRelease() {
+        final Token record = seq("record", def("a", con(1)), def("b", con(1)));
+        final Token root = rep(post(record, eq(con(0))));
+        final List<ParseItem> sink = new ArrayList<>();
+        final ParseState streamed = parse(root, record, sink, 1, 0, 2, 0, 3, 1);
+        assertEquals(4, streamed.offset.intValueExact());
+        // The third record is passed to the sink before the enclosing Post fails.
+        assertEquals(3, sink.size());
+        assertEquals(0, streamed.order.current().get().asNumeric().intValueExact());
+    }
+
+    @Test
+    public void compactIndex() {
+        final Token root = rep(RECORD);
+        final int[] data = new int[300];
+        for (int i = 0; i < data.length; i += 2) {
+            data[i] = 1;
+            data[i + 1] = i;
+        }
+        final List<ParseItem> sink = new ArrayList<>();
+        final ParseState streamed = parse(root, RECORD, sink, data);
+        assertEquals(150, sink.size());
+        assertTrue(streamed.order.index.entryCount <= 2 * streamed.order.index.removedCount + 2);
+        final ParseValue lastSize = getRecentValues(streamed.order, "size", 1).head;
+        assertSame(sink.get(149).asGraph().tail.head, lastSize);
+        assertEquals(1, getRecentValues(streamed.order, "size", NO_LIMIT).size);
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+import static io.parsingdata.metal.util.ParseStateFactory.stream;
+import static io.parsingdata.metal.util.TokenDefinitions.any;
+
+import org.junit.Test;
+
+public class ScopeTest {
+
+    @Test
+    public void extend() {
+        final Scope root = new Scope("");
+        final Scope scope = root.extend("a").extend("b");
+        assertEquals("a.b", scope.path);
+        assertSame(scope, root.extend("a").extend("b"));
+        assertSame(scope, scope.extend(""));
+        assertEquals("x.a", new Scope("x").extend("a").path);
+    }
+
+    @Test
+    public void sharedNames() {
+        final Environment environment = env(stream(1, 2));
+        final String first = environment.extendScope("a").extendScope("b").scope;
+        final String second = environment.extendScope("a").extendScope("b").scope;
+        assertEquals("a.b", first);
+        assertSame(first, second);
+        assertSame(environment, environment.extendScope(""));
+        assertEquals("a.b", env("a", stream(1, 2), enc()).extendScope("b").scope);
+    }
+
+    @Test
+    public void notSharedBetweenEnvironments() {
+        final String first = env(stream(1, 2)).extendScope("a").extendScope("b").scope;
+        final String second = env(stream(1, 2)).extendScope("a").extendScope("b").scope;
+        assertEquals(first, second);
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void matches() {
+        final String path = "r.s.a";
+        for (final String name : new String[] { "r.s.a", "s.a", "a" }) {
+            assertTrue(ParseValue.matches(path, name));
+            assertTrue(new ParseValue(path, any("a"), Slice.createFromBytes(new byte[1]), enc()).matches(name));
+        }
+        for (final String name : new String[] { "", "r", "s", ".a", "r.s", "x.r.s.a", "sa" }) {
+            assertFalse(ParseValue.matches(path, name));
+            assertFalse(new ParseValue(path, any("a"), Slice.createFromBytes(new byte[1]), enc()).matches(name));
+        }
+        assertFalse(new ParseValue("ra", any("a"), Slice.createFromBytes(new byte[1]), enc()).matches("a"));
+    }
+
+}
@@ -20,21 +20,46 @@ import static java.math.BigInteger.ONE;
 import static java.math.BigInteger.ZERO;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import static io.parsingdata.metal.Shorthand.con;
 import static io.parsingdata.metal.Shorthand.rep;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.Shorthand.sub;
+import static io.parsingdata.metal.data.Selection.NO_LIMIT;
+import static io.parsingdata.metal.data.Selection.findDefinition;
 import static io.parsingdata.metal.data.Selection.findItemAtOffset;
+import static io.parsingdata.metal.data.Selection.findRootAtOffset;
+import static io.parsingdata.metal.data.Selection.getAllRoots;
 import static io.parsingdata.metal.data.Selection.getAllValues;
+import static io.parsingdata.metal.data.Selection.getFirstValues;
+import static io.parsingdata.metal.data.Selection.getRecentValues;
+import static io.parsingdata.metal.data.Selection.hasRootAtOffset;
+import static io.parsingdata.metal.data.Selection.iterateValues;
+import static io.parsingdata.metal.data.Selection.matchesPath;
+import static io.parsingdata.metal.data.Selection.reverse;
+import static io.parsingdata.metal.data.Selection.spliterateValues;
+import static io.parsingdata.metal.data.Selection.streamValues;
 import static io.parsingdata.metal.util.EncodingFactory.enc;
 import static io.parsingdata.metal.util.EnvironmentFactory.env;
 import static io.parsingdata.metal.util.ParseStateFactory.stream;
 import static io.parsingdata.metal.util.TokenDefinitions.any;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import io.parsingdata.metal.token.Token;
+
 public class SelectionTest {
 
     private final Source source = new Source() {
@@ -59,4 +84,237 @@ public class SelectionTest {
         }
     }
 
+    @Test
+    public void indexMatchesTraversal() {
+        final Token b = any("b");
+        final Token token = rep("r", seq("s", any("a"), seq("t", any("a"), b), rep("u", seq(any("a"), b, any("s")))));
+        final Optional<ParseState> parseState = token.parse(env(stream(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16)));
+        Assert.assertTrue(parseState.isPresent());
+        final ParseGraph graph = parseState.get().order;
+        Assert.assertNotNull(graph.index);
+        final ParseGraph branch = graph.head.asGraph().head.asGraph();
+        Assert.assertNull(branch.index);
+        for (final String name : new String[] { "a", "b", "s", "t.a", "s.a", "r.s.t.a", "r.s.a", "u.b", "r", "x", "s.s" }) {
+            for (int limit = -1; limit < 6; limit++) {
+                assertEquals(getAllValues(graph, (value) -> value.matches(name), limit), reverse(getRecentValues(graph, name, limit)));
+                assertEquals(getAllValues(branch, (value) -> value.matches(name), limit), reverse(getRecentValues(branch, name, limit)));
+            }
+        }
+        for (int limit = -1; limit < 6; limit++) {
+            assertEquals(getAllValues(graph, (value) -> value.definition.equals(b), limit), reverse(getRecentValues(graph, any("b"), limit)));
+            assertEquals(getFirst(getAllValues(graph, (value) -> value.definition.equals(b)), limit), getFirstValues(graph, any("b"), limit));
+            for (final String name : new String[] { "a", "t.a", "x" }) {
+                assertEquals(getFirst(getAllValues(graph, (value) -> value.matches(name)), limit), getFirstValues(graph, name, limit));
+                assertEquals(getFirst(getAllValues(branch, (value) -> value.matches(name)), limit), getFirstValues(branch, name, limit));
+            }
+        }
+        assertEquals(0, getRecentValues(graph, any("c"), NO_LIMIT).size);
+    }
+
+    @Test
+    public void indexExtendedByLookup() {
+        final Token[] values = { any("a"), any("b") };
+        final Token[] branches = { seq("s", values[0], values[1]), seq("t", values[1], values[0]) };
+        final Source source = new ConstantSource(new byte[8]);
+        final Random random = new Random(0);
+        ParseGraph graph = ParseGraph.EMPTY;
+        int depth = 0;
+        for (int step = 0; step < 400; step++) {
+            final int operation = random.nextInt(10);
+            if (operation < 5) {
+                final Token definition = values[random.nextInt(values.length)];
+                graph = graph.add(new ParseValue(definition.name, definition, Slice.createFromSource(source, BigInteger.valueOf(step % 8), ONE).get(), enc()));
+            }
+            else if (operation < 7) {
+                graph = graph.addBranch(branches[random.nextInt(branches.length)]);
+                depth++;
+            }
+            else if (depth > 0) {
+                graph = graph.closeBranch();
+                depth--;
+            }
+            // Every key is looked up for the first time at a different step, after which the index is extended as the graph grows.
+            if (step >= 50) {
+                assertEquals(getFirst(getAllValues(graph, (value) -> value.matches("b")), 1), getFirstValues(graph, "b", 1));
+            }
+            if (step >= 100) {
+                assertEquals(reverse(getAllValues(graph, (value) -> value.matches("a"))), getRecentValues(graph, "a", NO_LIMIT));
+            }
+            if (step >= 150) {
+                assertEquals(getFirst(getAllValues(graph, (value) -> value.definition.equals(values[0])), 1), getFirstValues(graph, values[0], 1));
+            }
+            if (step >= 200) {
+                assertEquals(reverse(getAllValues(graph, (value) -> value.definition.equals(values[1]))), getRecentValues(graph, values[1], NO_LIMIT));
+            }
+            if (step >= 250) {
+                final Optional<ParseItem> expected = findItemAtOffset(getAllRoots(graph, branches[0]), ZERO, source).computeResult();
+                assertEquals(expected.isPresent(), hasRootAtOffset(graph, branches[0], ZERO, source));
+                assertEquals(expected, findRootAtOffset(graph, branches[0], ZERO, source));
+            }
+            if (step >= 300) {
+                assertEquals(findDefinitionByTraversal(graph, "s"), findDefinition(graph, "s"));
+            }
+        }
+    }
+
+    private static ImmutableList<ParseValue> getFirst(final ImmutableList<ParseValue> values, final int limit) {
+        ImmutableList<ParseValue> result = reverse(values);
+        while (limit >= 0 && result.size > limit) {
+            result = result.tail;
+        }
+        return reverse(result);
+    }
+
+    @Test
+    public void streamMatchesTraversal() {
+        final Token token = rep("r", seq("s", any("a"), seq("t", any("a"), any("b")), rep("u", seq(any("a"), any("b"), any("s")))));
+        final ParseGraph graph = token.parse(env(stream(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16))).get().order;
+        final List<ParseValue> expected = toList(getAllValues(graph, (value) -> true));
+        assertEquals(15, expected.size());
+        assertEquals(expected, streamValues(graph).collect(Collectors.toList()));
+        assertEquals(expected, streamValues(graph).parallel().collect(Collectors.toList()));
+        final List<ParseValue> iterated = new ArrayList<>();
+        for (final Iterator<ParseValue> iterator = iterateValues(graph); iterator.hasNext();) {
+            iterated.add(iterator.next());
+        }
+        assertEquals(expected, iterated);
+        assertEquals(expected.subList(0, 3), streamValues(graph).limit(3).collect(Collectors.toList()));
+        assertEquals(0, streamValues(ParseGraph.EMPTY).count());
+    }
+
+    @Test
+    public void splitPreservesOrder() {
+        final Token token = rep("r", seq("s", any("a"), seq("t", any("a"), any("b")), rep("u", seq(any("a"), any("b")))));
+        final ParseGraph graph = token.parse(env(stream(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15))).get().order;
+        final List<ParseValue> expected = toList(getAllValues(graph, (value) -> true));
+        for (int advance = 0; advance <= expected.size(); advance++) {
+            final List<ParseValue> collected = new ArrayList<>();
+            final Spliterator<ParseValue> spliterator = spliterateValues(graph);
+            for (int i = 0; i < advance; i++) {
+                assertTrue(spliterator.tryAdvance(collected::add));
+            }
+            collected.addAll(split(spliterator));
+            assertEquals(expected, collected);
+        }
+    }
+
+    private static List<ParseValue> split(final Spliterator<ParseValue> spliterator) {
+        final List<ParseValue> values = new ArrayList<>();
+        final Spliterator<ParseValue> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            values.addAll(split(prefix));
+            values.addAll(split(spliterator));
+            return values;
+        }
+        spliterator.forEachRemaining(values::add);
+        return values;
+    }
+
+    private static <T> List<T> toList(final ImmutableList<T> list) {
+        final List<T> result = new ArrayList<>();
+        for (ImmutableList<T> node = list; !node.isEmpty(); node = node.tail) {
+            result.add(node.head);
+        }
+        return result;
+    }
+
+    @Test
+    public void pathMatching() {
+        final Token token = seq("ZIP", rep("files", seq("file", any("size"), any("crc32"))), any("crc32"));
+        final ParseGraph graph = token.parse(env(stream(1, 2, 3, 4, 5))).get().order;
+        assertEquals(2, streamValues(graph, "ZIP.files.*.crc32").count());
+        assertEquals(3, streamValues(graph, "**.crc32").count());
+        assertEquals(1, streamValues(graph, "ZIP.crc32").count());
+        assertEquals(5, streamValues(graph, "ZIP.**").count());
+        assertEquals(2, streamValues(graph, "ZIP.**.file.size").count());
+        assertEquals(0, streamValues(graph, "files.*.crc32").count());
+        assertFalse(matchesPath("*").test(graph.head.asGraph().head.asValue()));
+    }
+
+    @Test
+    public void rootIndexMatchesTraversal() {
+        final Token a = any("a");
+        final Token b = any("b");
+        final Token s = seq("s", a, b);
+        final Token t = seq("t", a, b);
+        final Token u = sub(s, con(0));
+        final Token[] definitions = { a, b, s, t, u, ParseGraph.NONE };
+        final Source[] sources = { new ConstantSource(new byte[8]), new ConstantSource(new byte[9]) };
+        final Random random = new Random(0);
+        ParseGraph graph = ParseGraph.EMPTY;
+        int depth = 0;
+        for (int step = 0; step < 500; step++) {
+            final int operation = random.nextInt(10);
+            if (operation < 5) {
+                final Token definition = definitions[random.nextInt(2)];
+                graph = graph.add(new ParseValue(definition.name, definition, Slice.createFromSource(sources[random.nextInt(2)], BigInteger.valueOf(random.nextInt(5)), ONE).get(), enc()));
+            }
+            else if (operation < 7) {
+                graph = graph.addBranch(definitions[2 + random.nextInt(3)]);
+                depth++;
+            }
+            else if (operation < 9 && depth > 0) {
+                graph = graph.closeBranch();
+                depth--;
+            }
+            else {
+                graph = graph.add(new ParseReference(BigInteger.valueOf(random.nextInt(5)), sources[0], s));
+            }
+            for (final Token definition : definitions) {
+                for (int offset = 0; offset < 5; offset++) {
+                    for (final Source source : sources) {
+                        final BigInteger location = BigInteger.valueOf(offset);
+                        final Optional<ParseItem> expected = findItemAtOffset(getAllRoots(graph, definition), location, source).computeResult();
+                        final Optional<ParseItem> actual = findRootAtOffset(graph, definition, location, source);
+                        assertEquals(expected.isPresent(), actual.isPresent());
+                        assertEquals(expected.isPresent(), hasRootAtOffset(graph, definition, location, source));
+                        expected.ifPresent(item -> Assert.assertSame(item, actual.get()));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void definitionIndexMatchesTraversal() {
+        final Token[] values = { any("a"), any("b"), any("s") };
+        final Token[] branches = { seq("s", values[0], values[1]), seq("s", values[1], values[0]), seq("t", values[0], values[1]) };
+        final Source source = new ConstantSource(new byte[8]);
+        final Random random = new Random(0);
+        ParseGraph graph = ParseGraph.EMPTY;
+        int depth = 0;
+        for (int step = 0; step < 1000; step++) {
+            final int operation = random.nextInt(10);
+            if (operation < 4) {
+                final Token definition = values[random.nextInt(values.length)];
+                graph = graph.add(new ParseValue(definition.name, definition, Slice.createFromSource(source, ZERO, ONE).get(), enc()));
+            }
+            else if (operation < 6) {
+                graph = graph.addBranch(branches[random.nextInt(branches.length)]);
+                depth++;
+            }
+            else if (operation < 9 && depth > 0) {
+                graph = graph.closeBranch();
+                depth--;
+            }
+            else {
+                graph = graph.add(new ParseReference(ZERO, source, branches[random.nextInt(branches.length)]));
+            }
+            for (final String name : new String[] { "a", "b", "s", "t", "x", "NONE" }) {
+                assertEquals(findDefinitionByTraversal(graph, name), findDefinition(graph, name));
+            }
+        }
+    }
+
+    private static Optional<Token> findDefinitionByTraversal(final ParseItem item, final String name) {
+        if (item.getDefinition().name.equals(name)) {
+            return Optional.of(item.getDefinition());
+        }
+        if (item.isGraph() && !item.asGraph().isEmpty()) {
+            final Optional<Token> head = findDefinitionByTraversal(item.asGraph().head, name);
+            return head.isPresent() ? head : findDefinitionByTraversal(item.asGraph().tail, name);
+        }
+        return Optional.empty();
+    }
+
 }
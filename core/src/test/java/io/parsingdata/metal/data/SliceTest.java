@@ -22,6 +22,7 @@ import static java.math.BigInteger.ZERO;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import static io.parsingdata.metal.Shorthand.con;
@@ -42,6 +43,8 @@ import static io.parsingdata.metal.util.EnvironmentFactory.env;
 import static io.parsingdata.metal.util.ParseStateFactory.stream;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.Optional;
 
 import org.junit.Rule;
@@ -106,4 +109,72 @@ public class SliceTest {
         assertTrue(dataExpressionSliceString.endsWith(")@0:2)"));
     }
 
+    private static final byte[] DATA = toByteArray(0, 1, 2, 3, 4, 5);
+
+    private Slice[] slicesOverAllSources() {
+        final ParseValue value = new ParseValue("data", NONE, createFromBytes(DATA), enc());
+        final ParseState parseState = stream().add(value);
+        return new Slice[] {
+            Slice.createFromSource(new ConstantSource(DATA), ONE, BigInteger.valueOf(4)).get(),
+            Slice.createFromSource(new ByteStreamSource(new InMemoryByteStream(DATA)), ONE, BigInteger.valueOf(4)).get(),
+            Slice.createFromSource(new DataExpressionSource(ref("data"), 0, parseState, enc()), ONE, BigInteger.valueOf(4)).get(),
+            Slice.createFromSource(ConcatenatedValueSource.create(ref("data").eval(parseState, enc())).get(), ONE, BigInteger.valueOf(4)).get()
+        };
+    }
+
+    @Test
+    public void readInto() {
+        for (final Slice slice : slicesOverAllSources()) {
+            final byte[] destination = new byte[6];
+            slice.readInto(destination, 2);
+            assertArrayEquals(toByteArray(0, 0, 1, 2, 3, 4), destination);
+        }
+    }
+
+    @Test
+    public void readIntoTooSmallDestination() {
+        thrown.expect(IndexOutOfBoundsException.class);
+        thrown.expectMessage("Slice of length 4 does not fit at position 3 in destination of length 6.");
+        slicesOverAllSources()[0].readInto(new byte[6], 3);
+    }
+
+    @Test
+    public void asByteBuffer() {
+        for (final Slice slice : slicesOverAllSources()) {
+            final ByteBuffer buffer = slice.asByteBuffer();
+            assertTrue(buffer.isReadOnly());
+            assertEquals(0, buffer.position());
+            assertEquals(4, buffer.remaining());
+            assertEquals(ByteBuffer.wrap(toByteArray(1, 2, 3, 4)), buffer);
+        }
+    }
+
+    @Test
+    public void asByteBufferIsReadOnly() {
+        thrown.expect(ReadOnlyBufferException.class);
+        slicesOverAllSources()[0].asByteBuffer().put((byte) 0);
+    }
+
+    @Test
+    public void asByteBufferDoesNotExposeSurroundingData() {
+        final ByteBuffer buffer = slicesOverAllSources()[0].asByteBuffer();
+        assertFalse(buffer.hasArray());
+        assertEquals(4, buffer.capacity());
+    }
+
+    @Test
+    public void getByte() {
+        for (final Slice slice : slicesOverAllSources()) {
+            assertEquals(1, slice.getByte(ZERO));
+            assertEquals(4, slice.getByte(BigInteger.valueOf(3)));
+        }
+    }
+
+    @Test
+    public void getByteOutOfBounds() {
+        thrown.expect(IndexOutOfBoundsException.class);
+        thrown.expectMessage("Index 4 is out of bounds for slice of length 4.");
+        slicesOverAllSources()[0].getByte(BigInteger.valueOf(4));
+    }
+
 }
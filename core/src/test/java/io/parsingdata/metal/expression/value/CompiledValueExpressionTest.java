@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.expression.value;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.Shorthand.CURRENT_OFFSET;
+import static io.parsingdata.metal.Shorthand.add;
+import static io.parsingdata.metal.Shorthand.cat;
+import static io.parsingdata.metal.Shorthand.compile;
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.count;
+import static io.parsingdata.metal.Shorthand.div;
+import static io.parsingdata.metal.Shorthand.elvis;
+import static io.parsingdata.metal.Shorthand.first;
+import static io.parsingdata.metal.Shorthand.last;
+import static io.parsingdata.metal.Shorthand.len;
+import static io.parsingdata.metal.Shorthand.mul;
+import static io.parsingdata.metal.Shorthand.neg;
+import static io.parsingdata.metal.Shorthand.nth;
+import static io.parsingdata.metal.Shorthand.ref;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.Shorthand.sub;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+import static io.parsingdata.metal.util.ParseStateFactory.stream;
+import static io.parsingdata.metal.util.TokenDefinitions.any;
+
+import org.junit.Test;
+
+import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.expression.value.arithmetic.Add;
+
+public class CompiledValueExpressionTest {
+
+    private static final ParseState PARSE_STATE = seq(any("a"), any("a"), any("a"), any("b")).parse(env(stream(1, 2, 3, 4))).get();
+
+    private static final ValueExpression[] SCALAR = {
+        con(1),
+        last(ref("a")),
+        first(ref("a")),
+        count(ref("a")),
+        last(ref("c")),
+        first(ref("c")),
+        count(ref("c")),
+        first(ref("a", con(2))),
+        add(last(ref("a")), con(2)),
+        mul(sub(last(ref("a")), first(ref("a"))), neg(last(ref("b")))),
+        add(count(ref("a")), len(last(ref("b")))),
+        div(last(ref("a")), con(0)),
+        add(last(ref("c")), con(1)),
+        add(last(ref("c")), last(ref("d"))),
+        sub(CURRENT_OFFSET, con(1))
+    };
+
+    private static final ValueExpression[] LIST = {
+        ref("a"),
+        add(ref("a"), con(1)),
+        add(con(1), ref("a")),
+        neg(ref("a")),
+        cat(ref("a"), last(ref("b"))),
+        add(ref("c"), last(ref("b"))),
+        nth(ref("a"), con(0, 1, 2)),
+        elvis(last(ref("c")), last(ref("b"))),
+        add(elvis(ref("c"), ref("a")), mul(last(ref("b")), con(2))),
+        new Add(last(ref("a")), con(2)) {} // A subclass may override eval(), so it is not compiled.
+    };
+
+    @Test
+    public void scalar() {
+        for (final ValueExpression expression : SCALAR) {
+            final CompiledValueExpression compiled = CompiledValueExpression.compile(expression);
+            assertTrue(expression.toString(), compiled.isScalar());
+            assertEquals(expression.toString(), expression.eval(PARSE_STATE, enc()), compiled.eval(PARSE_STATE, enc()));
+        }
+    }
+
+    @Test
+    public void list() {
+        for (final ValueExpression expression : LIST) {
+            final CompiledValueExpression compiled = CompiledValueExpression.compile(expression);
+            assertFalse(expression.toString(), compiled.isScalar());
+            assertEquals(expression.toString(), expression.eval(PARSE_STATE, enc()), compiled.eval(PARSE_STATE, enc()));
+        }
+    }
+
+    @Test
+    public void equality() {
+        final ValueExpression expression = add(last(ref("a")), con(2));
+        final ValueExpression compiled = compile(expression);
+        assertSame(compiled, compile(compiled));
+        assertEquals(compiled, compile(add(last(ref("a")), con(2))));
+        assertEquals(compiled.hashCode(), compile(add(last(ref("a")), con(2))).hashCode());
+        assertNotEquals(compiled, compile(add(last(ref("a")), con(3))));
+        assertNotEquals(compiled, expression);
+    }
+
+}
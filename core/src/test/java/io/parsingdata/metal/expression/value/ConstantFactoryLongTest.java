@@ -16,6 +16,7 @@
 
 package io.parsingdata.metal.expression.value;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import static io.parsingdata.metal.util.EncodingFactory.enc;
@@ -66,6 +67,14 @@ public class ConstantFactoryLongTest {
         }
     }
 
+    @Test
+    public void checkBytes() {
+        final Value signedValue = ConstantFactory.createFromNumeric(value, signed());
+        assertArrayEquals(BigInteger.valueOf(value).toByteArray(), signedValue.getValue());
+        assertEquals(value, signedValue.asLong());
+        assertEquals(ConstantFactory.createFromBytes(BigInteger.valueOf(value).toByteArray(), signed()), signedValue);
+    }
+
     private BigInteger calculateUnsignedValue(final long input) {
         for (int i = 8; i < 64; i+=8) {
             final long maxValue = BigInteger.valueOf(2).pow(i-1).longValueExact();
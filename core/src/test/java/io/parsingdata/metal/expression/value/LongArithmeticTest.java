@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.expression.value;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import static io.parsingdata.metal.Shorthand.add;
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.div;
+import static io.parsingdata.metal.Shorthand.eqNum;
+import static io.parsingdata.metal.Shorthand.gtEqNum;
+import static io.parsingdata.metal.Shorthand.gtNum;
+import static io.parsingdata.metal.Shorthand.ltEqNum;
+import static io.parsingdata.metal.Shorthand.ltNum;
+import static io.parsingdata.metal.Shorthand.mod;
+import static io.parsingdata.metal.Shorthand.mul;
+import static io.parsingdata.metal.Shorthand.neg;
+import static io.parsingdata.metal.Shorthand.shl;
+import static io.parsingdata.metal.Shorthand.shr;
+import static io.parsingdata.metal.Shorthand.sub;
+import static io.parsingdata.metal.Shorthand.toByteArray;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EncodingFactory.le;
+import static io.parsingdata.metal.util.EncodingFactory.signed;
+import static io.parsingdata.metal.util.ParseStateFactory.stream;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import io.parsingdata.metal.data.ImmutableList;
+import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.data.Slice;
+import io.parsingdata.metal.encoding.Encoding;
+import io.parsingdata.metal.encoding.Sign;
+import io.parsingdata.metal.expression.Expression;
+
+public class LongArithmeticTest {
+
+    private static final ParseState PARSE_STATE = stream(0);
+
+    private static final long[] NUMBERS = { 0, 1, -1, 2, -2, 7, -7, 255, 256, -256, Integer.MAX_VALUE, Integer.MIN_VALUE, 1L << 32, Long.MAX_VALUE / 2, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1 };
+
+    private static Value[] values(final Encoding encoding) {
+        final Value[] values = new Value[NUMBERS.length * 2];
+        for (int i = 0; i < NUMBERS.length; i++) {
+            values[i * 2] = ConstantFactory.createFromNumeric(NUMBERS[i], encoding);
+            // The same number, padded to nine bytes, is not decoded as a long.
+            final byte[] padded = new byte[9];
+            final byte[] bytes = BigInteger.valueOf(NUMBERS[i]).toByteArray();
+            Arrays.fill(padded, NUMBERS[i] < 0 && encoding.sign == Sign.SIGNED ? (byte) -1 : 0);
+            System.arraycopy(bytes, 0, padded, padded.length - bytes.length, bytes.length);
+            values[i * 2 + 1] = ConstantFactory.createFromBytes(padded, encoding);
+        }
+        return values;
+    }
+
+    @Test
+    public void arithmetic() {
+        for (final Encoding encoding : new Encoding[] { signed(), enc() }) {
+            final Value[] values = values(encoding);
+            for (final Value left : values) {
+                assertResult(neg(con(left)), Optional.of(left.asNumeric().negate()), encoding);
+                for (final Value right : values) {
+                    final BigInteger l = left.asNumeric();
+                    final BigInteger r = right.asNumeric();
+                    assertResult(add(con(left), con(right)), Optional.of(l.add(r)), encoding);
+                    assertResult(sub(con(left), con(right)), Optional.of(l.subtract(r)), encoding);
+                    assertResult(mul(con(left), con(right)), Optional.of(l.multiply(r)), encoding);
+                    assertResult(div(con(left), con(right)), r.signum() == 0 ? Optional.empty() : Optional.of(l.divide(r)), encoding);
+                    assertResult(mod(con(left), con(right)), r.signum() <= 0 ? Optional.empty() : Optional.of(l.mod(r)), encoding);
+                    assertCompare(eqNum(con(left), con(right)), l.compareTo(r) == 0, encoding);
+                    assertCompare(gtNum(con(left), con(right)), l.compareTo(r) > 0, encoding);
+                    assertCompare(gtEqNum(con(left), con(right)), l.compareTo(r) >= 0, encoding);
+                    assertCompare(ltNum(con(left), con(right)), l.compareTo(r) < 0, encoding);
+                    assertCompare(ltEqNum(con(left), con(right)), l.compareTo(r) <= 0, encoding);
+                }
+            }
+        }
+    }
+
+    private static void assertResult(final ValueExpression expression, final Optional<BigInteger> expected, final Encoding encoding) {
+        final ImmutableList<Optional<Value>> result = expression.eval(PARSE_STATE, encoding);
+        assertEquals(1, result.size);
+        assertEquals(expression.toString(), expected.isPresent(), result.head.isPresent());
+        if (expected.isPresent()) {
+            final byte[] bytes = expected.get().toByteArray();
+            final byte[] compacted = encoding.sign == Sign.UNSIGNED && bytes.length > 1 && bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+            assertArrayEquals(expression.toString(), compacted, result.head.get().getValue());
+            assertEquals(expression.toString(), result.head.get().asNumeric(), new Value(result.head.get().slice, result.head.get().encoding).asNumeric());
+        }
+    }
+
+    private static void assertCompare(final Expression expression, final boolean expected, final Encoding encoding) {
+        assertEquals(expression.toString(), expected, expression.eval(PARSE_STATE, encoding));
+    }
+
+    @Test
+    public void shifts() {
+        for (final Encoding encoding : new Encoding[] { enc(), le(), signed() }) {
+            for (final int[] bytes : new int[][] { {}, { 1 }, { 0x80 }, { 0xff, 0x01 }, { 0x12, 0x34, 0x56, 0x78, 0x9a, 0xbc, 0xde, 0xf0 }, { 1, 0, 0, 0, 0, 0, 0, 0, 0 } }) {
+                final Value value = new Value(Slice.createFromBytes(toByteArray(bytes)), encoding);
+                for (int shift = 0; shift < 80; shift += 3) {
+                    final Value positions = ConstantFactory.createFromNumeric(shift, enc());
+                    assertShift(shl(con(value), con(positions)), shiftLeft(value, shift, encoding), encoding);
+                    assertShift(shr(con(value), con(positions)), shiftRight(value, shift, encoding), encoding);
+                }
+            }
+        }
+    }
+
+    private static void assertShift(final ValueExpression expression, final Value expected, final Encoding encoding) {
+        final Value actual = expression.eval(PARSE_STATE, encoding).head.get();
+        assertArrayEquals(expression.toString(), expected.getValue(), actual.getValue());
+        assertEquals(expression.toString(), expected.encoding, actual.encoding);
+    }
+
+    // The shifts as implemented with a BitSet, for values of any length.
+    private static Value shiftLeft(final Value value, final int shift, final Encoding encoding) {
+        final BitSet bits = value.asBitSet();
+        final BitSet out = new BitSet();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            out.set(i + shift);
+        }
+        return ConstantFactory.createFromBitSet(out, (bits.length() + shift + 7) / 8, encoding);
+    }
+
+    private static Value shiftRight(final Value value, final int shift, final Encoding encoding) {
+        final BitSet bits = value.asBitSet();
+        return ConstantFactory.createFromBitSet(bits.get(shift, Math.max(shift, bits.length())), value.slice.length.intValueExact(), encoding);
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.expression.value;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static io.parsingdata.metal.expression.value.ConstantFactory.createFromNumeric;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import io.parsingdata.metal.data.ImmutableList;
+
+public class ValueListTest {
+
+    private static final Optional<Value> ONE = Optional.of(createFromNumeric(1, enc()));
+    private static final Optional<Value> TWO = Optional.of(createFromNumeric(2, enc()));
+    private static final ImmutableList<Optional<Value>> LIST = ImmutableList.create(TWO).add(Optional.empty()).add(ONE);
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void createFromList() {
+        final ValueList values = ValueList.create(LIST);
+        assertEquals(3, values.size);
+        assertEquals(ONE, values.get(0));
+        assertFalse(values.get(1).isPresent());
+        assertEquals(TWO, values.get(2));
+        assertEquals(LIST, values.toList());
+    }
+
+    @Test
+    public void buildInBulk() {
+        final ValueList base = ValueList.create(LIST);
+        final ValueList.Builder builder = new ValueList.Builder(0).add(base).add(Optional.empty()).add(LIST);
+        final ValueList values = builder.build();
+        assertEquals(7, values.size);
+        assertEquals(TWO, values.get(6));
+        assertEquals(LIST.add(Optional.empty()).add(LIST), values.toList());
+        assertSame(ValueList.EMPTY, builder.build());
+        assertTrue(ValueList.create(new ImmutableList<>()).isEmpty());
+        assertEquals(base, ValueList.create(base.toList()));
+    }
+
+    @Test
+    public void getOutOfBounds() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument index must be smaller than 3 and may not be negative.");
+        ValueList.create(LIST).get(3);
+    }
+
+    @Test
+    public void negativeCapacity() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Argument capacity may not be negative or exceed the maximum array size.");
+        new ValueList.Builder(-1);
+    }
+
+}
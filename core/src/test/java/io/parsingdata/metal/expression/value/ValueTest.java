@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013-2016 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.expression.value;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import static io.parsingdata.metal.Shorthand.toByteArray;
+import static io.parsingdata.metal.data.Slice.createFromBytes;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import io.parsingdata.metal.encoding.ByteOrder;
+import io.parsingdata.metal.encoding.Encoding;
+import io.parsingdata.metal.encoding.Sign;
+
+public class ValueTest {
+
+    private static final Encoding[] ENCODINGS = {
+        new Encoding(Sign.UNSIGNED, US_ASCII, ByteOrder.BIG_ENDIAN),
+        new Encoding(Sign.SIGNED, US_ASCII, ByteOrder.BIG_ENDIAN),
+        new Encoding(Sign.UNSIGNED, US_ASCII, ByteOrder.LITTLE_ENDIAN),
+        new Encoding(Sign.SIGNED, US_ASCII, ByteOrder.LITTLE_ENDIAN)
+    };
+
+    @Rule public final ExpectedException thrown = ExpectedException.none();
+
+    private static BigInteger reference(final byte[] data, final Encoding encoding) {
+        final byte[] ordered = encoding.byteOrder.apply(data);
+        return encoding.sign == Sign.SIGNED ? new BigInteger(ordered) : new BigInteger(1, ordered);
+    }
+
+    @Test
+    public void asNumericMatchesReference() {
+        final Random random = new Random(0);
+        for (int length = 1; length <= 10; length++) {
+            for (int i = 0; i < 50; i++) {
+                final byte[] data = new byte[length];
+                random.nextBytes(data);
+                for (final Encoding encoding : ENCODINGS) {
+                    assertEquals(reference(data, encoding), new Value(createFromBytes(data), encoding).asNumeric());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void asLongMatchesReference() {
+        final Random random = new Random(1);
+        for (int length = 1; length <= 8; length++) {
+            for (int i = 0; i < 50; i++) {
+                final byte[] data = new byte[length];
+                random.nextBytes(data);
+                data[0] = (byte) (data[0] & 0x7f);
+                data[length - 1] = (byte) (data[length - 1] & 0x7f);
+                for (final Encoding encoding : ENCODINGS) {
+                    assertEquals(reference(data, encoding).longValueExact(), new Value(createFromBytes(data), encoding).asLong());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void asLongSignExtension() {
+        assertEquals(-1L, new Value(createFromBytes(toByteArray(0xff)), ENCODINGS[1]).asLong());
+        assertEquals(-2L, new Value(createFromBytes(toByteArray(0xfe, 0xff)), ENCODINGS[3]).asLong());
+        assertEquals(Long.MIN_VALUE, new Value(createFromBytes(toByteArray(0x80, 0, 0, 0, 0, 0, 0, 0)), ENCODINGS[1]).asLong());
+        assertEquals(0xffL, new Value(createFromBytes(toByteArray(0xff)), ENCODINGS[0]).asLong());
+    }
+
+    @Test
+    public void asLongOfLongerValue() {
+        assertEquals(258L, new Value(createFromBytes(toByteArray(0, 0, 0, 0, 0, 0, 0, 0, 1, 2)), enc()).asLong());
+    }
+
+    @Test
+    public void asLongUnsignedOverflow() {
+        thrown.expect(ArithmeticException.class);
+        new Value(createFromBytes(toByteArray(0x80, 0, 0, 0, 0, 0, 0, 0)), enc()).asLong();
+    }
+
+    @Test
+    public void asInt() {
+        assertEquals(Integer.MAX_VALUE, new Value(createFromBytes(toByteArray(0x7f, 0xff, 0xff, 0xff)), enc()).asInt());
+        assertEquals(-1, new Value(createFromBytes(toByteArray(0xff, 0xff, 0xff, 0xff, 0xff)), ENCODINGS[1]).asInt());
+    }
+
+    @Test
+    public void asIntOverflow() {
+        thrown.expect(ArithmeticException.class);
+        thrown.expectMessage("BigInteger out of int range");
+        new Value(createFromBytes(toByteArray(0x80, 0, 0, 0)), enc()).asInt();
+    }
+
+    @Test
+    public void asNumericIsCached() {
+        final Value value = new Value(createFromBytes(toByteArray(1, 2, 3, 4, 5, 6, 7, 8, 9)), enc());
+        assertSame(value.asNumeric(), value.asNumeric());
+        assertEquals(value, new Value(createFromBytes(toByteArray(1, 2, 3, 4, 5, 6, 7, 8, 9)), enc()));
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013-2018 Netherlands Forensic Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.parsingdata.metal.expression.value.reference;
+
+import static org.junit.Assert.assertEquals;
+
+import static io.parsingdata.metal.Shorthand.con;
+import static io.parsingdata.metal.Shorthand.div;
+import static io.parsingdata.metal.Shorthand.rep;
+import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
+import static io.parsingdata.metal.util.EnvironmentFactory.env;
+import static io.parsingdata.metal.util.ParseStateFactory.stream;
+import static io.parsingdata.metal.util.TokenDefinitions.any;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import io.parsingdata.metal.data.ImmutableList;
+import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.encoding.Encoding;
+import io.parsingdata.metal.expression.value.Value;
+import io.parsingdata.metal.expression.value.ValueExpression;
+import io.parsingdata.metal.expression.value.reference.Ref.DefinitionRef;
+import io.parsingdata.metal.expression.value.reference.Ref.NameRef;
+import io.parsingdata.metal.token.Token;
+
+@RunWith(Parameterized.class)
+public class LimitPushdownTest {
+
+    private static final Token A = any("a");
+    private static final ParseState PARSE_STATE = rep(seq(A, any("b"), seq("s", A, any("a")))).parse(env(stream(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12))).get();
+
+    @Rule public final ExpectedException thrown = ExpectedException.none();
+
+    @Parameter public String description;
+    @Parameter(1) public Ref<?> ref;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+            { "ref(a)", new NameRef("a") },
+            { "ref(s.a)", new NameRef("s.a") },
+            { "ref(a, 0)", new NameRef("a", con(0)) },
+            { "ref(a, 1)", new NameRef("a", con(1)) },
+            { "ref(a, 4)", new NameRef("a", con(4)) },
+            { "ref(a, 100)", new NameRef("a", con(100)) },
+            { "ref(x)", new NameRef("x") },
+            { "ref(A)", new DefinitionRef(A) },
+            { "ref(A, 3)", new DefinitionRef(A, con(3)) }
+        });
+    }
+
+    @Test
+    public void last() {
+        check(Last::new);
+    }
+
+    @Test
+    public void first() {
+        check(First::new);
+    }
+
+    @Test
+    public void count() {
+        check(Count::new);
+    }
+
+    @Test
+    public void nth() {
+        check(values -> new Nth(values, con(0, 1, 2, 3, 5, 7, 100)));
+    }
+
+    @Test
+    public void invalidLimit() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Limit must evaluate to a single non-empty value.");
+        new Last(new NameRef("a", div(con(1), con(0)))).eval(PARSE_STATE, enc());
+    }
+
+    private void check(final Function<ValueExpression, ValueExpression> operator) {
+        // The wrapper hides the Ref, so the operator evaluates the full list.
+        assertEquals(operator.apply(new Wrapper(ref)).eval(PARSE_STATE, enc()), operator.apply(ref).eval(PARSE_STATE, enc()));
+    }
+
+    private static class Wrapper implements ValueExpression {
+
+        final ValueExpression operand;
+
+        Wrapper(final ValueExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public ImmutableList<Optional<Value>> eval(final ParseState parseState, final Encoding encoding) {
+            return operand.eval(parseState, encoding);
+        }
+
+    }
+
+}
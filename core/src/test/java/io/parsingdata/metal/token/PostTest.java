@@ -20,21 +20,36 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
+import static io.parsingdata.metal.Shorthand.add;
+import static io.parsingdata.metal.Shorthand.cho;
 import static io.parsingdata.metal.Shorthand.con;
 import static io.parsingdata.metal.Shorthand.def;
 import static io.parsingdata.metal.Shorthand.eq;
 import static io.parsingdata.metal.Shorthand.post;
 import static io.parsingdata.metal.Shorthand.ref;
 import static io.parsingdata.metal.Shorthand.seq;
+import static io.parsingdata.metal.Shorthand.toByteArray;
+import static io.parsingdata.metal.data.ParseState.createFromByteStream;
+import static io.parsingdata.metal.data.Selection.getAllValues;
+import static io.parsingdata.metal.util.EncodingFactory.enc;
 import static io.parsingdata.metal.util.EnvironmentFactory.env;
 import static io.parsingdata.metal.util.ParseStateFactory.stream;
 import static io.parsingdata.metal.util.TokenDefinitions.any;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import org.junit.Test;
 
+import io.parsingdata.metal.data.Environment;
+import io.parsingdata.metal.data.ImmutableList;
 import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.data.ParseValue;
+import io.parsingdata.metal.data.callback.Callback;
+import io.parsingdata.metal.data.callback.Callbacks;
+import io.parsingdata.metal.util.InMemoryByteStream;
+import io.parsingdata.metal.util.ReadTrackingByteStream;
 
 public class PostTest {
 
@@ -68,6 +83,65 @@ public class PostTest {
         assertThat(result.isPresent(), is(false));
     }
 
+    private static final Token MAGIC =
+        cho(def("zip", 4, eq(con(0x50, 0x4b, 0x03, 0x04))),
+            def("png", 4, eq(con(0x89, 0x50, 0x4e, 0x47))),
+            def("jpeg", 2, eq(con(0xff, 0xd8))));
+
+    @Test
+    public void matchPattern() {
+        final Optional<ParseState> result = MAGIC.parse(env(stream(0xff, 0xd8, 0xff, 0xe0)));
+        assertThat(result.isPresent(), is(true));
+        assertThat(result.get().offset.longValueExact(), is(2L));
+        final ImmutableList<ParseValue> values = getAllValues(result.get().order, value -> true);
+        assertThat(values.size, is(1L));
+        assertThat(values.head.name, is(equalTo("jpeg")));
+    }
+
+    @Test
+    public void matchPatternFails() {
+        assertThat(MAGIC.parse(env(stream(0x50, 0x4b, 0x03))).isPresent(), is(false));
+        assertThat(MAGIC.parse(env(stream(0x89, 0x50, 0x4e, 0x48))).isPresent(), is(false));
+    }
+
+    @Test
+    public void matchPatternReadsFirstByteOnMismatch() {
+        final ReadTrackingByteStream stream = new ReadTrackingByteStream(new InMemoryByteStream(toByteArray(0x50, 0x4b, 0x03, 0x05)));
+        final ParseState parseState = createFromByteStream(stream);
+        assertThat(def("zip", 4, eq(con(0x51, 0x4b, 0x03, 0x04))).parse(env(parseState)).isPresent(), is(false));
+        assertThat(stream.containsAll(0), is(true));
+        assertThat(stream.containsNone(1, 2, 3), is(true));
+        // Without a constant size the Def is parsed, so the predicate reads all bytes.
+        assertThat(def("zip", add(con(2), con(2)), eq(con(0x51, 0x4b, 0x03, 0x04))).parse(env(parseState)).isPresent(), is(false));
+        assertThat(stream.containsAll(0, 1, 2, 3), is(true));
+    }
+
+    @Test
+    public void matchPatternWithOtherSize() {
+        final Token zeroSize = seq(def("a", 1), def("b", 0, eq(con(1))));
+        assertThat(zeroSize.parse(env(stream(1))).isPresent(), is(true));
+        assertThat(def("a", 2, eq(con(1))).parse(env(stream(1, 1))).isPresent(), is(false));
+    }
+
+    @Test
+    public void matchPatternWithCallbacks() {
+        final List<String> parsed = new ArrayList<>();
+        final Callbacks callbacks = Callbacks.create().add(new Callback() {
+            @Override
+            public void handleSuccess(final Token token, final ParseState before, final ParseState after) {
+                parsed.add(token.name + ":success");
+            }
+
+            @Override
+            public void handleFailure(final Token token, final ParseState before) {
+                parsed.add(token.name + ":failure");
+            }
+        });
+        final Token magic = def("magic", 2, eq(con(0xff, 0xd8)));
+        assertThat(magic.parse(new Environment(stream(0xff, 0xd9), callbacks, enc())).isPresent(), is(false));
+        assertThat(parsed.toString(), is(equalTo("[magic:success, :failure]")));
+    }
+
     @Test
     public void testToString() {
         final Token simpleWhile = post("pname", def("value", con(1)), eq(con(1)));
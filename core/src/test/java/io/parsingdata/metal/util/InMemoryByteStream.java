@@ -18,6 +18,7 @@ package io.parsingdata.metal.util;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -40,6 +41,18 @@ public class InMemoryByteStream implements ByteStream {
         return data;
     }
 
+    @Override
+    public ByteBuffer asByteBuffer(final BigInteger offset, final int length) throws IOException {
+        if (!isAvailable(offset, length)) { throw new IOException("Data to read is not available."); }
+        return ByteBuffer.wrap(data, offset.intValueExact(), length).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte getByte(final BigInteger offset) throws IOException {
+        if (!isAvailable(offset, 1)) { throw new IOException("Data to read is not available."); }
+        return data[offset.intValueExact()];
+    }
+
     @Override
     public boolean isAvailable(final BigInteger offset, final int length) {
         return offset.intValueExact() + length <= data.length;
@@ -16,12 +16,17 @@
 
 package io.parsingdata.metal.format;
 
+import static java.math.BigInteger.ZERO;
+
 import static io.parsingdata.metal.data.Slice.createFromBytes;
+import static io.parsingdata.metal.data.Slice.createFromSource;
 
+import java.math.BigInteger;
 import java.util.Optional;
 import java.util.zip.CRC32;
 
 import io.parsingdata.metal.data.ParseState;
+import io.parsingdata.metal.data.Slice;
 import io.parsingdata.metal.encoding.Encoding;
 import io.parsingdata.metal.expression.value.UnaryValueExpression;
 import io.parsingdata.metal.expression.value.Value;
@@ -29,6 +34,8 @@ import io.parsingdata.metal.expression.value.ValueExpression;
 
 public final class Callback {
 
+    private static final BigInteger CHUNK_SIZE = BigInteger.valueOf(1 << 16);
+
     private Callback() {}
 
     public static ValueExpression crc32(final ValueExpression target) {
@@ -36,7 +43,7 @@ public final class Callback {
             @Override
             public Optional<Value> eval(final Value value, final ParseState parseState, final Encoding encoding) {
                 final CRC32 crc = new CRC32();
-                crc.update(value.getValue());
+                update(crc, value.slice);
                 final long crcValue = crc.getValue();
                 return Optional.of(new Value(createFromBytes(encoding.byteOrder.apply(new byte[] {
                     (byte)((crcValue & 0xff000000) >> 24),
@@ -47,4 +54,12 @@ public final class Callback {
         };
     }
 
+    private static void update(final CRC32 crc, final Slice slice) {
+        // Process the data in chunks, so that large values from sources that
+        // do not keep their data in memory are never materialized at once.
+        for (BigInteger position = ZERO; position.compareTo(slice.length) < 0; position = position.add(CHUNK_SIZE)) {
+            crc.update(createFromSource(slice.source, slice.offset.add(position), CHUNK_SIZE.min(slice.length.subtract(position))).get().asByteBuffer());
+        }
+    }
+
 }